@@ -1,5 +1,6 @@
 package com.acertainbookstore.business;
 
+import com.acertainbookstore.interfaces.InventoryColumns;
 import com.acertainbookstore.utils.BookStoreUtility;
 
 /**
@@ -7,82 +8,60 @@ import com.acertainbookstore.utils.BookStoreUtility;
  * in the BookStoreClient and StockManager, cf. the Book interface and the
  * StockBook interface.
  * 
+ * A BookStoreBook is only a view of a slot of the BookInventory, created when
+ * the book is looked up: the counters of the book are read from and written
+ * to the InventoryColumns, cf. BookInventory.
+ * 
  */
 public class BookStoreBook extends ImmutableBook {
-	private int numCopies;
-	private long totalRating;
-	private long timesRated;
-	private long saleMisses;
-	private boolean editorPick;
+	private final InventoryColumns columns;
+	private final int slot;
 
 	/**
-	 * Constructor to create a book object
+	 * Constructor to create a book store book object for the book in the
+	 * given slot of the columns
+	 * 
+	 * @param ISBN
+	 * @param title
+	 * @param author
+	 * @param price
+	 * @param columns
+	 * @param slot
 	 */
 	public BookStoreBook(int ISBN, String title, String author, float price,
-			int numCopies) {
+			InventoryColumns columns, int slot) {
 		super(ISBN, title, author, price);
-		this.setSaleMisses(0);
-		this.setTimesRated(0);
-		this.setNumCopies(numCopies);
-		this.setTotalRating(0);
-		this.setEditorPick(false);
+		this.columns = columns;
+		this.slot = slot;
 	}
 
-	/**
-	 * Constructor to create a book store book object from a stock book object
-	 * 
-	 * @param bookToCopy
-	 */
-	public BookStoreBook(StockBook bookToCopy) {
-		super(bookToCopy.getISBN(), bookToCopy.getTitle(), bookToCopy
-				.getAuthor(), bookToCopy.getPrice());
-		this.setSaleMisses(bookToCopy.getSaleMisses());
-		this.setTimesRated(bookToCopy.getTimesRated());
-		this.setNumCopies(bookToCopy.getNumCopies());
-		this.setTotalRating(bookToCopy.getTotalRating());
-		this.setEditorPick(bookToCopy.isEditorPick());
+	public int getSlot() {
+		return slot;
 	}
 
 	public long getTotalRating() {
-		return totalRating;
+		return columns.getTotalRating(slot);
 	}
 
 	public long getTimesRated() {
-		return timesRated;
+		return columns.getTimesRated(slot);
 	}
 
 	public int getNumCopies() {
-		return numCopies;
+		return columns.getNumCopies(slot);
 	}
 
 	public long getSaleMisses() {
-		return saleMisses;
+		return columns.getSaleMisses(slot);
 	}
 
 	public float getAverageRating() {
-		return (float) (timesRated == 0 ? -1.0 : totalRating / timesRated);
+		long timesRated = getTimesRated();
+		return (float) (timesRated == 0 ? -1.0 : getTotalRating() / timesRated);
 	}
 
 	public boolean isEditorPick() {
-		return editorPick;
-	}
-
-	/**
-	 * Sets the total rating of the book.
-	 * 
-	 * @param totalRating
-	 */
-	private void setTotalRating(long totalRating) {
-		this.totalRating = totalRating;
-	}
-
-	/**
-	 * Sets the number of times that a book was rated.
-	 * 
-	 * @param timesRated
-	 */
-	private void setTimesRated(long timesRated) {
-		this.timesRated = timesRated;
+		return columns.isEditorPick(slot);
 	}
 
 	/**
@@ -91,27 +70,7 @@ public class BookStoreBook extends ImmutableBook {
 	 * @param numCopies
 	 */
 	private void setNumCopies(int numCopies) {
-		this.numCopies = numCopies;
-	}
-
-	/**
-	 * Sets the number of times that a client wanted to buy a book when it was
-	 * not in stock.
-	 * 
-	 * @param saleMisses
-	 */
-	private void setSaleMisses(long saleMisses) {
-		this.saleMisses = saleMisses;
-	}
-
-	/**
-	 * Sets the book to be an editor pick if the boolean is true, otherwise the
-	 * book is not an editor pick.
-	 * 
-	 * @param editorPick
-	 */
-	public void setEditorPick(boolean editorPick) {
-		this.editorPick = editorPick;
+		columns.setNumCopies(slot, numCopies);
 	}
 
 	/**
@@ -121,7 +80,7 @@ public class BookStoreBook extends ImmutableBook {
 	 * @return
 	 */
 	public boolean areCopiesInStore(int numCopies) {
-		return (this.numCopies >= numCopies);
+		return (getNumCopies() >= numCopies);
 	}
 
 	/**
@@ -133,41 +92,12 @@ public class BookStoreBook extends ImmutableBook {
 	public boolean buyCopies(int numCopies) {
 		if (!BookStoreUtility.isInvalidNoCopies(numCopies))
 			if (areCopiesInStore(numCopies)) {
-				this.numCopies -= numCopies;
+				setNumCopies(getNumCopies() - numCopies);
 				return true;
 			}
 		return false;
 	}
 
-	/**
-	 * Adds newCopies to the total number of copies of the book.
-	 */
-	public void addCopies(int newCopies) {
-		if (!BookStoreUtility.isInvalidNoCopies(newCopies)) {
-			this.numCopies += newCopies;
-			this.saleMisses = 0;
-		}
-	}
-
-	/**
-	 * Increases the amount of missed sales of the book.
-	 */
-	public void addSaleMiss() {
-		this.saleMisses++;
-	}
-
-	/**
-	 * Adds the rating to the total rating of the book.
-	 * 
-	 * @param rating
-	 */
-	public void addRating(int rating) {
-		if (!BookStoreUtility.isInvalidRating(rating)) {
-			this.totalRating += rating;
-			this.timesRated++;
-		}
-	}
-
 	/**
 	 * Returns True if someone tried to buy the book, while the book was not in
 	 * stock.
@@ -175,7 +105,7 @@ public class BookStoreBook extends ImmutableBook {
 	 * @return
 	 */
 	public boolean hadSaleMiss() {
-		return this.saleMisses > 0;
+		return getSaleMisses() > 0;
 	}
 
 	/**
@@ -206,18 +136,8 @@ public class BookStoreBook extends ImmutableBook {
 	public StockBook immutableStockBook() {
 		return new ImmutableStockBook(this.getISBN(), new String(
 				this.getTitle()), new String(this.getAuthor()),
-				this.getPrice(), this.numCopies, this.saleMisses,
-				this.timesRated, this.totalRating, this.editorPick);
-	}
-
-	/**
-	 * Returns a copy of the book.
-	 * 
-	 * @return
-	 */
-	public BookStoreBook copy() {
-		return new BookStoreBook(this.getISBN(), new String(this.getTitle()),
-				new String(this.getAuthor()), this.getPrice(), this.numCopies);
+				this.getPrice(), getNumCopies(), getSaleMisses(),
+				getTimesRated(), getTotalRating(), isEditorPick());
 	}
 
 }
@@ -0,0 +1,146 @@
+package com.acertainbookstore.business;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * WriteCombiner applies the updates of the CertainBookStore by flat combining.
+ * An update is published in a queue and whichever thread gets the write lock
+ * becomes the combiner: it applies all the published updates in one critical
+ * section and hands each thread the outcome of its own update. The other
+ * threads park until their update is done instead of queueing up on the lock,
+ * so under contention the lock changes hands about once per batch of updates
+ * rather than once per update.
+ *
+ * The updates of a batch are still applied one by one, so an update which
+ * throws does not affect the others. It leaves the store as the update itself
+ * left it: an update is not made atomic by the combiner, e.g. buyBooks
+ * records its sale misses before it throws.
+ *
+ * A thread that keeps finding the lock taken, by readers or by other
+ * combiners, stops polling for it after MAX_POLLS tries and blocks on the
+ * write lock like any other writer.
+ *
+ */
+public class WriteCombiner {
+	// Bounds the time a combiner spends on the updates of other threads. An
+	// update only changes a few books in memory, a microsecond or so, so a
+	// full batch holds the lock for about a millisecond; the threads in the
+	// batch would have held it as long one after another
+	public static final int DEFAULT_MAX_BATCH = 1024;
+	// A thread whose update was published after the combiner let go of the
+	// lock is woken up, but it also polls in case the lock is held by a reader
+	private static final long PARK_NANOS = 100000;
+	// After this many polls a thread queues up on the write lock instead, so
+	// that a steady stream of readers cannot keep the updates out
+	private static final int MAX_POLLS = 16;
+
+	/**
+	 * An update of the store, which is run under the write lock.
+	 */
+	public interface Write {
+		public void run() throws BookStoreException;
+	}
+
+	private static final class Request {
+		private final Write write;
+		private final Thread thread;
+		private Throwable failure; // published by done
+		private volatile boolean done;
+
+		private Request(Write write, Thread thread) {
+			this.write = write;
+			this.thread = thread;
+		}
+	}
+
+	private final StampedLock lock;
+	private final int maxBatch;
+	private final Queue<Request> pending = new ConcurrentLinkedQueue<Request>();
+
+	public WriteCombiner(StampedLock lock) {
+		this(lock, DEFAULT_MAX_BATCH);
+	}
+
+	/**
+	 * Creates a combiner which applies at most maxBatch updates each time it
+	 * takes the lock.
+	 *
+	 * @param lock
+	 * @param maxBatch
+	 */
+	public WriteCombiner(StampedLock lock, int maxBatch) {
+		if (maxBatch < 1) {
+			throw new IllegalArgumentException("maxBatch must be positive");
+		}
+		this.lock = lock;
+		this.maxBatch = maxBatch;
+	}
+
+	/**
+	 * Runs the update under the write lock, possibly together with the updates
+	 * of other threads, and returns when it is done.
+	 *
+	 * @param write
+	 * @throws BookStoreException
+	 *             if the update threw it
+	 */
+	public void execute(Write write) throws BookStoreException {
+		Request request = new Request(write, Thread.currentThread());
+		boolean interrupted = false;
+		int polls = 0;
+		pending.add(request);
+		while (!request.done) {
+			long stamp = polls < MAX_POLLS ? lock.tryWriteLock() : lock
+					.writeLock();
+			if (stamp != 0) {
+				try {
+					combine();
+				} finally {
+					lock.unlockWrite(stamp);
+				}
+				// An update published while we held the lock may have missed
+				// the batch, so its thread must take over
+				Request next = pending.peek();
+				if (next != null) {
+					LockSupport.unpark(next.thread);
+				}
+			} else {
+				LockSupport.parkNanos(this, PARK_NANOS);
+				interrupted |= Thread.interrupted();
+				polls++;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		Throwable failure = request.failure;
+		if (failure instanceof BookStoreException) {
+			throw (BookStoreException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+	}
+
+	private void combine() {
+		Request request;
+		for (int i = 0; i < maxBatch && (request = pending.poll()) != null; i++) {
+			try {
+				request.write.run();
+			} catch (Throwable t) {
+				request.failure = t;
+			}
+			request.done = true;
+			if (request.thread != Thread.currentThread()) {
+				LockSupport.unpark(request.thread);
+			}
+		}
+	}
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -15,9 +16,12 @@ import org.junit.Test;
 import java.util.Random;
 import java.util.ArrayList;
 
+import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.HeapInventoryColumns;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
@@ -400,4 +404,160 @@ public class CertainBookStoreTest {
 		}
 	}
 
+	@Test
+	public void testGetEditorPicksAfterUpdatesAndRemovals() throws BookStoreException {
+		Set<StockBook> booksAdded = makeRandomBooks(50);
+		storeManager.addBooks(booksAdded);
+
+		// flip every third book and remove every fifth, so that books are
+		// moved around in the store
+		Set<BookEditorPick> editorPicks = new HashSet<BookEditorPick>();
+		Set<Integer> removed = new HashSet<Integer>();
+		int i = 0;
+		for (StockBook book : booksAdded) {
+			if (i % 3 == 0) {
+				editorPicks.add(new BookEditorPick(book.getISBN(), !book.isEditorPick()));
+			}
+			if (i % 5 == 0) {
+				removed.add(book.getISBN());
+			}
+			i++;
+		}
+		storeManager.updateEditorPicks(editorPicks);
+		storeManager.removeBooks(removed);
+
+		Set<Integer> expected = new HashSet<Integer>();
+		for (StockBook book : storeManager.getBooks()) {
+			if (book.isEditorPick()) {
+				expected.add(book.getISBN());
+			}
+		}
+
+		Set<Integer> all = new HashSet<Integer>();
+		for (Book book : client.getEditorPicks(booksAdded.size())) {
+			all.add(book.getISBN());
+		}
+		assertEquals(expected, all);
+
+		int numBooks = expected.size() / 2;
+		Set<Integer> some = new HashSet<Integer>();
+		for (Book book : client.getEditorPicks(numBooks)) {
+			assertTrue(expected.contains(book.getISBN()));
+			some.add(book.getISBN());
+		}
+		assertEquals(numBooks, some.size());
+	}
+
+	@Test
+	public void testGetTopRatedBooksOrder() throws BookStoreException {
+		addBooks(TEST_ISBN + 1, NUM_COPIES);
+		addBooks(TEST_ISBN + 2, NUM_COPIES);
+		addBooks(TEST_ISBN + 3, NUM_COPIES);
+
+		Set<BookRating> ratings = new HashSet<BookRating>();
+		ratings.add(new BookRating(TEST_ISBN + 1, 2));
+		ratings.add(new BookRating(TEST_ISBN + 2, 5));
+		ratings.add(new BookRating(TEST_ISBN + 3, 4));
+		client.rateBooks(ratings);
+
+		// rating a book again moves it in the order
+		ratings.clear();
+		ratings.add(new BookRating(TEST_ISBN + 3, 0));
+		client.rateBooks(ratings);
+
+		List<Book> topRated = client.getTopRatedBooks(4);
+		assertEquals(TEST_ISBN + 2, topRated.get(0).getISBN()); // 5
+		assertEquals(TEST_ISBN + 1, topRated.get(1).getISBN()); // 2
+		assertEquals(TEST_ISBN + 3, topRated.get(2).getISBN()); // 2, after the lower ISBN
+		assertEquals(TEST_ISBN, topRated.get(3).getISBN()); // not rated
+
+		Set<Integer> removed = new HashSet<Integer>();
+		removed.add(TEST_ISBN + 2);
+		storeManager.removeBooks(removed);
+
+		topRated = client.getTopRatedBooks(1);
+		assertEquals(1, topRated.size());
+		assertEquals(TEST_ISBN + 1, topRated.get(0).getISBN());
+	}
+
+	@Test
+	public void testGetBooksInDemandAfterRestockAndRemoval() throws BookStoreException {
+		addBooks(TEST_ISBN + 1, 1);
+		addBooks(TEST_ISBN + 2, 1);
+
+		Set<BookCopy> failBuy = new HashSet<BookCopy>();
+		failBuy.add(new BookCopy(TEST_ISBN + 1, 2));
+		failBuy.add(new BookCopy(TEST_ISBN + 2, 2));
+		try {
+			client.buyBooks(failBuy);
+			fail();
+		}
+		catch (BookStoreException ex) {
+			; // we expect this to happen
+		}
+		assertEquals(2, storeManager.getBooksInDemand().size());
+
+		// restocking a book takes it out of demand
+		Set<BookCopy> restock = new HashSet<BookCopy>();
+		restock.add(new BookCopy(TEST_ISBN + 1, 1));
+		storeManager.addCopies(restock);
+
+		List<StockBook> inDemand = storeManager.getBooksInDemand();
+		assertEquals(1, inDemand.size());
+		assertEquals(TEST_ISBN + 2, inDemand.get(0).getISBN());
+
+		Set<Integer> removed = new HashSet<Integer>();
+		removed.add(TEST_ISBN + 2);
+		storeManager.removeBooks(removed);
+		assertTrue(storeManager.getBooksInDemand().isEmpty());
+	}
+
+	@Test
+	public void testCombinedWrites() throws Exception {
+		final int numBuyers = 8;
+		final int numBuys = 100;
+		final CertainBookStore store = new CertainBookStore(
+				new HeapInventoryColumns(16), true);
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN, "Harry Potter and JUnit",
+				"JK Unit", (float) 10, numBuyers * numBuys, 0, 0, 0, false));
+		store.addBooks(booksToAdd);
+
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] buyers = new Thread[numBuyers];
+		for (int i = 0; i < numBuyers; i++) {
+			buyers[i] = new Thread(new Runnable() {
+				public void run() {
+					Set<BookCopy> buy = new HashSet<BookCopy>();
+					buy.add(new BookCopy(TEST_ISBN, 1));
+					Set<BookCopy> invalidBuy = new HashSet<BookCopy>();
+					invalidBuy.add(new BookCopy(TEST_ISBN + 1, 1));
+					for (int j = 0; j < numBuys; j++) {
+						try {
+							store.buyBooks(buy);
+						} catch (BookStoreException ex) {
+							return;
+						}
+						// every buyer gets its own outcome of a batch
+						try {
+							store.buyBooks(invalidBuy);
+						} catch (BookStoreException ex) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			});
+			buyers[i].start();
+		}
+		for (Thread buyer : buyers) {
+			buyer.join();
+		}
+
+		assertEquals(numBuyers * numBuys, failures.get());
+		List<StockBook> books = store.getBooks();
+		assertEquals(1, books.size());
+		assertEquals(0, books.get(0).getNumCopies());
+		assertTrue(store.getBooksInDemand().isEmpty());
+	}
+
 }
@@ -197,6 +197,36 @@ public class StockManagerTest {
 
 	}
 
+	/**
+	 * Checks whether a set of books holding two books with the same ISBN is
+	 * rejected, instead of adding the book twice
+	 */
+	@Test
+	public void testAddBookDuplicateISBN() throws BookStoreException {
+		List<StockBook> booksInStorePreTest = storeManager.getBooks();
+
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"Harry Potter and Vivek", "JUnit Rowling", (float) 100, 5, 0,
+				0, 0, false)); // valid
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"Harry Potter and Marcos", "JUnit Rowling", (float) 100, 5, 0,
+				0, 0, false)); // same isbn
+		assertEquals(2, booksToAdd.size());
+
+		try {
+			storeManager.addBooks(booksToAdd);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInStorePostTest = storeManager.getBooks();
+		// Check pre and post state are same
+		assertTrue(booksInStorePreTest.containsAll(booksInStorePostTest)
+				&& booksInStorePreTest.size() == booksInStorePostTest.size());
+	}
+
 	/**
 	 * Tests adding copies of a book with correct parameters
 	 */
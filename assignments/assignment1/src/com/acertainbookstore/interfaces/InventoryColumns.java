@@ -0,0 +1,54 @@
+package com.acertainbookstore.interfaces;
+
+/**
+ * InventoryColumns stores the counters of the books in the store column by
+ * column, one primitive column per counter, indexed by the slot of the book.
+ * Scanning a counter over all the books is then a sequential walk over one
+ * column.
+ *
+ */
+public interface InventoryColumns {
+
+	/**
+	 * Returns the number of slots that can be stored without growing.
+	 *
+	 * @return
+	 */
+	public int capacity();
+
+	/**
+	 * Grows the columns to hold at least capacity slots, keeping the values
+	 * of the existing slots.
+	 *
+	 * @param capacity
+	 */
+	public void grow(int capacity);
+
+	/**
+	 * Copies all the counters of slot from to slot to.
+	 *
+	 * @param from
+	 * @param to
+	 */
+	public void move(int from, int to);
+
+	public int getNumCopies(int slot);
+
+	public void setNumCopies(int slot, int numCopies);
+
+	public long getTotalRating(int slot);
+
+	public void setTotalRating(int slot, long totalRating);
+
+	public long getTimesRated(int slot);
+
+	public void setTimesRated(int slot, long timesRated);
+
+	public long getSaleMisses(int slot);
+
+	public void setSaleMisses(int slot, long saleMisses);
+
+	public boolean isEditorPick(int slot);
+
+	public void setEditorPick(int slot, boolean editorPick);
+}
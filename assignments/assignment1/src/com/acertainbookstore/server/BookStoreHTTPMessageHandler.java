@@ -69,14 +69,19 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 		// the RequestURI before the switch
 		if (messageTag == null) {
 			System.out.println("Unknown message tag");
+		} else if (BookStoreUtility.isRequestTooLarge(request)) {
+			bookStoreResponse = new BookStoreResponse();
+			bookStoreResponse.setException(new BookStoreException(
+					BookStoreConstants.REQUEST_SIZE
+							+ request.getContentLength()
+							+ BookStoreConstants.INVALID));
+			response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			BookStoreUtility.encodeResponse(response, bookStoreResponse);
 		} else {
 			switch (messageTag) {
 			case REMOVEBOOKS:
-				String xml = BookStoreUtility
-						.extractPOSTDataFromRequest(request);
-
 				Set<Integer> bookSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -84,30 +89,22 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				String listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case REMOVEALLBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				bookStoreResponse = new BookStoreResponse();
 				try {
 					myBookStore.removeAllBooks();
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case ADDBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				Set<StockBook> newBooks = (Set<StockBook>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -115,33 +112,25 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case ADDCOPIES:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				Set<BookCopy> listBookCopies = (Set<BookCopy>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 				bookStoreResponse = new BookStoreResponse();
 				try {
 					myBookStore.addCopies(listBookCopies);
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case LISTBOOKS:
 				bookStoreResponse = new BookStoreResponse();
 				bookStoreResponse.setList(myBookStore.getBooks());
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case UPDATEEDITORPICKS:
@@ -149,19 +138,14 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				bookStoreResponse = new BookStoreResponse();
 
 				try {
-					String xmlStringEditorPicksValues = BookStoreUtility
-							.extractPOSTDataFromRequest(request);
-
 					Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) BookStoreUtility
-							.deserializeXMLStringToObject(xmlStringEditorPicksValues);
+							.decodeRequest(request);
 
 					myBookStore.updateEditorPicks(mapEditorPicksValues);
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case GETBOOKSINDEMAND:
@@ -172,15 +156,12 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case BUYBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) BookStoreUtility
-						.deserializeXMLStringToObject(new String(xml));
+						.decodeRequest(request);
 
 				// Make the purchase
 				bookStoreResponse = new BookStoreResponse();
@@ -189,15 +170,12 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case GETBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				Set<Integer> isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -205,9 +183,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case EDITORPICKS:
@@ -224,15 +200,12 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case GETSTOCKBOOKSBYISBN:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -241,15 +214,12 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 				
 			case RATEBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				Set<BookRating> ratingSet = (Set<BookRating>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 				
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -258,9 +228,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 				
 			case GETTOPRATEDBOOKS:
@@ -277,9 +245,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			default:
@@ -21,6 +21,9 @@ public final class BookStoreConstants {
 	// Used as error code when converting numbers to integer
 	public static final int INVALID_PARAMS = -1;
 
+	// The largest request a server reads by default, in bytes
+	public static final long DEFAULT_MAX_REQUEST_SIZE = 256L * 1024 * 1024;
+
 	// Constants used when creating exception messages
 	// When book has an invalid ISBN
 	public static final String INVALID = " is invalid";
@@ -33,7 +36,12 @@ public final class BookStoreConstants {
 	public static final String NUM_COPIES = "The Number of copies: ";
 	public static final String RATING = "The rating: ";
 	public static final String NULL_INPUT = "null input parameters";
+	public static final String REQUEST_SIZE = "The size of the request: ";
 
 	public static final String PROPERTY_KEY_LOCAL_TEST = "localtest";
 	public static final String PROPERTY_KEY_SERVER_PORT = "port";
+	public static final String PROPERTY_KEY_OFF_HEAP_INVENTORY = "offheapinventory";
+	public static final String PROPERTY_KEY_COMBINED_WRITES = "combinedwrites";
+	public static final String PROPERTY_KEY_RESOLVE_CAPACITY = "resolvecapacity";
+	public static final String PROPERTY_KEY_MAX_REQUEST_SIZE = "maxrequestsize";
 }
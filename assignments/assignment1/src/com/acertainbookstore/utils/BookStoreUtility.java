@@ -4,19 +4,37 @@
 package com.acertainbookstore.utils;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.ContentExchange;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpExchange;
 
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.ImmutableBook;
+import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.client.BookStoreClientConstants;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.io.xml.StaxDriver;
+import com.thoughtworks.xstream.security.ArrayTypePermission;
+import com.thoughtworks.xstream.security.NoTypePermission;
+import com.thoughtworks.xstream.security.NullPermission;
+import com.thoughtworks.xstream.security.PrimitiveTypePermission;
 
 /**
  * BookStoreUtility implements utility methods used by bookstore servers and
@@ -24,6 +42,25 @@ import com.thoughtworks.xstream.io.xml.StaxDriver;
  * 
  */
 public final class BookStoreUtility {
+	/**
+	 * Holds the XStream of the messages, which is made the first time a
+	 * message is encoded or decoded. XStream is thread-safe once configured,
+	 * so one instance serves all the messages instead of one being built per
+	 * message.
+	 */
+	private static class XMLStreamHolder {
+		static final XStream XML_STREAM = newXStream();
+	}
+
+	private static final long MAX_REQUEST_SIZE = Long.getLong(
+			BookStoreConstants.PROPERTY_KEY_MAX_REQUEST_SIZE,
+			BookStoreConstants.DEFAULT_MAX_REQUEST_SIZE);
+
+	// The charset of a request that does not name one, as in getReader
+	private static final String DEFAULT_CHARSET = "ISO-8859-1";
+
+	// The charset of the responses, cf. the Content-Type of the handlers
+	private static final String RESPONSE_CHARSET = "UTF-8";
 
 	public static boolean isInvalidISBN(int isbn) {
 		return (isbn < 1);
@@ -114,8 +151,7 @@ public final class BookStoreUtility {
 	 */
 	public static String serializeObjectToXMLString(Object object) {
 		String xmlString;
-		XStream xmlStream = new XStream(new StaxDriver());
-		xmlString = xmlStream.toXML(object);
+		xmlString = XMLStreamHolder.XML_STREAM.toXML(object);
 		return xmlString;
 	}
 
@@ -127,11 +163,37 @@ public final class BookStoreUtility {
 	 */
 	public static Object deserializeXMLStringToObject(String xmlObject) {
 		Object dataObject = null;
-		XStream xmlStream = new XStream(new StaxDriver());
-		dataObject = xmlStream.fromXML(xmlObject);
+		dataObject = XMLStreamHolder.XML_STREAM.fromXML(xmlObject);
 		return dataObject;
 	}
 
+	/**
+	 * Returns an XStream for the messages of the bookstore. It only creates
+	 * the types the messages are made of, strings, boxed primitives and
+	 * arrays, so a message cannot make it instantiate anything else.
+	 * 
+	 * @return
+	 */
+	public static XStream newXStream() {
+		XStream xmlStream = new XStream(new StaxDriver());
+		xmlStream.addPermission(NoTypePermission.NONE);
+		xmlStream.addPermission(NullPermission.NULL);
+		xmlStream.addPermission(PrimitiveTypePermission.PRIMITIVES);
+		xmlStream.addPermission(ArrayTypePermission.ARRAYS);
+		xmlStream.allowTypes(new Class<?>[] { String.class,
+				StackTraceElement.class, HashSet.class, ArrayList.class,
+				BookStoreException.class, BookStoreResponse.class,
+				BookCopy.class, BookEditorPick.class, BookRating.class,
+				ImmutableBook.class, ImmutableStockBook.class });
+		// A set or a list is read by its alias, which names the interface,
+		// as a HashSet or an ArrayList
+		xmlStream.allowTypes(new Class<?>[] { Set.class, List.class });
+		// Throwable holds no suppressed exceptions in an empty list
+		xmlStream.allowTypes(new Class<?>[] { Collections.emptyList()
+				.getClass() });
+		return xmlStream;
+	}
+
 
 	/**
 	 * Manages the sending of an exchange through the client, waits for the
@@ -189,21 +251,58 @@ public final class BookStoreUtility {
 	}
 
 	/**
-	 * Returns the message of the request as a string
+	 * Checks if the request declares a body larger than the largest request
+	 * the server reads, cf. BookStoreConstants.PROPERTY_KEY_MAX_REQUEST_SIZE
+	 * 
+	 * @param request
+	 * @return
+	 */
+	public static boolean isRequestTooLarge(HttpServletRequest request) {
+		return request.getContentLength() > MAX_REQUEST_SIZE;
+	}
+
+	/**
+	 * Decodes the message of the request while it is read, so that the body
+	 * is never held in memory as a whole. A body larger than the largest
+	 * request the server reads fails the decoding.
 	 * 
 	 * @param request
-	 * @return xml string
+	 * @return
 	 * @throws IOException
 	 */
-	public static String extractPOSTDataFromRequest(HttpServletRequest request)
+	public static Object decodeRequest(HttpServletRequest request)
 			throws IOException {
-		Reader reader = request.getReader();
-		int len = request.getContentLength();
-
-		// Request must be read into a char[] first
-		char res[] = new char[len];
-		reader.read(res);
-		reader.close();
-		return new String(res);
+		String charset = request.getCharacterEncoding();
+		Reader reader = new InputStreamReader(new BoundedInputStream(
+				request.getInputStream(), MAX_REQUEST_SIZE),
+				charset != null ? charset : DEFAULT_CHARSET);
+		try {
+			return XMLStreamHolder.XML_STREAM.fromXML(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Encodes the response straight to the output stream of the response,
+	 * through a buffer of the thread, so that the response is sent while it
+	 * is encoded and never held in memory as a whole.
+	 * 
+	 * @param response
+	 * @param object
+	 * @throws IOException
+	 */
+	public static void encodeResponse(HttpServletResponse response,
+			Object object) throws IOException {
+		OutputStream out = new PooledBufferedOutputStream(
+				response.getOutputStream());
+		try {
+			// in UTF-8 as the handlers declare, not the default charset
+			Writer writer = new OutputStreamWriter(out, RESPONSE_CHARSET);
+			XMLStreamHolder.XML_STREAM.toXML(object, writer);
+			writer.flush();
+		} finally {
+			out.close(); // gives the buffer back to the thread
+		}
 	}
 }
@@ -0,0 +1,101 @@
+package com.acertainbookstore.utils;
+
+import java.util.Arrays;
+
+/**
+ * DenseIntSet is a set of non-negative ints kept densely in an array, so that
+ * its elements can be listed, or picked by position, in time proportional to
+ * the size of the set. A map from each element to its position makes adding
+ * and removing constant time: a removed element is replaced by the last one.
+ *
+ * Like the IntIntHashMap it is not thread-safe, but it may be read while it is
+ * being written as long as the reader validates what it read.
+ *
+ */
+public class DenseIntSet {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] elements;
+	private int size;
+	private final IntIntHashMap positions; // element -> position in elements
+
+	public DenseIntSet() {
+		elements = new int[DEFAULT_CAPACITY];
+		positions = new IntIntHashMap();
+	}
+
+	public int size() {
+		return Math.min(size, elements.length);
+	}
+
+	/**
+	 * Returns the element at the position, which must be less than size().
+	 *
+	 * @param position
+	 * @return
+	 */
+	public int get(int position) {
+		return elements[position];
+	}
+
+	public boolean contains(int element) {
+		return positions.containsKey(element);
+	}
+
+	/**
+	 * Adds the element, which must be non-negative.
+	 *
+	 * @param element
+	 * @return true if the element was not in the set
+	 */
+	public boolean add(int element) {
+		if (positions.containsKey(element)) {
+			return false;
+		}
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, elements.length * 2);
+		}
+		positions.put(element, size);
+		elements[size++] = element;
+		return true;
+	}
+
+	/**
+	 * Removes the element and moves the last element into its position.
+	 *
+	 * @param element
+	 * @return true if the element was in the set
+	 */
+	public boolean remove(int element) {
+		int position = positions.remove(element);
+		if (position == IntIntHashMap.NO_VALUE) {
+			return false;
+		}
+		int last = elements[--size];
+		if (position != size) {
+			elements[position] = last;
+			positions.put(last, position);
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the element by another one, which must not be in the set, in
+	 * the same position.
+	 *
+	 * @param element
+	 * @param replacement
+	 */
+	public void replace(int element, int replacement) {
+		int position = positions.remove(element);
+		if (position != IntIntHashMap.NO_VALUE) {
+			elements[position] = replacement;
+			positions.put(replacement, position);
+		}
+	}
+
+	public void clear() {
+		positions.clear();
+		size = 0;
+	}
+}
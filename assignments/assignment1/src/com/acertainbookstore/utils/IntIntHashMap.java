@@ -0,0 +1,184 @@
+package com.acertainbookstore.utils;
+
+import java.util.Arrays;
+
+/**
+ * IntIntHashMap maps int keys to int values without boxing them, in open
+ * addressing with linear probing. A key that is not in the map has the value
+ * NO_VALUE, so NO_VALUE itself cannot be stored.
+ *
+ * It is not thread-safe, but it may be read without
+ * locks while it is being written: such a read terminates and does not throw,
+ * but its answer must be validated by the caller.
+ *
+ */
+public class IntIntHashMap {
+	public static final int NO_VALUE = -1;
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	/**
+	 * A slot is free while its value is NO_VALUE.
+	 */
+	private static final class Table {
+		private final int[] keys;
+		private final int[] values;
+		private final int mask;
+
+		private Table(int capacity) {
+			keys = new int[capacity];
+			values = new int[capacity];
+			Arrays.fill(values, NO_VALUE);
+			mask = capacity - 1;
+		}
+	}
+
+	private Table table;
+	private int size;
+
+	public IntIntHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IntIntHashMap(int expectedSize) {
+		table = new Table(capacityFor(expectedSize));
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity * LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static int index(int key, int mask) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private static int find(Table t, int key) {
+		int i = index(key, t.mask);
+		for (int probes = 0; probes <= t.mask; probes++) {
+			if (t.values[i] == NO_VALUE) {
+				return -1;
+			}
+			if (t.keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & t.mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of the key, or NO_VALUE if it is not in the map.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public int get(int key) {
+		Table t = table;
+		int i = find(t, key);
+		return i < 0 ? NO_VALUE : t.values[i];
+	}
+
+	public boolean containsKey(int key) {
+		return find(table, key) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Maps the key to the value and returns the previous value of the key, or
+	 * NO_VALUE.
+	 *
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public int put(int key, int value) {
+		if (value == NO_VALUE) {
+			throw new IllegalArgumentException("NO_VALUE cannot be stored");
+		}
+
+		Table t = table;
+		int i = index(key, t.mask);
+		while (t.values[i] != NO_VALUE) {
+			if (t.keys[i] == key) {
+				int previous = t.values[i];
+				t.values[i] = value;
+				return previous;
+			}
+			i = (i + 1) & t.mask;
+		}
+
+		if ((size + 1) > (t.mask + 1) * LOAD_FACTOR) {
+			resize((t.mask + 1) << 1);
+			return put(key, value);
+		}
+		t.keys[i] = key;
+		t.values[i] = value;
+		size++;
+		return NO_VALUE;
+	}
+
+	/**
+	 * Removes the key and returns its value, or NO_VALUE. The entries after it
+	 * in the probe sequence are shifted back, so no tombstones are needed.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public int remove(int key) {
+		Table t = table;
+		int i = find(t, key);
+		if (i < 0) {
+			return NO_VALUE;
+		}
+		int previous = t.values[i];
+		t.values[i] = NO_VALUE;
+		size--;
+
+		int j = i;
+		while (true) {
+			j = (j + 1) & t.mask;
+			if (t.values[j] == NO_VALUE) {
+				break;
+			}
+			int k = index(t.keys[j], t.mask);
+			boolean stays = (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+			if (!stays) {
+				t.keys[i] = t.keys[j];
+				t.values[i] = t.values[j];
+				t.values[j] = NO_VALUE;
+				i = j;
+			}
+		}
+		return previous;
+	}
+
+	public void clear() {
+		table = new Table(DEFAULT_CAPACITY);
+		size = 0;
+	}
+
+	private void resize(int capacity) {
+		Table old = table;
+		Table t = new Table(capacity);
+		for (int i = 0; i <= old.mask; i++) {
+			if (old.values[i] != NO_VALUE) {
+				int j = index(old.keys[i], t.mask);
+				while (t.values[j] != NO_VALUE) {
+					j = (j + 1) & t.mask;
+				}
+				t.keys[j] = old.keys[i];
+				t.values[j] = old.values[i];
+			}
+		}
+		table = t;
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package com.acertainbookstore.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * PooledBufferedOutputStream buffers the writes to a stream in a buffer of
+ * the thread, so that the server threads, which are pooled, encode every
+ * response through the same few buffers instead of allocating new ones. The
+ * stream takes the buffer of the thread when it is made and gives it back
+ * when it is closed, so a thread can only have one open at a time.
+ *
+ */
+public class PooledBufferedOutputStream extends FilterOutputStream {
+	public static final int BUFFER_SIZE = 8192;
+
+	// The buffer of the thread, or null while a stream of the thread has it
+	private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[BUFFER_SIZE];
+		}
+	};
+
+	private byte[] buffer;
+	private int count = 0;
+
+	/**
+	 * Makes a stream which takes the buffer of the thread.
+	 * 
+	 * @param out
+	 * @throws IllegalStateException
+	 *             if another stream of the thread has not been closed
+	 */
+	public PooledBufferedOutputStream(OutputStream out) {
+		super(out);
+		buffer = buffers.get();
+		if (buffer == null) {
+			throw new IllegalStateException(
+					"the buffer of the thread is in use by another stream");
+		}
+		buffers.set(null);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len >= buffer.length) {
+			// no use copying it
+			flushBuffer();
+			out.write(b, off, len);
+			return;
+		}
+		if (len > buffer.length - count) {
+			flushBuffer();
+		}
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Flushes the stream, gives the buffer back to the thread and closes the
+	 * underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (buffer == null) {
+			return;
+		}
+		try {
+			flushBuffer();
+		} finally {
+			buffers.set(buffer);
+			buffer = null;
+			out.close();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
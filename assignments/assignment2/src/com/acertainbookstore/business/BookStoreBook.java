@@ -1,5 +1,8 @@
 package com.acertainbookstore.business;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.acertainbookstore.utils.BookStoreUtility;
 
 /**
@@ -7,13 +10,64 @@ import com.acertainbookstore.utils.BookStoreUtility;
  * in the BookStoreClient and StockManager, cf. the Book interface and the
  * StockBook interface.
  * 
+ * The book carries a version which counts both the updates in progress (in
+ * its low 32 bits) and the updates done (in its high 32 bits), so that it can
+ * be read without taking its lock: a reader copies the book and checks
+ * afterwards that no update was in progress and that the version is
+ * unchanged. Unlike a sequence number this works when several updates run
+ * at once, which happens because copies are bought without locking the book.
+ * The stock counters are atomic for the same reason, cf. reserveCopies. The
+ * other fields are volatile so that the reads cannot be reordered.
+ * 
+ * The updates that do not lock the book start with tryBeginUnlockedUpdate,
+ * which fails while a reader holds the updates of the book, cf. holdUpdates.
+ * A reader that holds the lock of the book and its updates sees no update in
+ * progress at all.
+ * 
+ * The stock of a book is a single counter until purchases of the book keep
+ * failing their compare-and-set on it, that is until HOT_CONTENTION of them
+ * fail within one CONTENTION_WINDOW. The book is hot then, and its stock is
+ * moved to a StripedStock for good.
+ * 
+ * The immutable copies handed out by immutableBook and immutableStockBook are
+ * cached, so that reads of books that did not change allocate nothing. A
+ * cached stock copy is tagged with the version it was copied at and is only
+ * used while the version is unchanged, so every change of the book, which
+ * must be made between beginUpdate and endUpdate, invalidates it.
+ * 
  */
 public class BookStoreBook extends ImmutableBook {
-	private int numCopies;
-	private long totalRating;
-	private long timesRated;
-	private long saleMisses;
-	private boolean editorPick;
+	private static final long UPDATE_STARTED = 1L;
+	private static final long UPDATE_DONE = 1L << 32;
+	private static final int HOT_CONTENTION = 64; // failed compare-and-sets
+	private static final long CONTENTION_WINDOW = 10000000L; // nanoseconds
+	private static final int MOVED = Integer.MIN_VALUE; // stock is striped
+
+	/**
+	 * An immutable copy of the book and the version it was copied at.
+	 */
+	private static final class CachedCopy {
+		private final long version;
+		private final StockBook book;
+
+		private CachedCopy(long version, StockBook book) {
+			this.version = version;
+			this.book = book;
+		}
+	}
+
+	private final AtomicLong version = new AtomicLong();
+	private final AtomicInteger numCopies = new AtomicInteger();
+	private final AtomicInteger contention = new AtomicInteger();
+	private volatile long contentionWindowStart = System.nanoTime();
+	private final AtomicInteger updatesHeld = new AtomicInteger();
+	private volatile StripedStock stripedStock; // null while the book is cold
+	private volatile long totalRating;
+	private volatile long timesRated;
+	private final AtomicLong saleMisses = new AtomicLong();
+	private volatile boolean editorPick;
+	private volatile CachedCopy cachedCopy;
+	private volatile ImmutableBook cachedBook;
 
 	/**
 	 * Constructor to create a book object
@@ -52,11 +106,18 @@ public class BookStoreBook extends ImmutableBook {
 	}
 
 	public int getNumCopies() {
-		return numCopies;
+		StripedStock stock = stripedStock;
+		if (stock == null) {
+			int inStock = numCopies.get();
+			if (inStock != MOVED)
+				return inStock;
+			stock = stripedStock;
+		}
+		return stock.get();
 	}
 
 	public long getSaleMisses() {
-		return saleMisses;
+		return saleMisses.get();
 	}
 
 	public float getAverageRating() {
@@ -67,6 +128,94 @@ public class BookStoreBook extends ImmutableBook {
 		return editorPick;
 	}
 
+	/**
+	 * Returns the version of the book, cf. isUpdating.
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Returns true if an update of the book was in progress when it had the
+	 * given version.
+	 * 
+	 * @param version
+	 * @return
+	 */
+	public static boolean isUpdating(long version) {
+		return (version & (UPDATE_DONE - 1)) != 0;
+	}
+
+	/**
+	 * Marks the start of an update. Several updates may be in progress at
+	 * once.
+	 */
+	public void beginUpdate() {
+		version.addAndGet(UPDATE_STARTED);
+	}
+
+	/**
+	 * Marks the end of an update started by beginUpdate or
+	 * tryBeginUnlockedUpdate.
+	 */
+	public void endUpdate() {
+		version.addAndGet(UPDATE_DONE - UPDATE_STARTED);
+	}
+
+	/**
+	 * Marks the start of an update made without the lock of the book, unless
+	 * a reader holds the updates of the book.
+	 * 
+	 * @return true if the update was started, false if it must wait for
+	 *         awaitUpdatesReleased
+	 */
+	public boolean tryBeginUnlockedUpdate() {
+		version.addAndGet(UPDATE_STARTED);
+		if (updatesHeld.get() == 0)
+			return true;
+		abortUpdate();
+		return false;
+	}
+
+	/**
+	 * Takes back the start of an update that changed nothing yet.
+	 */
+	public void abortUpdate() {
+		version.addAndGet(-UPDATE_STARTED);
+	}
+
+	/**
+	 * Waits until no reader holds the updates of the book. The caller must
+	 * not have any update of a book in progress.
+	 */
+	public void awaitUpdatesReleased() {
+		while (updatesHeld.get() != 0) {
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Keeps updates made without the lock of the book from starting and waits
+	 * for those in progress to end. The caller must hold the lock of the
+	 * book, so no other update is in progress either, and must call
+	 * releaseUpdates when done.
+	 */
+	public void holdUpdates() {
+		updatesHeld.incrementAndGet();
+		while (isUpdating(version.get())) {
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Lets the updates held by holdUpdates start again.
+	 */
+	public void releaseUpdates() {
+		updatesHeld.decrementAndGet();
+	}
+
 	/**
 	 * Sets the total rating of the book.
 	 * 
@@ -91,7 +240,7 @@ public class BookStoreBook extends ImmutableBook {
 	 * @param numCopies
 	 */
 	private void setNumCopies(int numCopies) {
-		this.numCopies = numCopies;
+		this.numCopies.set(numCopies);
 	}
 
 	/**
@@ -101,7 +250,7 @@ public class BookStoreBook extends ImmutableBook {
 	 * @param saleMisses
 	 */
 	private void setSaleMisses(long saleMisses) {
-		this.saleMisses = saleMisses;
+		this.saleMisses.set(saleMisses);
 	}
 
 	/**
@@ -121,7 +270,90 @@ public class BookStoreBook extends ImmutableBook {
 	 * @return
 	 */
 	public boolean areCopiesInStore(int numCopies) {
-		return (this.numCopies >= numCopies);
+		return (getNumCopies() >= numCopies);
+	}
+
+	/**
+	 * Takes numCopies of the book out of the stock, if they are in stock.
+	 * This is a compare-and-set on the stock, so concurrent reservations never
+	 * take more copies than there are. If the compare-and-sets fail too often,
+	 * the stock is striped, cf. makeHot.
+	 * 
+	 * @param numCopies
+	 * @return true if the copies were taken
+	 */
+	public boolean reserveCopies(int numCopies) {
+		StripedStock stock = stripedStock;
+		if (stock == null) {
+			while (true) {
+				int inStock = this.numCopies.get();
+				if (inStock == MOVED)
+					break;
+				if (inStock < numCopies)
+					return false;
+				if (this.numCopies.compareAndSet(inStock, inStock - numCopies))
+					return true;
+				recordContention();
+			}
+			stock = stripedStock;
+		}
+		return stock.reserve(numCopies);
+	}
+
+	/**
+	 * Counts a failed compare-and-set on the stock, and makes the book hot if
+	 * it is the HOT_CONTENTION one of the current window. A count left from
+	 * an earlier window is dropped, so a book that is bought by many clients
+	 * now and then is not made hot.
+	 */
+	private void recordContention() {
+		long now = System.nanoTime();
+		if (now - contentionWindowStart > CONTENTION_WINDOW) {
+			// a race here only drops a few failures from the new window
+			contentionWindowStart = now;
+			contention.set(0);
+		}
+		if (contention.incrementAndGet() == HOT_CONTENTION)
+			makeHot();
+	}
+
+	/**
+	 * Puts back numCopies taken by reserveCopies.
+	 * 
+	 * @param numCopies
+	 */
+	public void releaseCopies(int numCopies) {
+		addToStock(numCopies);
+	}
+
+	private void addToStock(int numCopies) {
+		StripedStock stock = stripedStock;
+		if (stock == null) {
+			while (true) {
+				int inStock = this.numCopies.get();
+				if (inStock == MOVED)
+					break;
+				if (this.numCopies.compareAndSet(inStock, inStock + numCopies))
+					return;
+			}
+			stock = stripedStock;
+		}
+		stock.add(numCopies);
+	}
+
+	/**
+	 * Moves the stock to a StripedStock. The single counter is left MOVED, so
+	 * the operations that still use it go to the striped stock instead, and
+	 * the striped stock is not rebalanced before it holds all the copies.
+	 */
+	private synchronized void makeHot() {
+		if (stripedStock != null)
+			return;
+		StripedStock stock = new StripedStock();
+		synchronized (stock) {
+			stripedStock = stock;
+			stock.add(this.numCopies.getAndSet(MOVED));
+		}
 	}
 
 	/**
@@ -132,10 +364,7 @@ public class BookStoreBook extends ImmutableBook {
 	 */
 	public boolean buyCopies(int numCopies) {
 		if (!BookStoreUtility.isInvalidNoCopies(numCopies))
-			if (areCopiesInStore(numCopies)) {
-				this.numCopies -= numCopies;
-				return true;
-			}
+			return reserveCopies(numCopies);
 		return false;
 	}
 
@@ -144,8 +373,8 @@ public class BookStoreBook extends ImmutableBook {
 	 */
 	public void addCopies(int newCopies) {
 		if (!BookStoreUtility.isInvalidNoCopies(newCopies)) {
-			this.numCopies += newCopies;
-			this.saleMisses = 0;
+			addToStock(newCopies);
+			this.saleMisses.set(0);
 		}
 	}
 
@@ -153,7 +382,7 @@ public class BookStoreBook extends ImmutableBook {
 	 * Increases the amount of missed sales of the book.
 	 */
 	public void addSaleMiss() {
-		this.saleMisses++;
+		this.saleMisses.incrementAndGet();
 	}
 
 	/**
@@ -175,7 +404,7 @@ public class BookStoreBook extends ImmutableBook {
 	 * @return
 	 */
 	public boolean hadSaleMiss() {
-		return this.saleMisses > 0;
+		return this.saleMisses.get() > 0;
 	}
 
 	/**
@@ -194,8 +423,15 @@ public class BookStoreBook extends ImmutableBook {
 	 * @return
 	 */
 	public ImmutableBook immutableBook() {
-		return new ImmutableBook(this.getISBN(), new String(this.getTitle()),
-				new String(this.getAuthor()), this.getPrice());
+		ImmutableBook book = cachedBook;
+		if (book == null) {
+			// the fields of an ImmutableBook never change, so a race here
+			// only creates the copy twice
+			book = new ImmutableBook(this.getISBN(), this.getTitle(),
+					this.getAuthor(), this.getPrice());
+			cachedBook = book;
+		}
+		return book;
 	}
 
 	/**
@@ -204,10 +440,21 @@ public class BookStoreBook extends ImmutableBook {
 	 * @return
 	 */
 	public StockBook immutableStockBook() {
-		return new ImmutableStockBook(this.getISBN(), new String(
-				this.getTitle()), new String(this.getAuthor()),
-				this.getPrice(), this.numCopies, this.saleMisses,
-				this.timesRated, this.totalRating, this.editorPick);
+		long version = getVersion();
+		CachedCopy cached = cachedCopy;
+		if (cached != null && cached.version == version) {
+			return cached.book;
+		}
+
+		StockBook book = new ImmutableStockBook(this.getISBN(),
+				this.getTitle(), this.getAuthor(), this.getPrice(),
+				getNumCopies(), this.saleMisses.get(), this.timesRated,
+				this.totalRating, this.editorPick);
+		// only cache the copy if no update overlapped with copying it
+		if (!isUpdating(version) && getVersion() == version) {
+			cachedCopy = new CachedCopy(version, book);
+		}
+		return book;
 	}
 
 	/**
@@ -217,7 +464,7 @@ public class BookStoreBook extends ImmutableBook {
 	 */
 	public BookStoreBook copy() {
 		return new BookStoreBook(this.getISBN(), new String(this.getTitle()),
-				new String(this.getAuthor()), this.getPrice(), this.numCopies);
+				new String(this.getAuthor()), this.getPrice(), getNumCopies());
 	}
 
 }
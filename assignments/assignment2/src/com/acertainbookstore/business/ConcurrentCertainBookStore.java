@@ -3,8 +3,7 @@
  */
 package com.acertainbookstore.business;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.Lock;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -18,101 +17,319 @@ import java.util.Random;
 import java.util.Set;
 
 import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.LockManager;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.ConcurrentIntObjectHashMap;
 
 /**
  * ConcurrentCertainBookStore implements the bookstore and its functionality which is
  * defined in the BookStore
+ * 
+ * Operations on a set of books lock the books through the LockManager, in
+ * ISBN order, and do not take the catalog lock. The catalog lock is only taken
+ * when books are added or removed and when the whole catalog is read.
+ * 
+ * Reads do not take any locks at first. They copy the books and then check
+ * that the sequence numbers of the books (and of the catalog, if the whole
+ * catalog is read) did not change meanwhile, so the copies form one
+ * consistent cut of the store. Updates mark all the books they touch as being
+ * updated until they are done with all of them. Only if a read keeps failing
+ * because of concurrent updates does it fall back to taking the read locks.
+ * 
+ * Purchases do not take any locks either, cf. buyBooks. A read that fell back
+ * to the locks therefore also holds the purchases of the books it copies, cf.
+ * BookStoreBook.holdUpdates.
+ * 
+ * If the lock manager records LockStats, the time each operation waits for
+ * its locks is recorded as well, cf. getLockStats.
  */
 public class ConcurrentCertainBookStore implements BookStore, StockManager {
-	private ConcurrentHashMap<Integer, BookStoreBook> bookMap;
-	private ConcurrentHashMap<Integer, ReentrantReadWriteLock> locks;
-	private ReentrantReadWriteLock globalLock; // locks, ehm... the locks ^^
+	private static final int OPTIMISTIC_READ_ATTEMPTS = 4;
+
+	private ConcurrentIntObjectHashMap<BookStoreBook> bookMap;
+	private volatile int optimisticReadAttempts = OPTIMISTIC_READ_ATTEMPTS;
+	private LockManager lockManager;
+	private LockStats lockStats; // null if no stats are recorded
+	private volatile int catalogVersion; // odd while books are added/removed
 	
 	public ConcurrentCertainBookStore() {
-		// Constructors are not synchronized
-		locks = new ConcurrentHashMap<Integer, ReentrantReadWriteLock>();
-		bookMap = new ConcurrentHashMap<Integer, BookStoreBook>();
-		globalLock = new ReentrantReadWriteLock();
+		this(new OrderedLockManager());
 	}
 	
-	private void read_lock(Set<Integer> isbnSet) {
-		globalLock.readLock().lock();
-		try {
-			for (Integer ISBN : isbnSet) {
-				ReentrantReadWriteLock lock = locks.get(ISBN);
-				lock.readLock().lock();
-			}
+	public ConcurrentCertainBookStore(LockManager lockManager) {
+		// Constructors are not synchronized
+		bookMap = new ConcurrentIntObjectHashMap<BookStoreBook>();
+		this.lockManager = lockManager;
+		this.lockStats = lockManager.getStats();
+	}
+
+	/**
+	 * Returns the lock stats of the store, or null if its lock manager does
+	 * not record any.
+	 * 
+	 * @return
+	 */
+	public LockStats getLockStats() {
+		return lockStats;
+	}
+
+	/**
+	 * Sets how many times a read copies the books without taking any locks
+	 * before it falls back to the read locks. With 0 every read takes the
+	 * locks.
+	 * 
+	 * @param attempts
+	 */
+	public void setOptimisticReadAttempts(int attempts) {
+		this.optimisticReadAttempts = attempts;
+	}
+
+	private long startWait() {
+		return lockStats == null ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Records the time the operation waited for its locks since startWait.
+	 */
+	private void endWait(BookStoreMessageTag operation, long start) {
+		if (lockStats != null) {
+			lockStats.recordWait(operation, System.nanoTime() - start);
 		}
-		finally {
-			globalLock.readLock().unlock();
+	}
+	
+	private Set<Integer> getISBNsForBookCopies(Set<BookCopy> copies) {
+		Set<Integer> ISBNs = new HashSet<Integer>();
+		for (BookCopy copy : copies) {
+			ISBNs.add(copy.getISBN());
 		}
+		return ISBNs;
 	}
 	
-	private void read_unlock(Set<Integer> isbnSet) {
-		// globalLock.readLock().lock();
-		try {
-			for (Integer ISBN : isbnSet) {
-				ReentrantReadWriteLock lock = locks.get(ISBN);
-				lock.readLock().unlock();
-			}
+	private Set<Integer> getISBNsForEditorPicks(Set<BookEditorPick> picks) {
+		Set<Integer> ISBNs = new HashSet<Integer>();
+		for (BookEditorPick pick : picks) {
+			ISBNs.add(pick.getISBN());
 		}
-		finally {
-			// globalLock.readLock().unlock();
+		return ISBNs;
+	}
+
+	/**
+	 * Checks that the ISBNs are valid. This is done before locking, the
+	 * checks that depend on the contents of the store are done once the books
+	 * are locked.
+	 * 
+	 * @param isbnSet
+	 * @throws BookStoreException
+	 */
+	private void validateISBNs(Set<Integer> isbnSet) throws BookStoreException {
+		for (Integer ISBN : isbnSet) {
+			if (BookStoreUtility.isInvalidISBN(ISBN))
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.INVALID);
 		}
 	}
-	
-	private void write_lock(Set<Integer> isbnSet) {
-		globalLock.writeLock().lock();
+
+	/**
+	 * Checks that the books are (still) in the store, the books must be
+	 * locked by the caller.
+	 * 
+	 * @param isbnSet
+	 * @throws BookStoreException
+	 */
+	private void validateInStore(Set<Integer> isbnSet)
+			throws BookStoreException {
+		for (Integer ISBN : isbnSet) {
+			if (!bookMap.containsKey(ISBN))
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.NOT_AVAILABLE);
+		}
+	}
+
+	/**
+	 * Marks the start of an update of the books, which must be in the store.
+	 * Optimistic reads of the books fail until endUpdate is called.
+	 * 
+	 * @param isbnSet
+	 * @return the books being updated
+	 */
+	private BookStoreBook[] beginUpdate(Set<Integer> isbnSet) {
+		BookStoreBook[] books = new BookStoreBook[isbnSet.size()];
+		int i = 0;
+		for (Integer ISBN : isbnSet) {
+			books[i] = bookMap.get(ISBN);
+			books[i++].beginUpdate();
+		}
+		return books;
+	}
+
+	private void endUpdate(BookStoreBook[] books) {
+		for (BookStoreBook book : books) {
+			book.endUpdate();
+		}
+	}
+
+	/**
+	 * Marks the start of a purchase of the books, which does not lock them.
+	 * If a reader holds the updates of one of the books, the updates started
+	 * so far are taken back and we wait for the reader before we start over,
+	 * so a purchase never waits with an update in progress.
+	 * 
+	 * @param books
+	 */
+	private void beginPurchase(BookStoreBook[] books) {
+		int begun = 0;
+		while (begun < books.length) {
+			if (books[begun].tryBeginUnlockedUpdate()) {
+				begun++;
+			} else {
+				for (int i = 0; i < begun; i++) {
+					books[i].abortUpdate();
+				}
+				books[begun].awaitUpdatesReleased();
+				begun = 0;
+			}
+		}
+	}
+
+	/**
+	 * Copies the books, which the caller has read locked, once the purchases
+	 * in progress are done, and keeps new ones from starting meanwhile.
+	 * 
+	 * @param books
+	 * @return
+	 */
+	private List<StockBook> copyHeldBooks(Collection<BookStoreBook> books) {
+		List<StockBook> listBooks = new ArrayList<StockBook>(books.size());
+		List<BookStoreBook> held = new ArrayList<BookStoreBook>(books.size());
 		try {
-			for (Integer ISBN : isbnSet) {
-				ReentrantReadWriteLock lock = locks.get(ISBN);
-				lock.writeLock().lock();
+			for (BookStoreBook book : books) {
+				book.holdUpdates();
+				held.add(book);
+			}
+			for (BookStoreBook book : books) {
+				listBooks.add(book.immutableStockBook());
 			}
 		}
 		finally {
-			globalLock.writeLock().unlock();
+			for (BookStoreBook book : held) {
+				book.releaseUpdates();
+			}
 		}
+		return listBooks;
 	}
-	
-	private void write_unlock(Set<Integer> isbnSet) {
-		// globalLock.writeLock().lock();
+
+	/**
+	 * Copies the books without taking any locks. Returns null if one of the
+	 * books was updated, removed or replaced while we copied it.
+	 * 
+	 * @param isbnSet
+	 * @return
+	 * @throws BookStoreException
+	 */
+	private List<StockBook> tryReadBooks(Set<Integer> isbnSet)
+			throws BookStoreException {
+		BookStoreBook[] books = new BookStoreBook[isbnSet.size()];
+		long[] versions = new long[books.length];
+		List<StockBook> listBooks = new ArrayList<StockBook>(books.length);
+
+		int i = 0;
+		for (Integer ISBN : isbnSet) {
+			BookStoreBook book = bookMap.get(ISBN);
+			if (book == null)
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.NOT_AVAILABLE);
+			long version = book.getVersion();
+			if (BookStoreBook.isUpdating(version))
+				return null;
+			listBooks.add(book.immutableStockBook());
+			books[i] = book;
+			versions[i++] = version;
+		}
+
+		// all the books held their copied state at the end of the loop above
+		i = 0;
+		for (Integer ISBN : isbnSet) {
+			if (books[i].getVersion() != versions[i]
+					|| bookMap.get(ISBN) != books[i])
+				return null;
+			i++;
+		}
+		return listBooks;
+	}
+
+	/**
+	 * Copies the books, optimistically at first and otherwise under the read
+	 * locks of the books.
+	 * 
+	 * @param isbnSet
+	 * @param operation
+	 * @return
+	 * @throws BookStoreException
+	 */
+	private List<StockBook> readBooks(Set<Integer> isbnSet,
+			BookStoreMessageTag operation) throws BookStoreException {
+		for (int attempt = 0; attempt < optimisticReadAttempts; attempt++) {
+			List<StockBook> listBooks = tryReadBooks(isbnSet);
+			if (listBooks != null) {
+				return listBooks;
+			}
+		}
+
+		long start = startWait();
+		Lock[] bookLocks = lockManager.lockBooks(isbnSet, false);
+		endWait(operation, start);
 		try {
+			validateInStore(isbnSet);
+
+			List<BookStoreBook> books = new ArrayList<BookStoreBook>(
+					isbnSet.size());
 			for (Integer ISBN : isbnSet) {
-				ReentrantReadWriteLock lock = locks.get(ISBN);
-				lock.writeLock().unlock();
+				books.add(bookMap.get(ISBN));
 			}
+			return copyHeldBooks(books);
 		}
 		finally {
-			// globalLock.writeLock().unlock();
+			lockManager.unlockBooks(bookLocks);
 		}
 	}
-	
-	private Set<Integer> getISBNsForStockBooks(List<StockBook> books) {
-		Set<Integer> ISBNs = new HashSet<Integer>();
-		for (StockBook book : books) {
-			ISBNs.add(book.getISBN());
-		}
-		return ISBNs;
-	}
-	
-	private Set<Integer> getISBNsForBookCopies(Set<BookCopy> copies) {
-		Set<Integer> ISBNs = new HashSet<Integer>();
-		for (BookCopy copy : copies) {
-			ISBNs.add(copy.getISBN());
+
+	/**
+	 * Copies the whole catalog without taking any locks. Returns null if
+	 * books were added, removed or updated while we copied them.
+	 * 
+	 * @return
+	 */
+	private List<StockBook> tryReadAllBooks() {
+		int catalog = catalogVersion;
+		if ((catalog & 1) != 0)
+			return null;
+
+		int size = bookMap.size();
+		BookStoreBook[] books = new BookStoreBook[size];
+		long[] versions = new long[size];
+		List<StockBook> listBooks = new ArrayList<StockBook>(size);
+
+		int i = 0;
+		for (BookStoreBook book : bookMap.values()) {
+			long version = book.getVersion();
+			if (BookStoreBook.isUpdating(version) || i == size)
+				return null;
+			listBooks.add(book.immutableStockBook());
+			books[i] = book;
+			versions[i++] = version;
 		}
-		return ISBNs;
-	}
-	
-	private Set<Integer> getISBNsForEditorPicks(Set<BookEditorPick> picks) {
-		Set<Integer> ISBNs = new HashSet<Integer>();
-		for (BookEditorPick pick : picks) {
-			ISBNs.add(pick.getISBN());
+
+		for (int j = 0; j < i; j++) {
+			if (books[j].getVersion() != versions[j])
+				return null;
 		}
-		return ISBNs;
+		if (catalogVersion != catalog)
+			return null;
+		return listBooks;
 	}
 
 	public void addBooks(Set<StockBook> bookSet)
@@ -122,7 +339,9 @@ public class ConcurrentCertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 		
-		globalLock.writeLock().lock();
+		long start = startWait();
+		lockManager.lockCatalog(true);
+		endWait(BookStoreMessageTag.ADDBOOKS, start);
 		try {
 			// Check if all are there
 			for (StockBook book : bookSet) {
@@ -145,26 +364,20 @@ public class ConcurrentCertainBookStore implements BookStore, StockManager {
 				}
 			}
 			
+			catalogVersion++;
 			for (StockBook book : bookSet) {
 				int ISBN = book.getISBN();
 				
-				// create lock
-				ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-				locks.put(ISBN, new ReentrantReadWriteLock());
-				
-				lock.writeLock().lock();
-				try {
-					// add book
-					bookMap.put(ISBN, new BookStoreBook(book));
-				}
-				finally {
-					lock.writeLock().unlock();
-				}
+				// create lock, the book is not visible to anyone else until
+				// it is put in the map
+				lockManager.addLock(ISBN);
+				bookMap.put(ISBN, new BookStoreBook(book));
 			}
+			catalogVersion++;
 		
 		}
 		finally {
-			globalLock.writeLock().unlock();
+			lockManager.unlockCatalog(true);
 		}
 		return;
 	}
@@ -177,53 +390,67 @@ public class ConcurrentCertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 		
-		write_lock(getISBNsForBookCopies(bookCopiesSet));
+		for (BookCopy bookCopy : bookCopiesSet) {
+			ISBN = bookCopy.getISBN();
+			numCopies = bookCopy.getNumCopies();
+			if (BookStoreUtility.isInvalidISBN(ISBN))
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.INVALID);
+			if (BookStoreUtility.isInvalidNoCopies(numCopies))
+				throw new BookStoreException(BookStoreConstants.NUM_COPIES
+						+ numCopies + BookStoreConstants.INVALID);
+		}
+		
+		Set<Integer> isbnSet = getISBNsForBookCopies(bookCopiesSet);
+		long start = startWait();
+		Lock[] bookLocks = lockManager.lockBooks(isbnSet, true);
+		endWait(BookStoreMessageTag.ADDCOPIES, start);
 		
 		try {
-			for (BookCopy bookCopy : bookCopiesSet) {
-				ISBN = bookCopy.getISBN();
-				numCopies = bookCopy.getNumCopies();
-				if (BookStoreUtility.isInvalidISBN(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.INVALID);
-				if (BookStoreUtility.isInvalidNoCopies(numCopies))
-					throw new BookStoreException(BookStoreConstants.NUM_COPIES
-							+ numCopies + BookStoreConstants.INVALID);
-				if (!bookMap.containsKey(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.NOT_AVAILABLE);
-			}
+			validateInStore(isbnSet);
 	
-			BookStoreBook book;
-			// Update the number of copies
-			for (BookCopy bookCopy : bookCopiesSet) {
-				ISBN = bookCopy.getISBN();
-				numCopies = bookCopy.getNumCopies();
-				book = bookMap.get(ISBN);
-				book.addCopies(numCopies);
+			BookStoreBook[] books = beginUpdate(isbnSet);
+			try {
+				BookStoreBook book;
+				// Update the number of copies
+				for (BookCopy bookCopy : bookCopiesSet) {
+					ISBN = bookCopy.getISBN();
+					numCopies = bookCopy.getNumCopies();
+					book = bookMap.get(ISBN);
+					book.addCopies(numCopies);
+				}
+			}
+			finally {
+				endUpdate(books);
 			}
 		}
 		finally {
-			write_unlock(getISBNsForBookCopies(bookCopiesSet));
+			lockManager.unlockBooks(bookLocks);
 		}
 	}
 
 	public List<StockBook> getBooks() {
-		List<StockBook> listBooks = new ArrayList<StockBook>();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-		
-		this.read_lock(bookMap.keySet());
+		for (int attempt = 0; attempt < optimisticReadAttempts; attempt++) {
+			List<StockBook> listBooks = tryReadAllBooks();
+			if (listBooks != null) {
+				return listBooks;
+			}
+		}
+
+		// the catalog lock keeps books from being added or removed, the book
+		// locks and holds keep them from being updated while we copy them
+		long start = startWait();
+		lockManager.lockCatalog(false);
+		Lock[] bookLocks = lockManager.lockAllBooks(false);
+		endWait(BookStoreMessageTag.LISTBOOKS, start);
 		
 		try {
-			for (BookStoreBook book : bookMapValues) {
-				listBooks.add(book.immutableStockBook());
-			}
+			return copyHeldBooks(new ArrayList<BookStoreBook>(bookMap.values()));
 		}
 		finally {
-			this.read_unlock(bookMap.keySet());
+			lockManager.unlockBooks(bookLocks);
+			lockManager.unlockCatalog(false);
 		}
-		
-		return listBooks;
 	}
 	
 	public void updateEditorPicks(Set<BookEditorPick> editorPicks)
@@ -233,115 +460,125 @@ public class ConcurrentCertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 
-		int ISBNVal;
+		Set<Integer> isbnSet = getISBNsForEditorPicks(editorPicks);
+		validateISBNs(isbnSet);
 		
-		this.write_lock(getISBNsForEditorPicks(editorPicks));
+		long start = startWait();
+		Lock[] bookLocks = lockManager.lockBooks(isbnSet, true);
+		endWait(BookStoreMessageTag.UPDATEEDITORPICKS, start);
 		
 		try {
-			for (BookEditorPick editorPickArg : editorPicks) {
-				ISBNVal = editorPickArg.getISBN();
-				if (BookStoreUtility.isInvalidISBN(ISBNVal))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBNVal
-							+ BookStoreConstants.INVALID);
-				if (!bookMap.containsKey(ISBNVal))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBNVal
-							+ BookStoreConstants.NOT_AVAILABLE);
-			}
+			validateInStore(isbnSet);
 			
-			for (BookEditorPick editorPickArg : editorPicks) {
-				bookMap.get(editorPickArg.getISBN()).setEditorPick(
-						editorPickArg.isEditorPick());
+			BookStoreBook[] books = beginUpdate(isbnSet);
+			try {
+				for (BookEditorPick editorPickArg : editorPicks) {
+					bookMap.get(editorPickArg.getISBN()).setEditorPick(
+							editorPickArg.isEditorPick());
+				}
+			}
+			finally {
+				endUpdate(books);
 			}
 		}
 		finally {
-			this.write_unlock(getISBNsForEditorPicks(editorPicks));
+			lockManager.unlockBooks(bookLocks);
 		}
 		return;
 	}
 
+	/**
+	 * Buys the books without taking any locks. The copies are reserved book
+	 * by book with a compare-and-set on the stock of the book, and if one of
+	 * the books is not in stock, the reservations made so far are released
+	 * again, so either the whole order is bought or none of it is.
+	 */
 	public void buyBooks(Set<BookCopy> bookCopiesToBuy)
 			throws BookStoreException {
 		if (bookCopiesToBuy == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 		
-		this.write_lock(getISBNsForBookCopies(bookCopiesToBuy));
+		int ISBN;
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			ISBN = bookCopyToBuy.getISBN();
+			
+			if (bookCopyToBuy.getNumCopies() < 0)
+				throw new BookStoreException(BookStoreConstants.NUM_COPIES
+						+ bookCopyToBuy.getNumCopies()
+						+ BookStoreConstants.INVALID);
+			if (BookStoreUtility.isInvalidISBN(ISBN))
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.INVALID);
+		}
 		
+		// Check that all ISBNs that we buy are there first.
+		BookCopy[] copies = bookCopiesToBuy.toArray(new BookCopy[0]);
+		BookStoreBook[] books = new BookStoreBook[copies.length];
+		for (int i = 0; i < copies.length; i++) {
+			books[i] = bookMap.get(copies[i].getISBN());
+			if (books[i] == null)
+				throw new BookStoreException(BookStoreConstants.ISBN
+						+ copies[i].getISBN() + BookStoreConstants.NOT_AVAILABLE);
+		}
+		
+		beginPurchase(books);
 		try {
-			// Check that all ISBNs that we buy are there first.
-			int ISBN;
-			BookStoreBook book;
-			Boolean saleMiss = false;
-			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
-				ISBN = bookCopyToBuy.getISBN();
-				
-				if (bookCopyToBuy.getNumCopies() < 0)
-					throw new BookStoreException(BookStoreConstants.NUM_COPIES
-							+ bookCopyToBuy.getNumCopies()
-							+ BookStoreConstants.INVALID);
-				if (BookStoreUtility.isInvalidISBN(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.INVALID);
-				if (!bookMap.containsKey(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.NOT_AVAILABLE);
-				book = bookMap.get(ISBN);
-				if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
-					book.addSaleMiss(); // If we cannot sell the copies of the book
-										// its a miss
+			boolean[] reserved = new boolean[copies.length];
+			boolean saleMiss = false;
+			for (int i = 0; i < copies.length; i++) {
+				reserved[i] = books[i].reserveCopies(copies[i].getNumCopies());
+				if (!reserved[i]) {
+					books[i].addSaleMiss(); // If we cannot sell the copies of the book
+											// its a miss
 					saleMiss = true;
 				}
 			}
 	
 			// We throw exception now since we want to see how many books in the
 			// order incurred misses which is used by books in demand
-			if (saleMiss)
+			if (saleMiss) {
+				releaseCopies(copies, books, reserved);
 				throw new BookStoreException(BookStoreConstants.BOOK
 						+ BookStoreConstants.NOT_AVAILABLE);
+			}
 	
-			// Then make purchase
-			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
-				book = bookMap.get(bookCopyToBuy.getISBN());
-				book.buyCopies(bookCopyToBuy.getNumCopies());
+			// A book removed meanwhile cannot be bought, the purchase takes
+			// effect here if all the books are still in the store
+			for (int i = 0; i < copies.length; i++) {
+				if (bookMap.get(copies[i].getISBN()) != books[i]) {
+					releaseCopies(copies, books, reserved);
+					throw new BookStoreException(BookStoreConstants.ISBN
+							+ copies[i].getISBN()
+							+ BookStoreConstants.NOT_AVAILABLE);
+				}
 			}
-		
 		}
 		finally {
-			this.write_unlock(getISBNsForBookCopies(bookCopiesToBuy));
+			endUpdate(books);
 		}
 		
 		return;
 	}
 
+	private void releaseCopies(BookCopy[] copies, BookStoreBook[] books,
+			boolean[] reserved) {
+		for (int i = 0; i < copies.length; i++) {
+			if (reserved[i]) {
+				books[i].releaseCopies(copies[i].getNumCopies());
+			}
+		}
+	}
+
 	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet)
 			throws BookStoreException {
 		if (isbnSet == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 		
-		List<StockBook> listBooks = new ArrayList<StockBook>();
-		
-		this.read_lock(isbnSet);
+		validateISBNs(isbnSet);
 		
-		try {
-			for (Integer ISBN : isbnSet) {
-				if (BookStoreUtility.isInvalidISBN(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.INVALID);
-				if (!bookMap.containsKey(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.NOT_AVAILABLE);
-			}
-	
-			for (Integer ISBN : isbnSet) {
-				listBooks.add(bookMap.get(ISBN).immutableStockBook());
-			}
-		}
-		finally {
-			this.read_unlock(isbnSet);
-		}
-
-		return listBooks;
+		return readBooks(isbnSet, BookStoreMessageTag.GETSTOCKBOOKSBYISBN);
 	}
 
 	public List<Book> getBooks(Set<Integer> isbnSet)
@@ -352,28 +589,19 @@ public class ConcurrentCertainBookStore implements BookStore, StockManager {
 		
 		List<Book> listBooks = new ArrayList<Book>();
 		
-		this.read_lock(isbnSet);
+		validateISBNs(isbnSet);
 		
-		try {
-			
-			// Check that all ISBNs that we rate are there first.
-			for (Integer ISBN : isbnSet) {
-				if (BookStoreUtility.isInvalidISBN(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.INVALID);
-				if (!bookMap.containsKey(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.NOT_AVAILABLE);
-			}
-	
-			// Get the books
-			for (Integer ISBN : isbnSet) {
-				listBooks.add(bookMap.get(ISBN).immutableBook());
+		// Get the books, without the stock information. If the copy is the
+		// cached copy of the book, the cached ImmutableBook is the same book
+		for (StockBook copy : readBooks(isbnSet, BookStoreMessageTag.GETBOOKS)) {
+			BookStoreBook book = bookMap.get(copy.getISBN());
+			if (book != null && book.immutableStockBook() == copy) {
+				listBooks.add(book.immutableBook());
+			} else {
+				listBooks.add(new ImmutableBook(copy.getISBN(), copy
+						.getTitle(), copy.getAuthor(), copy.getPrice()));
 			}
 		}
-		finally {
-			this.read_unlock(isbnSet);
-		}
 		return listBooks;
 	}
 
@@ -461,9 +689,20 @@ public class ConcurrentCertainBookStore implements BookStore, StockManager {
 	}
 
 	public void removeAllBooks() throws BookStoreException {
-		this.write_lock(getISBNsForStockBooks(getBooks()));
-		bookMap.clear();
-		locks.clear();
+		long start = startWait();
+		lockManager.lockCatalog(true);
+		Lock[] bookLocks = lockManager.lockAllBooks(true);
+		endWait(BookStoreMessageTag.REMOVEALLBOOKS, start);
+		try {
+			catalogVersion++;
+			bookMap.clear();
+			lockManager.removeAllLocks();
+			catalogVersion++;
+		}
+		finally {
+			lockManager.unlockBooks(bookLocks);
+			lockManager.unlockCatalog(true);
+		}
 	}
 
 	public void removeBooks(Set<Integer> isbnSet)
@@ -473,28 +712,29 @@ public class ConcurrentCertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 		
-		this.write_lock(isbnSet);
+		validateISBNs(isbnSet);
+		
+		long start = startWait();
+		lockManager.lockCatalog(true);
 		try {
-			for (Integer ISBN : isbnSet) {
-				if (BookStoreUtility.isInvalidISBN(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.INVALID);
-				if (!bookMap.containsKey(ISBN))
-					throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-							+ BookStoreConstants.NOT_AVAILABLE);
+			Lock[] bookLocks = lockManager.lockBooks(isbnSet, true);
+			endWait(BookStoreMessageTag.REMOVEBOOKS, start);
+			try {
+				validateInStore(isbnSet);
+				
+				catalogVersion++;
+				for (int isbn : isbnSet) {
+					bookMap.remove(isbn);
+					lockManager.removeLock(isbn);
+				}
+				catalogVersion++;
 			}
-			
-			for (int isbn : isbnSet) {
-				bookMap.remove(isbn);
-				locks.remove(isbn);
+			finally {
+				lockManager.unlockBooks(bookLocks);
 			}
 		}
-		catch (BookStoreException ex) {
-			this.write_unlock(isbnSet);
-			throw ex; // propagate exception
-		}
 		finally {
-			globalLock.writeLock().unlock();
+			lockManager.unlockCatalog(true);
 		}
 	}
 }
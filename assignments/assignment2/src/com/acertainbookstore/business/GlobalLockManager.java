@@ -0,0 +1,59 @@
+package com.acertainbookstore.business;
+
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * GlobalLockManager is the locking protocol the ConcurrentCertainBookStore
+ * used before the OrderedLockManager: the per-ISBN locks are acquired while
+ * holding a global lock, exclusively for writers, so every buyBooks or
+ * addCopies briefly serializes against every other operation in the store.
+ *
+ * It is only kept to compare the two protocols, cf. LockContentionWorkload.
+ *
+ */
+public class GlobalLockManager extends OrderedLockManager {
+	private ReentrantReadWriteLock globalLock; // locks, ehm... the locks ^^
+
+	public GlobalLockManager() {
+		this(null);
+	}
+
+	public GlobalLockManager(LockStats stats) {
+		super(stats);
+		globalLock = new ReentrantReadWriteLock();
+	}
+
+	@Override
+	public Lock[] lockBooks(Set<Integer> isbnSet, boolean exclusive)
+			throws BookStoreException {
+		Lock lock = lockGlobal(exclusive);
+		try {
+			return super.lockBooks(isbnSet, exclusive);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Lock[] lockAllBooks(boolean exclusive) {
+		Lock lock = lockGlobal(exclusive);
+		try {
+			return super.lockAllBooks(exclusive);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Lock lockGlobal(boolean exclusive) {
+		if (getStats() != null) {
+			getStats().recordGlobalLock(exclusive);
+		}
+		Lock lock = exclusive ? globalLock.writeLock() : globalLock.readLock();
+		lock.lock();
+		return lock;
+	}
+}
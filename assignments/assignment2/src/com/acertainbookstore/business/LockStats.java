@@ -0,0 +1,242 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.acertainbookstore.utils.BookStoreMessageTag;
+
+/**
+ * LockStats records how long the operations of the ConcurrentCertainBookStore
+ * wait for their locks, which books are contended most, and how often the
+ * locks that cover the whole store are taken.
+ *
+ * The wait times are kept per operation in histograms with power-of-two
+ * buckets of nanoseconds, bucket i counting the waits of less than 2^i ns.
+ * The contended books are tracked with a space-saving sketch of a fixed
+ * number of counters, so the books that are contended most are found without
+ * keeping a counter per book. A count of the sketch may overestimate the
+ * true count of the book by at most its error.
+ *
+ * The stats are only recorded if a LockStats is handed to the lock manager,
+ * cf. OrderedLockManager; otherwise the locking code only pays for a null
+ * check.
+ *
+ */
+public class LockStats {
+	public static final int DEFAULT_TOP_ISBNS = 10;
+	public static final int NUM_BUCKETS = 64;
+
+	private final AtomicLongArray waits; // NUM_BUCKETS per operation
+	private final AtomicLongArray waitNanos; // one per operation
+	private final LongAdder exclusiveGlobalLocks = new LongAdder();
+	private final LongAdder sharedGlobalLocks = new LongAdder();
+
+	// the space-saving sketch, guarded by this
+	private final int numCounters;
+	private final Map<Integer, ContendedISBN> counters;
+
+	public LockStats() {
+		this(DEFAULT_TOP_ISBNS);
+	}
+
+	/**
+	 * Creates the stats, tracking up to numCounters contended books.
+	 *
+	 * @param numCounters
+	 */
+	public LockStats(int numCounters) {
+		if (numCounters <= 0) {
+			throw new IllegalArgumentException("numCounters = " + numCounters
+					+ ", but it must be positive");
+		}
+		int numOperations = BookStoreMessageTag.values().length;
+		waits = new AtomicLongArray(numOperations * NUM_BUCKETS);
+		waitNanos = new AtomicLongArray(numOperations);
+		this.numCounters = numCounters;
+		counters = new HashMap<Integer, ContendedISBN>();
+	}
+
+	/**
+	 * Records that the operation waited the given time for its locks.
+	 *
+	 * @param operation
+	 * @param nanos
+	 */
+	public void recordWait(BookStoreMessageTag operation, long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		int bucket = NUM_BUCKETS - Long.numberOfLeadingZeros(nanos);
+		waits.incrementAndGet(operation.ordinal() * NUM_BUCKETS + bucket);
+		waitNanos.addAndGet(operation.ordinal(), nanos);
+	}
+
+	/**
+	 * Records that the lock of the book was held by someone else when we
+	 * asked for it.
+	 *
+	 * @param isbn
+	 */
+	public synchronized void recordContention(int isbn) {
+		ContendedISBN counter = counters.get(isbn);
+		if (counter != null) {
+			counter.count++;
+			return;
+		}
+		if (counters.size() < numCounters) {
+			counters.put(isbn, new ContendedISBN(isbn, 1, 0));
+			return;
+		}
+
+		// replace the book with the smallest count, whose count becomes the
+		// error of the new book
+		ContendedISBN min = null;
+		for (ContendedISBN candidate : counters.values()) {
+			if (min == null || candidate.count < min.count) {
+				min = candidate;
+			}
+		}
+		counters.remove(min.isbn);
+		counters.put(isbn, new ContendedISBN(isbn, min.count + 1, min.count));
+	}
+
+	/**
+	 * Records that a lock covering the whole store was taken, i.e. the
+	 * catalog lock, or the global lock of the GlobalLockManager.
+	 *
+	 * @param exclusive
+	 */
+	public void recordGlobalLock(boolean exclusive) {
+		if (exclusive) {
+			exclusiveGlobalLocks.increment();
+		} else {
+			sharedGlobalLocks.increment();
+		}
+	}
+
+	/**
+	 * Returns the histogram of the lock waits of the operation, cf. the class
+	 * comment.
+	 *
+	 * @param operation
+	 * @return
+	 */
+	public long[] getWaitHistogram(BookStoreMessageTag operation) {
+		long[] histogram = new long[NUM_BUCKETS];
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			histogram[i] = waits.get(operation.ordinal() * NUM_BUCKETS + i);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the number of times the operation waited for its locks.
+	 *
+	 * @param operation
+	 * @return
+	 */
+	public long getWaitCount(BookStoreMessageTag operation) {
+		long count = 0;
+		for (long bucket : getWaitHistogram(operation)) {
+			count += bucket;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the total time the operation waited for its locks, in ns.
+	 *
+	 * @param operation
+	 * @return
+	 */
+	public long getWaitNanos(BookStoreMessageTag operation) {
+		return waitNanos.get(operation.ordinal());
+	}
+
+	public long getExclusiveGlobalLocks() {
+		return exclusiveGlobalLocks.sum();
+	}
+
+	public long getSharedGlobalLocks() {
+		return sharedGlobalLocks.sum();
+	}
+
+	/**
+	 * Returns the numBooks most contended books, most contended first.
+	 *
+	 * @param numBooks
+	 * @return
+	 */
+	public synchronized List<ContendedISBN> getTopContended(int numBooks) {
+		List<ContendedISBN> top = new ArrayList<ContendedISBN>();
+		for (ContendedISBN counter : counters.values()) {
+			top.add(new ContendedISBN(counter.isbn, counter.count,
+					counter.error));
+		}
+		Collections.sort(top, new Comparator<ContendedISBN>() {
+			public int compare(ContendedISBN a, ContendedISBN b) {
+				return Long.compare(b.count, a.count);
+			}
+		});
+		return top.size() > numBooks ? top.subList(0, numBooks) : top;
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < waits.length(); i++) {
+			waits.set(i, 0);
+		}
+		for (int i = 0; i < waitNanos.length(); i++) {
+			waitNanos.set(i, 0);
+		}
+		exclusiveGlobalLocks.reset();
+		sharedGlobalLocks.reset();
+		counters.clear();
+	}
+
+	/**
+	 * ContendedISBN is the count of contended lock requests of a book, as
+	 * estimated by the sketch.
+	 */
+	public static class ContendedISBN {
+		private final int isbn;
+		private long count;
+		private final long error;
+
+		ContendedISBN(int isbn, long count, long error) {
+			this.isbn = isbn;
+			this.count = count;
+			this.error = error;
+		}
+
+		public int getISBN() {
+			return isbn;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns how much the count may overestimate the true count.
+		 *
+		 * @return
+		 */
+		public long getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return isbn + ": " + count + " (+/- " + error + ")";
+		}
+	}
+}
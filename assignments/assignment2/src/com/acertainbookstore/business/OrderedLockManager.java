@@ -0,0 +1,153 @@
+package com.acertainbookstore.business;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.acertainbookstore.interfaces.LockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * OrderedLockManager acquires the per-ISBN locks in ascending ISBN order.
+ * Since every thread takes its locks in the same order no cycle can form, so
+ * the locks of different books can be acquired concurrently without any
+ * global lock. The catalog lock is only taken by operations that add or
+ * remove books, or that need to see the whole catalog.
+ *
+ */
+public class OrderedLockManager implements LockManager {
+	private ConcurrentHashMap<Integer, ReentrantReadWriteLock> locks;
+	private ReentrantReadWriteLock catalogLock;
+	private LockStats stats; // null if no stats are recorded
+
+	public OrderedLockManager() {
+		this(null);
+	}
+
+	/**
+	 * Creates a lock manager that records the contended books and the catalog
+	 * lock acquisitions in the stats, unless they are null.
+	 *
+	 * @param stats
+	 */
+	public OrderedLockManager(LockStats stats) {
+		locks = new ConcurrentHashMap<Integer, ReentrantReadWriteLock>();
+		catalogLock = new ReentrantReadWriteLock();
+		this.stats = stats;
+	}
+
+	public LockStats getStats() {
+		return stats;
+	}
+
+	public void addLock(int isbn) {
+		locks.put(isbn, new ReentrantReadWriteLock());
+	}
+
+	public void removeLock(int isbn) {
+		locks.remove(isbn);
+	}
+
+	public void removeAllLocks() {
+		locks.clear();
+	}
+
+	public Lock[] lockBooks(Set<Integer> isbnSet, boolean exclusive)
+			throws BookStoreException {
+		return lockInOrder(sortedISBNs(isbnSet), exclusive);
+	}
+
+	public Lock[] lockAllBooks(boolean exclusive) {
+		try {
+			return lockInOrder(sortedISBNs(locks.keySet()), exclusive);
+		} catch (BookStoreException ex) {
+			// Cannot happen, the catalog lock keeps the set of locks stable
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	public void unlockBooks(Lock[] acquired) {
+		unlock(acquired, acquired.length);
+	}
+
+	public void lockCatalog(boolean exclusive) {
+		if (stats != null) {
+			stats.recordGlobalLock(exclusive);
+		}
+		if (exclusive) {
+			catalogLock.writeLock().lock();
+		} else {
+			catalogLock.readLock().lock();
+		}
+	}
+
+	public void unlockCatalog(boolean exclusive) {
+		if (exclusive) {
+			catalogLock.writeLock().unlock();
+		} else {
+			catalogLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Acquires the locks of the given (sorted) ISBNs one at a time. If a book
+	 * was removed while we waited for its lock, the lock we got is stale and
+	 * we look it up again. If stats are recorded, the books whose locks are
+	 * held by someone else are counted as contended.
+	 *
+	 * @param isbns
+	 * @param exclusive
+	 * @return
+	 * @throws BookStoreException
+	 */
+	private Lock[] lockInOrder(int[] isbns, boolean exclusive)
+			throws BookStoreException {
+		Lock[] acquired = new Lock[isbns.length];
+		int i = 0;
+		while (i < isbns.length) {
+			ReentrantReadWriteLock bookLock = locks.get(isbns[i]);
+			if (bookLock == null) {
+				unlock(acquired, i);
+				throw new BookStoreException(BookStoreConstants.ISBN
+						+ isbns[i] + BookStoreConstants.NOT_AVAILABLE);
+			}
+
+			Lock lock = exclusive ? bookLock.writeLock() : bookLock
+					.readLock();
+			if (stats == null) {
+				lock.lock();
+			} else if (!lock.tryLock()) {
+				stats.recordContention(isbns[i]);
+				lock.lock();
+			}
+			if (locks.get(isbns[i]) != bookLock) {
+				lock.unlock();
+				continue;
+			}
+			acquired[i++] = lock;
+		}
+		return acquired;
+	}
+
+	/**
+	 * Releases the first num locks, in the reverse order of acquisition.
+	 */
+	private void unlock(Lock[] acquired, int num) {
+		for (int i = num - 1; i >= 0; i--) {
+			acquired[i].unlock();
+		}
+	}
+
+	private int[] sortedISBNs(Set<Integer> isbnSet) {
+		int[] isbns = new int[isbnSet.size()];
+		int i = 0;
+		for (Integer ISBN : isbnSet) {
+			isbns[i++] = ISBN;
+		}
+		Arrays.sort(isbns);
+		return isbns;
+	}
+}
@@ -0,0 +1,125 @@
+package com.acertainbookstore.business;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * StripedStock is the stock of a hot book, split over a number of stripes so
+ * that concurrent purchases of the book mostly change different counters.
+ * Each thread takes its copies from and puts them back in its own stripe. If
+ * its stripe runs low, the copies of all the stripes are gathered and spread
+ * out again, cf. reserve.
+ *
+ * The stock is the sum of the stripes. Rebalancing moves copies between
+ * stripes, so the sum may be too low while a rebalance is in progress; the
+ * book is being updated meanwhile, so optimistic reads of it fail anyway. A
+ * stripe being rebalanced holds DRAINED, and copies put back meanwhile wait
+ * until the rebalance has filled it again.
+ *
+ */
+final class StripedStock {
+	private static final int PADDING = 16; // ints per cache line
+	private static final int MAX_STRIPES = 16;
+	private static final int DRAINED = Integer.MIN_VALUE; // being rebalanced
+
+	private final int numStripes;
+	private final AtomicIntegerArray stripes;
+
+	StripedStock() {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < processors && stripes < MAX_STRIPES) {
+			stripes <<= 1;
+		}
+		numStripes = stripes;
+		this.stripes = new AtomicIntegerArray(numStripes * PADDING);
+	}
+
+	/**
+	 * Returns the index in stripes of the stripe of the current thread.
+	 */
+	private int stripe() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return (hash >>> 16 & (numStripes - 1)) * PADDING;
+	}
+
+	int get() {
+		int numCopies = 0;
+		for (int i = 0; i < numStripes; i++) {
+			int inStripe = stripes.get(i * PADDING);
+			if (inStripe != DRAINED)
+				numCopies += inStripe;
+		}
+		return numCopies;
+	}
+
+	/**
+	 * Puts numCopies in the stripe of the current thread, once the stripe is
+	 * not being rebalanced.
+	 *
+	 * @param numCopies
+	 */
+	void add(int numCopies) {
+		int stripe = stripe();
+		while (true) {
+			int inStripe = stripes.get(stripe);
+			if (inStripe == DRAINED) {
+				Thread.yield();
+			} else if (stripes.compareAndSet(stripe, inStripe, inStripe
+					+ numCopies)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Takes numCopies out of the stock, if they are in stock. The copies are
+	 * taken from the stripe of the current thread if it has enough of them,
+	 * otherwise (or if the stripe is being rebalanced) the stripes are
+	 * rebalanced.
+	 *
+	 * @param numCopies
+	 * @return true if the copies were taken
+	 */
+	boolean reserve(int numCopies) {
+		int stripe = stripe();
+		while (true) {
+			int inStripe = stripes.get(stripe);
+			if (inStripe < numCopies)
+				return rebalance(stripe, numCopies);
+			if (stripes.compareAndSet(stripe, inStripe, inStripe - numCopies))
+				return true;
+		}
+	}
+
+	/**
+	 * Gathers the copies of all the stripes, takes numCopies out of them if
+	 * there are enough, and spreads the rest out evenly. Rebalances run one at
+	 * a time, and every stripe stays DRAINED until the copies are spread out
+	 * again, so nothing is put in a stripe that was already gathered. A
+	 * rebalance that comes up short has therefore seen all the copies that
+	 * were in stock once all the stripes were drained.
+	 *
+	 * @param stripe
+	 * @param numCopies
+	 * @return true if the copies were taken
+	 */
+	private synchronized boolean rebalance(int stripe, int numCopies) {
+		int inStock = 0;
+		for (int i = 0; i < numStripes; i++) {
+			inStock += stripes.getAndSet(i * PADDING, DRAINED);
+		}
+		boolean reserved = inStock >= numCopies;
+		if (reserved) {
+			inStock -= numCopies;
+		}
+
+		int share = inStock / numStripes;
+		for (int i = 0; i < numStripes; i++) {
+			if (i * PADDING != stripe)
+				stripes.set(i * PADDING, share);
+		}
+		stripes.set(stripe, inStock - share * (numStripes - 1));
+		return reserved;
+	}
+}
@@ -3,9 +3,12 @@ package com.acertainbookstore.client.tests;
 import static org.junit.Assert.*;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -18,6 +21,8 @@ import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.ConcurrentCertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.LockStats;
+import com.acertainbookstore.business.OrderedLockManager;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
@@ -25,7 +30,7 @@ import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
-import com.sun.org.apache.xml.internal.security.c14n.implementations.Canonicalizer20010315;
+import com.acertainbookstore.utils.BookStoreMessageTag;
 
 /**
  * Test class to test the BookStore interface
@@ -40,6 +45,9 @@ public class ConcurrencyTest {
 	private static StockManager storeManager;
 	private static BookStore client;
 
+	// The first failure of a client thread, cf. assertNoClientFailure
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
 	private class ClientBuyer implements Runnable {
 
 		private BookStore client;
@@ -79,7 +87,7 @@ public class ConcurrencyTest {
 				this.client.addCopies(copies);
 			}
 			catch (BookStoreException ex) {
-				System.out.println(ex);
+				failure.compareAndSet(null, ex);
 			}
 		}
 	}
@@ -102,7 +110,93 @@ public class ConcurrencyTest {
 				this.stock.addCopies(copies);
 			}
 			catch (BookStoreException ex) {
-				System.out.println(ex);
+				failure.compareAndSet(null, ex);
+			}
+		}
+	}
+
+	private class ClientRepeatedBuyThenReplenish implements Runnable {
+
+		private BookStore client;
+		private StockManager stock;
+		private HashSet<BookCopy> copies;
+		private int rounds;
+
+		public ClientRepeatedBuyThenReplenish(BookStore client, StockManager stock, HashSet<BookCopy> copies, int rounds) {
+			this.client = client;
+			this.stock = stock;
+			this.copies = copies;
+			this.rounds = rounds;
+		}
+
+		public void run() {
+			try {
+				for (int i = 0; i < rounds; ++i) {
+					this.client.buyBooks(copies);
+					this.stock.addCopies(copies);
+				}
+			}
+			catch (BookStoreException ex) {
+				failure.compareAndSet(null, ex);
+			}
+		}
+	}
+
+	private class ClientRepeatedBuy implements Runnable {
+
+		private BookStore client;
+		private HashSet<BookCopy> copies;
+		private int rounds;
+
+		public ClientRepeatedBuy(BookStore client, HashSet<BookCopy> copies, int rounds) {
+			this.client = client;
+			this.copies = copies;
+			this.rounds = rounds;
+		}
+
+		public void run() {
+			for (int i = 0; i < rounds; ++i) {
+				try {
+					this.client.buyBooks(copies);
+				}
+				catch (BookStoreException ex) {
+					// sold out, we keep trying to count the misses
+				}
+			}
+		}
+	}
+
+	private class ClientConsistentReads implements Runnable {
+		private StockManager stock;
+		private Set<Integer> isbns;
+		private Thread writer;
+		private boolean consistent = true;
+
+		public ClientConsistentReads(StockManager stock, Set<Integer> isbns, Thread writer) {
+			this.stock = stock;
+			this.isbns = isbns;
+			this.writer = writer;
+		}
+
+		public boolean isConsistent() {
+			return consistent;
+		}
+
+		public void run() {
+			try {
+				while (writer.isAlive()) {
+					List<StockBook> books = this.stock.getBooksByISBN(isbns);
+					int numCopies = books.get(0).getNumCopies();
+					for (StockBook book : books) {
+						if (book.getNumCopies() != numCopies) {
+							consistent = false;
+						}
+					}
+				}
+			}
+			catch (BookStoreException ex) {
+				failure.compareAndSet(null, ex);
+				consistent = false;
 			}
 		}
 	}
@@ -124,7 +218,7 @@ public class ConcurrencyTest {
 				this.client.buyBooks(copies);
 			}
 			catch (BookStoreException ex) {
-				System.out.println(ex);
+				// one of the two buys must fail
 				result.setResult(true);
 			}
 		}
@@ -156,7 +250,10 @@ public class ConcurrencyTest {
 				}
 			}
 			catch (BookStoreException ex) {
-				System.out.println(ex);
+				failure.compareAndSet(null, ex);
+			}
+			catch (AssertionError ex) {
+				failure.compareAndSet(null, ex);
 			}
 		}
 	}
@@ -175,7 +272,7 @@ public class ConcurrencyTest {
 				stock.updateEditorPicks(editorPicks);
 			}
 			catch (BookStoreException ex) {
-				System.out.println(ex);
+				failure.compareAndSet(null, ex);
 			}
 		}
 	}
@@ -183,30 +280,44 @@ public class ConcurrencyTest {
 	private class ClientGetEditorPicks implements Runnable {
 		private BookStore store;
 		private HashSet<BookEditorPick> editorPicks;
+		private Thread updater;
 
-		public ClientGetEditorPicks(BookStore store, HashSet<BookEditorPick> editorPicks) {
+		public ClientGetEditorPicks(BookStore store, HashSet<BookEditorPick> editorPicks, Thread updater) {
 			this.store = store;
 			this.editorPicks = editorPicks;
+			this.updater = updater;
 		}
 
 		public void run() {
 			try {
-				List<Book> picks = store.getEditorPicks(editorPicks.size());
-				for (BookEditorPick pick : editorPicks) {
-					boolean found = false;
-					int isbn = pick.getISBN();
-
-					for (Book book : picks) {
-						if (book.getISBN() == isbn) {
-							found = true;
+				// reads until it sees the picks, which the updater sets all
+				// at once, so a read sees either all of them or none
+				int found;
+				do {
+					boolean updated = !updater.isAlive();
+					List<Book> picks = store.getEditorPicks(editorPicks.size());
+					found = 0;
+					for (BookEditorPick pick : editorPicks) {
+						int isbn = pick.getISBN();
+
+						for (Book book : picks) {
+							if (book.getISBN() == isbn) {
+								found++;
+							}
 						}
 					}
 
-					assertTrue(found);
-				}
+					assertTrue(found == 0 || found == editorPicks.size());
+					if (updated) {
+						assertEquals(editorPicks.size(), found);
+					}
+				} while (found == 0);
 			}
 			catch (BookStoreException ex) {
-				System.out.println(ex);
+				failure.compareAndSet(null, ex);
+			}
+			catch (AssertionError ex) {
+				failure.compareAndSet(null, ex);
 			}
 		}
 	}
@@ -227,11 +338,21 @@ public class ConcurrencyTest {
 				}
 			}
 			catch (BookStoreException ex) {
-				System.out.println(ex);
+				failure.compareAndSet(null, ex);
 			}
 		}
 	}
 
+	/**
+	 * Fails the test with the first failure of its client threads, if any
+	 */
+	private void assertNoClientFailure() {
+		Throwable ex = failure.get();
+		if (ex != null) {
+			throw new AssertionError("a client thread failed: " + ex, ex);
+		}
+	}
+
 	/**
 	 * Produces a valid ISBN number
 	 */
@@ -379,6 +500,7 @@ public class ConcurrencyTest {
 
 		C1.join();
 		C2.join();
+		assertNoClientFailure();
 
 		List<StockBook> booksAfter = storeManager.getBooks();
 
@@ -418,6 +540,7 @@ public class ConcurrencyTest {
 
 		C1.join();
 		C2.join();
+		assertNoClientFailure();
 	}
 
 	/**
@@ -439,6 +562,7 @@ public class ConcurrencyTest {
 		long serialBefore = System.currentTimeMillis();
 		serialThread.start();
 		serialThread.join();
+		assertNoClientFailure();
 		long serialAfter = System.currentTimeMillis();
 		long serialTime = serialAfter - serialBefore;
 
@@ -459,6 +583,7 @@ public class ConcurrencyTest {
 		concurrentB.join();
 		concurrentC.join();
 		concurrentD.join();
+		assertNoClientFailure();
 		long concurrentAfter = System.currentTimeMillis();
 		long concurrentTime = concurrentAfter - concurrentBefore;
 
@@ -488,6 +613,7 @@ public class ConcurrencyTest {
 
 		C1.join();
 		C2.join();
+		assertNoClientFailure();
 
 		// the intention is that result is true if it met an exception
 		assertTrue(result.getResult());
@@ -519,12 +645,250 @@ public class ConcurrencyTest {
 		editorPicks.add(new BookEditorPick(TEST_ISBN + 3, true));
 
 		Thread C1 = new Thread(new ClientUpdateEditorPicks(storeManager, editorPicks));
-		Thread C2 = new Thread(new ClientGetEditorPicks(client, editorPicks));
+		Thread C2 = new Thread(new ClientGetEditorPicks(client, editorPicks, C1));
 
 		C1.start();
 		C2.start();
 
 		C1.join();
 		C2.join();
+		assertNoClientFailure();
+	}
+
+	/**
+	 * Tests that clients buying the same books, given in opposite orders, do
+	 * not deadlock
+	 *
+	 * @throws InterruptedException, InterruptedException
+	 */
+	@Test
+	public void testOpposingOrders() throws BookStoreException, InterruptedException {
+
+		int rounds = 1000;
+
+		LinkedHashSet<BookCopy> forward = new LinkedHashSet<BookCopy>();
+		forward.add(new BookCopy(TEST_ISBN + 1, 1));
+		forward.add(new BookCopy(TEST_ISBN + 2, 1));
+		forward.add(new BookCopy(TEST_ISBN + 3, 1));
+
+		LinkedHashSet<BookCopy> backward = new LinkedHashSet<BookCopy>();
+		backward.add(new BookCopy(TEST_ISBN + 3, 1));
+		backward.add(new BookCopy(TEST_ISBN + 2, 1));
+		backward.add(new BookCopy(TEST_ISBN + 1, 1));
+
+		Thread C1 = new Thread(new ClientRepeatedBuyThenReplenish(client, storeManager, forward, rounds));
+		Thread C2 = new Thread(new ClientRepeatedBuyThenReplenish(client, storeManager, backward, rounds));
+
+		C1.start();
+		C2.start();
+
+		C1.join(30000);
+		C2.join(30000);
+
+		assertFalse(C1.isAlive());
+		assertFalse(C2.isAlive());
+		assertNoClientFailure();
+
+		for (StockBook book : storeManager.getBooks()) {
+			assertEquals(NUM_COPIES, book.getNumCopies());
+		}
+	}
+
+	/**
+	 * Tests that a read of several books never sees an order that is only
+	 * partly bought or replenished
+	 *
+	 * @throws InterruptedException, InterruptedException
+	 */
+	@Test
+	public void testConsistentReads() throws BookStoreException, InterruptedException {
+
+		int rounds = 1000;
+
+		HashSet<BookCopy> starWarsCollection = new HashSet<BookCopy>();
+		starWarsCollection.add(new BookCopy(TEST_ISBN + 1, 1));
+		starWarsCollection.add(new BookCopy(TEST_ISBN + 2, 1));
+		starWarsCollection.add(new BookCopy(TEST_ISBN + 3, 1));
+
+		Set<Integer> isbns = new HashSet<Integer>();
+		for (BookCopy copy : starWarsCollection) {
+			isbns.add(copy.getISBN());
+		}
+
+		Thread C1 = new Thread(new ClientRepeatedBuyThenReplenish(client, storeManager, starWarsCollection, rounds));
+		ClientConsistentReads reads = new ClientConsistentReads(storeManager, isbns, C1);
+		Thread C2 = new Thread(reads);
+
+		C1.start();
+		C2.start();
+
+		C1.join();
+		C2.join();
+		assertNoClientFailure();
+
+		assertTrue(reads.isConsistent());
+	}
+
+	/**
+	 * Tests that a read that falls back to the read locks never sees an order
+	 * that is only partly bought either, although purchases do not take the
+	 * locks
+	 *
+	 * @throws InterruptedException, InterruptedException
+	 */
+	@Test
+	public void testConsistentLockedReads() throws BookStoreException, InterruptedException {
+
+		int rounds = 100000;
+
+		ConcurrentCertainBookStore store = new ConcurrentCertainBookStore();
+		store.setOptimisticReadAttempts(0);
+		store.addBooks(getStarWarsCollection(rounds));
+
+		HashSet<BookCopy> starWarsCollection = new HashSet<BookCopy>();
+		starWarsCollection.add(new BookCopy(TEST_ISBN + 1, 1));
+		starWarsCollection.add(new BookCopy(TEST_ISBN + 2, 1));
+		starWarsCollection.add(new BookCopy(TEST_ISBN + 3, 1));
+
+		Set<Integer> isbns = new HashSet<Integer>();
+		for (BookCopy copy : starWarsCollection) {
+			isbns.add(copy.getISBN());
+		}
+
+		Thread C1 = new Thread(new ClientRepeatedBuy(store, starWarsCollection, rounds));
+		ClientConsistentReads reads = new ClientConsistentReads(store, isbns, C1);
+		Thread C2 = new Thread(reads);
+
+		C1.start();
+		C2.start();
+
+		C1.join();
+		C2.join();
+		assertNoClientFailure();
+
+		assertTrue(reads.isConsistent());
+	}
+
+	/**
+	 * Tests that clients buying the same books concurrently either buy the
+	 * whole order or none of it, and that every failed order counts as a sale
+	 * miss of the book that ran out
+	 *
+	 * @throws InterruptedException, InterruptedException
+	 */
+	@Test
+	public void testAllOrNothing() throws BookStoreException, InterruptedException {
+
+		int extraCopies = 100;
+		int clients = 4;
+
+		HashSet<BookCopy> extra = new HashSet<BookCopy>();
+		extra.add(new BookCopy(TEST_ISBN + 1, extraCopies));
+		storeManager.addCopies(extra);
+
+		HashSet<BookCopy> order = new HashSet<BookCopy>();
+		order.add(new BookCopy(TEST_ISBN, 1));
+		order.add(new BookCopy(TEST_ISBN + 1, 1));
+
+		Thread[] threads = new Thread[clients];
+		for (int i = 0; i < clients; ++i) {
+			threads[i] = new Thread(new ClientRepeatedBuy(client, order, NUM_COPIES));
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Set<Integer> isbns = new HashSet<Integer>();
+		isbns.add(TEST_ISBN);
+		isbns.add(TEST_ISBN + 1);
+		for (StockBook book : storeManager.getBooksByISBN(isbns)) {
+			if (book.getISBN() == TEST_ISBN) {
+				assertEquals(0, book.getNumCopies());
+				assertEquals((clients - 1) * NUM_COPIES, book.getSaleMisses());
+			} else {
+				assertEquals(extraCopies, book.getNumCopies());
+				assertEquals(0, book.getSaleMisses());
+			}
+		}
+	}
+
+	/**
+	 * Tests that many clients buying one bestseller at once sell exactly the
+	 * copies in stock, and count every order placed after it sold out as a
+	 * sale miss
+	 *
+	 * @throws InterruptedException, InterruptedException
+	 */
+	@Test
+	public void testHotBook() throws BookStoreException, InterruptedException {
+
+		int clients = 8;
+		int rounds = 5000;
+		int extraCopies = clients * rounds - 1000 - NUM_COPIES;
+
+		HashSet<BookCopy> extra = new HashSet<BookCopy>();
+		extra.add(new BookCopy(TEST_ISBN, extraCopies));
+		storeManager.addCopies(extra);
+
+		HashSet<BookCopy> order = new HashSet<BookCopy>();
+		order.add(new BookCopy(TEST_ISBN, 1));
+
+		Thread[] threads = new Thread[clients];
+		for (int i = 0; i < clients; ++i) {
+			threads[i] = new Thread(new ClientRepeatedBuy(client, order, rounds));
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Set<Integer> isbns = new HashSet<Integer>();
+		isbns.add(TEST_ISBN);
+		StockBook book = storeManager.getBooksByISBN(isbns).get(0);
+		assertEquals(0, book.getNumCopies());
+		assertEquals(1000, book.getSaleMisses());
+	}
+
+	/**
+	 * Tests that a store with lock stats records the book whose lock was
+	 * contended, the wait of the blocked operation and the catalog locks
+	 *
+	 * @throws InterruptedException, InterruptedException
+	 */
+	@Test
+	public void testLockStats() throws BookStoreException, InterruptedException {
+		OrderedLockManager lockManager = new OrderedLockManager(new LockStats());
+		ConcurrentCertainBookStore store = new ConcurrentCertainBookStore(lockManager);
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(getDefaultBook());
+		store.addBooks(booksToAdd);
+
+		Set<Integer> isbns = new HashSet<Integer>();
+		isbns.add(TEST_ISBN);
+		HashSet<BookCopy> copies = new HashSet<BookCopy>();
+		copies.add(new BookCopy(TEST_ISBN, 1));
+
+		// the adder blocks on the lock of the book until we release it
+		Lock[] locks = lockManager.lockBooks(isbns, true);
+		Thread adder = new Thread(new ClientAdder(store, copies));
+		adder.start();
+		while (adder.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		lockManager.unlockBooks(locks);
+		adder.join();
+		assertNoClientFailure();
+
+		LockStats stats = store.getLockStats();
+		List<LockStats.ContendedISBN> top = stats.getTopContended(1);
+		assertEquals(1, top.size());
+		assertEquals(TEST_ISBN, top.get(0).getISBN());
+		assertEquals(1, top.get(0).getCount());
+		assertEquals(1, stats.getWaitCount(BookStoreMessageTag.ADDCOPIES));
+		assertTrue(stats.getWaitNanos(BookStoreMessageTag.ADDCOPIES) > 0);
+		assertEquals(1, stats.getExclusiveGlobalLocks());
+		assertEquals(NUM_COPIES + 1, store.getBooksByISBN(isbns).get(0)
+				.getNumCopies());
 	}
 }
@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.acertainbookstore.utils.ConcurrentIntObjectHashMap;
+
+/**
+ *
+ * CatalogIndexBenchmark compares the ConcurrentIntObjectHashMap used as the
+ * catalog index of the ConcurrentCertainBookStore with the ConcurrentHashMap
+ * it replaced, for inserting
+ * ISBNs, looking them up and iterating over the values. Each measurement is
+ * repeated after a warmup and the average time per operation is reported.
+ *
+ */
+public class CatalogIndexBenchmark {
+	private static final int NUM_BOOKS = 1000000;
+	private static final int NUM_LOOKUPS = 10000000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	private static int[] isbns;
+	private static int[] lookups;
+	private static Object book = new Object();
+	private static long sink;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Random rand = new Random(42);
+		isbns = new int[NUM_BOOKS];
+		for (int i = 0; i < NUM_BOOKS; i++) {
+			isbns[i] = 1 + rand.nextInt(Integer.MAX_VALUE - 1);
+		}
+		lookups = new int[NUM_LOOKUPS];
+		for (int i = 0; i < NUM_LOOKUPS; i++) {
+			lookups[i] = isbns[rand.nextInt(NUM_BOOKS)];
+		}
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			runConcurrentHashMap();
+			runConcurrentIntObjectHashMap();
+		}
+
+		long[] hashMap = new long[3];
+		long[] intMap = new long[3];
+		for (int i = 0; i < ROUNDS; i++) {
+			add(hashMap, runConcurrentHashMap());
+			add(intMap, runConcurrentIntObjectHashMap());
+		}
+
+		System.out.println("ns/op\t\tConcurrentHashMap\tConcurrentIntObjectHashMap");
+		report("insert", hashMap[0], intMap[0], NUM_BOOKS);
+		report("lookup", hashMap[1], intMap[1], NUM_LOOKUPS);
+		report("iterate", hashMap[2], intMap[2], NUM_BOOKS);
+		System.out.println("(ignore: " + sink + ")");
+	}
+
+	private static long[] runConcurrentHashMap() {
+		long[] times = new long[3];
+		long start = System.nanoTime();
+		ConcurrentHashMap<Integer, Object> map = new ConcurrentHashMap<Integer, Object>();
+		for (int isbn : isbns) {
+			map.put(isbn, book);
+		}
+		times[0] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int isbn : lookups) {
+			if (map.get(isbn) != null) {
+				sink++;
+			}
+		}
+		times[1] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (Object value : map.values()) {
+			sink += value.hashCode();
+		}
+		times[2] = System.nanoTime() - start;
+		return times;
+	}
+
+	private static long[] runConcurrentIntObjectHashMap() {
+		long[] times = new long[3];
+		long start = System.nanoTime();
+		ConcurrentIntObjectHashMap<Object> map = new ConcurrentIntObjectHashMap<Object>();
+		for (int isbn : isbns) {
+			map.put(isbn, book);
+		}
+		times[0] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int isbn : lookups) {
+			if (map.get(isbn) != null) {
+				sink++;
+			}
+		}
+		times[1] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (Object value : map.values()) {
+			sink += value.hashCode();
+		}
+		times[2] = System.nanoTime() - start;
+		return times;
+	}
+
+	private static void add(long[] total, long[] times) {
+		for (int i = 0; i < total.length; i++) {
+			total[i] += times[i];
+		}
+	}
+
+	private static void report(String operation, long hashMapTime,
+			long intMapTime, int numOps) {
+		double ops = (double) numOps * ROUNDS;
+		System.out.printf("%s\t\t%.1f\t\t\t%.1f%n", operation, hashMapTime / ops,
+				intMapTime / ops);
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ConcurrentCertainBookStore;
+import com.acertainbookstore.business.GlobalLockManager;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.OrderedLockManager;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.LockManager;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ *
+ * LockContentionWorkload compares the throughput of buyBooks and addCopies on
+ * the ConcurrentCertainBookStore with the GlobalLockManager (the old path)
+ * and with the OrderedLockManager (the new path), for 1 to 32 threads. Each
+ * order touches a few random books out of the catalog, so most orders do not
+ * conflict with each other.
+ *
+ */
+public class LockContentionWorkload {
+	private static final int NUM_BOOKS = 1000;
+	private static final int NUM_BOOKS_PER_ORDER = 5;
+	private static final int MAX_THREADS = 32;
+	private static final long WARMUP_MILLISECS = 500;
+	private static final long RUN_MILLISECS = 2000;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		System.out.println("threads\told (orders/s)\tnew (orders/s)");
+		for (int numThreads = 1; numThreads <= MAX_THREADS; numThreads *= 2) {
+			double oldThroughput = run(new GlobalLockManager(), numThreads);
+			double newThroughput = run(new OrderedLockManager(), numThreads);
+			System.out.println(numThreads + "\t" + (long) oldThroughput
+					+ "\t\t" + (long) newThroughput);
+		}
+	}
+
+	/**
+	 * Runs numThreads clients against a fresh store using the lock manager
+	 * and returns the number of orders per second.
+	 *
+	 * @param lockManager
+	 * @param numThreads
+	 * @return
+	 */
+	public static double run(LockManager lockManager, int numThreads)
+			throws Exception {
+		ConcurrentCertainBookStore store = new ConcurrentCertainBookStore(
+				lockManager);
+		Set<StockBook> books = new HashSet<StockBook>();
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			books.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author "
+					+ isbn, (float) 10, 1000, 0, 0, 0, false));
+		}
+		store.addBooks(books);
+
+		ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+		List<Future<Long>> results = new ArrayList<Future<Long>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < numThreads; i++) {
+			results.add(exec.submit(new Client(store, start
+					+ WARMUP_MILLISECS * 1000000L)));
+		}
+
+		long orders = 0;
+		for (Future<Long> result : results) {
+			orders += result.get();
+		}
+		exec.shutdownNow();
+		return orders / (RUN_MILLISECS / 1000.0);
+	}
+
+	/**
+	 * Client alternates between buying the books of an order and putting them
+	 * back in stock, and counts the orders placed after the warmup.
+	 */
+	private static class Client implements Callable<Long> {
+		private ConcurrentCertainBookStore store;
+		private long measureFrom;
+
+		public Client(ConcurrentCertainBookStore store, long measureFrom) {
+			this.store = store;
+			this.measureFrom = measureFrom;
+		}
+
+		public Long call() throws BookStoreException {
+			long measureUntil = measureFrom + RUN_MILLISECS * 1000000L;
+			long orders = 0;
+			long now;
+			while ((now = System.nanoTime()) < measureUntil) {
+				Set<BookCopy> order = new HashSet<BookCopy>();
+				while (order.size() < NUM_BOOKS_PER_ORDER) {
+					order.add(new BookCopy(ThreadLocalRandom.current().nextInt(
+							1, NUM_BOOKS + 1), 1));
+				}
+				store.buyBooks(order);
+				store.addCopies(order);
+				if (now >= measureFrom) {
+					orders += 2;
+				}
+			}
+			return orders;
+		}
+	}
+}
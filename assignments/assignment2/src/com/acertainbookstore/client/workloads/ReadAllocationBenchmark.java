@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ConcurrentCertainBookStore;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ *
+ * ReadAllocationBenchmark measures the bytes allocated by the reads of the
+ * ConcurrentCertainBookStore, per book read, on a read-heavy workload: the
+ * whole catalog is listed and a batch of books is read by ISBN over and over,
+ * both by the stock manager and by customers, with one purchase for every
+ * READS_PER_WRITE reads so that some of the books change in between.
+ *
+ * The allocations are taken from the thread allocation counters of the JVM.
+ *
+ */
+public class ReadAllocationBenchmark {
+	private static final int NUM_BOOKS = 100000;
+	private static final int BATCH_SIZE = 100;
+	private static final int READS_PER_WRITE = 100;
+	private static final int WARMUP_ROUNDS = 20;
+	private static final int ROUNDS = 50;
+
+	private static long sink;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		ConcurrentCertainBookStore store = new ConcurrentCertainBookStore();
+		Set<StockBook> books = new HashSet<StockBook>();
+		for (int i = 1; i <= NUM_BOOKS; i++) {
+			books.add(new ImmutableStockBook(i, "Title " + i, "Author " + i,
+					(float) 10, 1000000, 0, 0, 0, false));
+		}
+		store.addBooks(books);
+
+		Set<Integer> batch = new HashSet<Integer>();
+		for (int i = 1; i <= BATCH_SIZE; i++) {
+			batch.add(i);
+		}
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			listAll(store);
+			readBatches(store, batch, true);
+			readBatches(store, batch, false);
+		}
+
+		long before = allocatedBytes();
+		for (int i = 0; i < ROUNDS; i++) {
+			listAll(store);
+		}
+		double listBytes = (double) (allocatedBytes() - before) / ROUNDS
+				/ NUM_BOOKS;
+
+		before = allocatedBytes();
+		for (int i = 0; i < ROUNDS; i++) {
+			readBatches(store, batch, true);
+		}
+		double stockBatchBytes = (double) (allocatedBytes() - before)
+				/ ROUNDS / (READS_PER_WRITE * BATCH_SIZE);
+
+		before = allocatedBytes();
+		for (int i = 0; i < ROUNDS; i++) {
+			readBatches(store, batch, false);
+		}
+		double batchBytes = (double) (allocatedBytes() - before) / ROUNDS
+				/ (READS_PER_WRITE * BATCH_SIZE);
+
+		System.out.println("bytes allocated per book read");
+		System.out.printf("getBooks()\t\t%.1f%n", listBytes);
+		System.out.printf("getBooksByISBN(%d)\t%.1f%n", BATCH_SIZE,
+				stockBatchBytes);
+		System.out.printf("getBooks(%d)\t\t%.1f%n", BATCH_SIZE, batchBytes);
+		System.out.println("(ignore: " + sink + ")");
+	}
+
+	private static void listAll(ConcurrentCertainBookStore store) {
+		sink += store.getBooks().size();
+	}
+
+	private static void readBatches(ConcurrentCertainBookStore store,
+			Set<Integer> batch, boolean stock) throws BookStoreException {
+		for (int i = 0; i < READS_PER_WRITE; i++) {
+			if (stock) {
+				sink += store.getBooksByISBN(batch).size();
+			} else {
+				sink += store.getBooks(batch).size();
+			}
+		}
+		Set<BookCopy> copies = new HashSet<BookCopy>();
+		copies.add(new BookCopy(1 + (int) (sink % BATCH_SIZE), 1));
+		store.buyBooks(copies);
+	}
+
+	@SuppressWarnings("restriction")
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean()).getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+}
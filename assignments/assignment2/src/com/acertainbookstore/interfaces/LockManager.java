@@ -0,0 +1,81 @@
+package com.acertainbookstore.interfaces;
+
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import com.acertainbookstore.business.LockStats;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * LockManager declares the locking protocol used by the
+ * ConcurrentCertainBookStore. There is one read/write lock per ISBN and one
+ * catalog lock, which is only needed by operations that change the shape of
+ * the catalog or need to see all of it at once.
+ *
+ */
+public interface LockManager {
+
+	/**
+	 * Creates the lock for a newly added book. The catalog lock must be held
+	 * exclusively by the caller.
+	 *
+	 */
+	public void addLock(int isbn);
+
+	/**
+	 * Removes the lock of a removed book. The catalog lock must be held
+	 * exclusively by the caller, as well as the write lock of the book.
+	 *
+	 */
+	public void removeLock(int isbn);
+
+	/**
+	 * Removes all the locks. The catalog lock must be held exclusively by the
+	 * caller, as well as the write locks of all the books.
+	 *
+	 */
+	public void removeAllLocks();
+
+	/**
+	 * Locks the books with the given ISBNs, either shared or exclusively, and
+	 * returns the locks that were acquired so that they can be handed back to
+	 * unlockBooks. Throws if one of the books is not in the store.
+	 *
+	 */
+	public Lock[] lockBooks(Set<Integer> isbnSet, boolean exclusive)
+			throws BookStoreException;
+
+	/**
+	 * Locks all the books in the store, either shared or exclusively. The
+	 * catalog lock must be held by the caller so that no books are added or
+	 * removed meanwhile.
+	 *
+	 */
+	public Lock[] lockAllBooks(boolean exclusive);
+
+	/**
+	 * Releases the locks returned by lockBooks or lockAllBooks.
+	 *
+	 */
+	public void unlockBooks(Lock[] locks);
+
+	/**
+	 * Locks the catalog. Exclusive mode is used when books are added or
+	 * removed, shared mode when an operation needs a stable set of books.
+	 *
+	 */
+	public void lockCatalog(boolean exclusive);
+
+	/**
+	 * Releases the catalog lock.
+	 *
+	 */
+	public void unlockCatalog(boolean exclusive);
+
+	/**
+	 * Returns the stats the lock manager records, or null if it does not
+	 * record any.
+	 *
+	 */
+	public LockStats getStats();
+}
@@ -69,14 +69,19 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 		// the RequestURI before the switch
 		if (messageTag == null) {
 			System.out.println("Unknown message tag");
+		} else if (BookStoreUtility.isRequestTooLarge(request)) {
+			bookStoreResponse = new BookStoreResponse();
+			bookStoreResponse.setException(new BookStoreException(
+					BookStoreConstants.REQUEST_SIZE
+							+ request.getContentLength()
+							+ BookStoreConstants.INVALID));
+			response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			BookStoreUtility.encodeResponse(response, bookStoreResponse);
 		} else {
 			switch (messageTag) {
 			case REMOVEBOOKS:
-				String xml = BookStoreUtility
-						.extractPOSTDataFromRequest(request);
-
 				Set<Integer> bookSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -84,30 +89,22 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				String listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case REMOVEALLBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				bookStoreResponse = new BookStoreResponse();
 				try {
 					myBookStore.removeAllBooks();
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case ADDBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				Set<StockBook> newBooks = (Set<StockBook>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -115,33 +112,25 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case ADDCOPIES:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				Set<BookCopy> listBookCopies = (Set<BookCopy>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 				bookStoreResponse = new BookStoreResponse();
 				try {
 					myBookStore.addCopies(listBookCopies);
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case LISTBOOKS:
 				bookStoreResponse = new BookStoreResponse();
 				bookStoreResponse.setList(myBookStore.getBooks());
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case UPDATEEDITORPICKS:
@@ -149,25 +138,19 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				bookStoreResponse = new BookStoreResponse();
 
 				try {
-					String xmlStringEditorPicksValues = BookStoreUtility
-							.extractPOSTDataFromRequest(request);
-
 					Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) BookStoreUtility
-							.deserializeXMLStringToObject(xmlStringEditorPicksValues);
+							.decodeRequest(request);
 
 					myBookStore.updateEditorPicks(mapEditorPicksValues);
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case BUYBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) BookStoreUtility
-						.deserializeXMLStringToObject(new String(xml));
+						.decodeRequest(request);
 
 				// Make the purchase
 				bookStoreResponse = new BookStoreResponse();
@@ -176,15 +159,12 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case GETBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				Set<Integer> isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -192,9 +172,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case EDITORPICKS:
@@ -211,15 +189,12 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case GETSTOCKBOOKSBYISBN:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -228,9 +203,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 				
 			default:
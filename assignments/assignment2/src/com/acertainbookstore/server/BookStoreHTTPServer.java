@@ -4,6 +4,8 @@
 package com.acertainbookstore.server;
 
 import com.acertainbookstore.business.ConcurrentCertainBookStore;
+import com.acertainbookstore.business.LockStats;
+import com.acertainbookstore.business.OrderedLockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 
 /**
@@ -15,7 +17,10 @@ public class BookStoreHTTPServer {
 	 * @param args
 	 */
 	public static void main(String[] args) {
-		ConcurrentCertainBookStore bookStore = new ConcurrentCertainBookStore();
+		// the lock stats are off unless asked for
+		boolean lockStats = Boolean.getBoolean(BookStoreConstants.PROPERTY_KEY_LOCK_STATS);
+		ConcurrentCertainBookStore bookStore = new ConcurrentCertainBookStore(
+				new OrderedLockManager(lockStats ? new LockStats() : null));
 		int listen_on_port = 8081;
 		BookStoreHTTPMessageHandler handler = new BookStoreHTTPMessageHandler(
 				bookStore);
@@ -0,0 +1,257 @@
+package com.acertainbookstore.utils;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ConcurrentIntObjectHashMap maps int keys to objects without boxing the keys
+ * or allocating an entry per mapping. It uses open addressing with linear
+ * probing over a pair of parallel arrays. Null values are not allowed.
+ *
+ * Reads take no locks. Writes are serialized on the map itself; a removed
+ * key leaves a tombstone behind, so that readers probing past it never miss
+ * a key, and the tombstones are dropped the next time the table is resized.
+ *
+ * @param <V>
+ */
+public class ConcurrentIntObjectHashMap<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5f;
+	private static final Object TOMBSTONE = new Object();
+
+	/**
+	 * A slot is free while its value is null. Once a key is written to a slot
+	 * it stays there until the table is replaced, so a reader that sees a
+	 * value also sees the key it belongs to.
+	 */
+	private static final class Table {
+		private final AtomicIntegerArray keys;
+		private final AtomicReferenceArray<Object> values;
+		private final int mask;
+
+		private Table(int capacity) {
+			keys = new AtomicIntegerArray(capacity);
+			values = new AtomicReferenceArray<Object>(capacity);
+			mask = capacity - 1;
+		}
+	}
+
+	private volatile Table table;
+	private volatile int size;
+	private int used; // slots holding a value or a tombstone, guarded by this
+
+	public ConcurrentIntObjectHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public ConcurrentIntObjectHashMap(int expectedSize) {
+		table = new Table(capacityFor(expectedSize));
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity * LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static int index(int key, int mask) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns the slot of the key in the table, or -1 if it was never there.
+	 */
+	private static int find(Table t, int key) {
+		int i = index(key, t.mask);
+		for (int probes = 0; probes <= t.mask; probes++) {
+			// read the value first, the key is written before it
+			if (t.values.get(i) == null) {
+				return -1;
+			}
+			if (t.keys.get(i) == key) {
+				return i;
+			}
+			i = (i + 1) & t.mask;
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		Table t = table;
+		int i = find(t, key);
+		if (i < 0) {
+			return null;
+		}
+		Object value = t.values.get(i);
+		return value == TOMBSTONE ? null : (V) value;
+	}
+
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Maps the key to the value and returns the previous value of the key, if
+	 * any.
+	 *
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("null values are not supported");
+		}
+
+		Table t = table;
+		int i = find(t, key);
+		if (i >= 0) {
+			Object previous = t.values.getAndSet(i, value);
+			if (previous == TOMBSTONE) {
+				size++;
+				return null;
+			}
+			return (V) previous;
+		}
+
+		if ((used + 1) > (t.mask + 1) * LOAD_FACTOR) {
+			t = resize();
+		}
+		i = index(key, t.mask);
+		while (t.values.get(i) != null) {
+			i = (i + 1) & t.mask;
+		}
+		t.keys.set(i, key);
+		t.values.set(i, value);
+		used++;
+		size++;
+		return null;
+	}
+
+	/**
+	 * Removes the key and returns its value, if any.
+	 *
+	 * @param key
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized V remove(int key) {
+		Table t = table;
+		int i = find(t, key);
+		if (i < 0) {
+			return null;
+		}
+		Object previous = t.values.get(i);
+		if (previous == TOMBSTONE) {
+			return null;
+		}
+		t.values.set(i, TOMBSTONE);
+		size--;
+		return (V) previous;
+	}
+
+	public synchronized void clear() {
+		table = new Table(DEFAULT_CAPACITY);
+		used = 0;
+		size = 0;
+	}
+
+	/**
+	 * Copies the live entries to a new table, sized for them, and publishes
+	 * it. Readers still on the old table see the map as it was, the old table
+	 * is not written anymore.
+	 */
+	private Table resize() {
+		Table old = table;
+		Table t = new Table(capacityFor((size + 1) * 2));
+		for (int i = 0; i <= old.mask; i++) {
+			Object value = old.values.get(i);
+			if (value != null && value != TOMBSTONE) {
+				int j = index(old.keys.get(i), t.mask);
+				while (t.values.get(j) != null) {
+					j = (j + 1) & t.mask;
+				}
+				t.keys.set(j, old.keys.get(i));
+				t.values.set(j, value);
+			}
+		}
+		used = size;
+		table = t;
+		return t;
+	}
+
+	/**
+	 * Returns a view of the values. Its iterators are weakly consistent, like
+	 * the ones of the ConcurrentHashMap.
+	 *
+	 * @return
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			public Iterator<V> iterator() {
+				return new ValueIterator(table);
+			}
+
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private final class ValueIterator implements Iterator<V> {
+		private final Table t;
+		private int next;
+		private Object nextValue;
+
+		private ValueIterator(Table t) {
+			this.t = t;
+			advance();
+		}
+
+		private void advance() {
+			nextValue = null;
+			while (next <= t.mask
+					&& (nextValue == null || nextValue == TOMBSTONE)) {
+				nextValue = t.values.get(next++);
+			}
+			if (nextValue == TOMBSTONE) {
+				nextValue = null;
+			}
+		}
+
+		public boolean hasNext() {
+			return nextValue != null;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (nextValue == null) {
+				throw new NoSuchElementException();
+			}
+			V value = (V) nextValue;
+			advance();
+			return value;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
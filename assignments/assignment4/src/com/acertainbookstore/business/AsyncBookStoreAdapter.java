@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package com.acertainbookstore.business;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.acertainbookstore.interfaces.AsyncBookStore;
+import com.acertainbookstore.interfaces.AsyncStockManager;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * AsyncBookStoreAdapter runs the calls of a local BookStore and StockManager,
+ * e.g. a CertainBookStore, on a dedicated executor, so that the caller gets a
+ * future instead of waiting for the call. The number of calls in flight is
+ * then bounded by the queue of the executor rather than by the threads of
+ * the callers.
+ *
+ */
+public class AsyncBookStoreAdapter implements AsyncBookStore,
+		AsyncStockManager {
+	private final BookStore bookStore;
+	private final StockManager stockManager;
+	private final Executor executor;
+
+	/**
+	 * Creates an adapter which runs the calls of the store on the executor.
+	 *
+	 * @param bookStore
+	 * @param stockManager
+	 * @param executor
+	 */
+	public AsyncBookStoreAdapter(BookStore bookStore,
+			StockManager stockManager, Executor executor) {
+		this.bookStore = bookStore;
+		this.stockManager = stockManager;
+		this.executor = executor;
+	}
+
+	/**
+	 * A call of the store.
+	 */
+	private interface Call<T> {
+		public T run() throws BookStoreException;
+	}
+
+	/**
+	 * Runs the call on the executor and returns a future of its result. If
+	 * the executor rejects the call the future fails with the rejection.
+	 *
+	 * @param call
+	 * @return
+	 */
+	private <T> CompletableFuture<T> submit(final Call<T> call) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						future.complete(call.run());
+					} catch (Throwable t) {
+						future.completeExceptionally(t);
+					}
+				}
+			});
+		} catch (RuntimeException ex) {
+			future.completeExceptionally(ex);
+		}
+		return future;
+	}
+
+	public CompletableFuture<Void> buyBooks(final Set<BookCopy> booksToBuy) {
+		return submit(new Call<Void>() {
+			public Void run() throws BookStoreException {
+				bookStore.buyBooks(booksToBuy);
+				return null;
+			}
+		});
+	}
+
+	public CompletableFuture<Void> rateBooks(final Set<BookRating> bookRating) {
+		return submit(new Call<Void>() {
+			public Void run() throws BookStoreException {
+				bookStore.rateBooks(bookRating);
+				return null;
+			}
+		});
+	}
+
+	public CompletableFuture<List<Book>> getBooks(final Set<Integer> ISBNList) {
+		return submit(new Call<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				return bookStore.getBooks(ISBNList);
+			}
+		});
+	}
+
+	public CompletableFuture<List<Book>> getTopRatedBooks(final int numBooks) {
+		return submit(new Call<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				return bookStore.getTopRatedBooks(numBooks);
+			}
+		});
+	}
+
+	public CompletableFuture<List<Book>> getEditorPicks(final int numBooks) {
+		return submit(new Call<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				return bookStore.getEditorPicks(numBooks);
+			}
+		});
+	}
+
+	public CompletableFuture<Void> addBooks(final Set<StockBook> bookSet) {
+		return submit(new Call<Void>() {
+			public Void run() throws BookStoreException {
+				stockManager.addBooks(bookSet);
+				return null;
+			}
+		});
+	}
+
+	public CompletableFuture<Void> addCopies(final Set<BookCopy> bookCopiesSet) {
+		return submit(new Call<Void>() {
+			public Void run() throws BookStoreException {
+				stockManager.addCopies(bookCopiesSet);
+				return null;
+			}
+		});
+	}
+
+	public CompletableFuture<List<StockBook>> getBooks() {
+		return submit(new Call<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				return stockManager.getBooks();
+			}
+		});
+	}
+
+	public CompletableFuture<List<StockBook>> getBooks(final int afterISBN,
+			final int numBooks) {
+		return submit(new Call<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				return stockManager.getBooks(afterISBN, numBooks);
+			}
+		});
+	}
+
+	public CompletableFuture<List<StockBook>> getBooksByISBN(
+			final Set<Integer> isbns) {
+		return submit(new Call<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				return stockManager.getBooksByISBN(isbns);
+			}
+		});
+	}
+
+	public CompletableFuture<List<StockBook>> getBooksInDemand() {
+		return submit(new Call<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				return stockManager.getBooksInDemand();
+			}
+		});
+	}
+
+	public CompletableFuture<Void> updateEditorPicks(
+			final Set<BookEditorPick> editorPicks) {
+		return submit(new Call<Void>() {
+			public Void run() throws BookStoreException {
+				stockManager.updateEditorPicks(editorPicks);
+				return null;
+			}
+		});
+	}
+
+	public CompletableFuture<Void> removeAllBooks() {
+		return submit(new Call<Void>() {
+			public Void run() throws BookStoreException {
+				stockManager.removeAllBooks();
+				return null;
+			}
+		});
+	}
+
+	public CompletableFuture<Void> removeBooks(final Set<Integer> isbnSet) {
+		return submit(new Call<Void>() {
+			public Void run() throws BookStoreException {
+				stockManager.removeBooks(isbnSet);
+				return null;
+			}
+		});
+	}
+}
@@ -1,5 +1,7 @@
 package com.acertainbookstore.business;
 
+import java.util.Set;
+
 /**
  * Simple class for updating the number of book copies.
  * 
@@ -54,6 +56,36 @@ public class BookCopy {
 		this.numCopies = numCopies;
 	}
 
+	/**
+	 * Returns the ISBNs of the copies, in the order of the set.
+	 * 
+	 * @param bookCopies
+	 * @return
+	 */
+	static int[] isbns(Set<BookCopy> bookCopies) {
+		int[] isbns = new int[bookCopies.size()];
+		int i = 0;
+		for (BookCopy bookCopy : bookCopies) {
+			isbns[i++] = bookCopy.getISBN();
+		}
+		return isbns;
+	}
+
+	/**
+	 * Returns the numbers of copies, in the order of the set.
+	 * 
+	 * @param bookCopies
+	 * @return
+	 */
+	static int[] numCopies(Set<BookCopy> bookCopies) {
+		int[] numCopies = new int[bookCopies.size()];
+		int i = 0;
+		for (BookCopy bookCopy : bookCopies) {
+			numCopies[i++] = bookCopy.getNumCopies();
+		}
+		return numCopies;
+	}
+
 	public boolean equals(Object obj) {
 		if (obj == null || getClass() != obj.getClass()) {
 			return false;
@@ -0,0 +1,68 @@
+package com.acertainbookstore.business;
+
+import java.nio.charset.Charset;
+
+/**
+ * The title, author and price of a book, which never change once the book is
+ * in the store. The BookInventory keeps one record per slot; it never leaves
+ * the store, since the books sent to the clients carry the title, author and
+ * price as they always did.
+ *
+ * The title and author are kept as UTF-8 bytes, which take less room than
+ * strings, and are only decoded when they are asked for, cf. BookStoreBook.
+ * The bytes of the author may be shared with other books by the same author,
+ * cf. BookInventory.
+ *
+ */
+public final class BookMetadata {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final byte[] title;
+	private final byte[] author;
+	private final float price;
+
+	/**
+	 * Creates the metadata of a book.
+	 *
+	 * @param title
+	 * @param author
+	 * @param price
+	 */
+	public BookMetadata(String title, String author, float price) {
+		this(encode(title), encode(author), price);
+	}
+
+	/**
+	 * Creates the metadata of a book from the UTF-8 bytes of its title and
+	 * author, which are not copied and must not be changed afterwards.
+	 *
+	 * @param title
+	 * @param author
+	 * @param price
+	 */
+	BookMetadata(byte[] title, byte[] author, float price) {
+		this.title = title;
+		this.author = author;
+		this.price = price;
+	}
+
+	static byte[] encode(String string) {
+		return string == null ? null : string.getBytes(UTF_8);
+	}
+
+	private static String decode(byte[] bytes) {
+		return bytes == null ? null : new String(bytes, UTF_8);
+	}
+
+	public String getTitle() {
+		return decode(title);
+	}
+
+	public String getAuthor() {
+		return decode(author);
+	}
+
+	public float getPrice() {
+		return price;
+	}
+}
@@ -0,0 +1,113 @@
+package com.acertainbookstore.business;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.acertainbookstore.interfaces.InventoryColumns;
+
+/**
+ * DirectInventoryColumns keeps the counters of the books off the heap, in one
+ * direct ByteBuffer per column, so that large catalogs neither grow the heap
+ * nor have to be walked by the garbage collector.
+ *
+ */
+public class DirectInventoryColumns implements InventoryColumns {
+	private static final int INT_BYTES = 4;
+	private static final int LONG_BYTES = 8;
+
+	private int capacity;
+	private ByteBuffer numCopies;
+	private ByteBuffer totalRating;
+	private ByteBuffer timesRated;
+	private ByteBuffer saleMisses;
+	private ByteBuffer editorPick;
+
+	public DirectInventoryColumns(int capacity) {
+		this.capacity = capacity;
+		numCopies = allocate(capacity * INT_BYTES, null);
+		totalRating = allocate(capacity * LONG_BYTES, null);
+		timesRated = allocate(capacity * LONG_BYTES, null);
+		saleMisses = allocate(capacity * LONG_BYTES, null);
+		editorPick = allocate(capacity, null);
+	}
+
+	/**
+	 * Allocates a direct buffer of the given size, holding a copy of old if
+	 * it is not null.
+	 */
+	private static ByteBuffer allocate(int size, ByteBuffer old) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(
+				ByteOrder.nativeOrder());
+		if (old != null) {
+			ByteBuffer src = old.duplicate();
+			src.clear();
+			buffer.put(src);
+			buffer.clear();
+		}
+		return buffer;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public void grow(int capacity) {
+		if (capacity <= this.capacity) {
+			return;
+		}
+		numCopies = allocate(capacity * INT_BYTES, numCopies);
+		totalRating = allocate(capacity * LONG_BYTES, totalRating);
+		timesRated = allocate(capacity * LONG_BYTES, timesRated);
+		saleMisses = allocate(capacity * LONG_BYTES, saleMisses);
+		editorPick = allocate(capacity, editorPick);
+		this.capacity = capacity;
+	}
+
+	public void move(int from, int to) {
+		setNumCopies(to, getNumCopies(from));
+		setTotalRating(to, getTotalRating(from));
+		setTimesRated(to, getTimesRated(from));
+		setSaleMisses(to, getSaleMisses(from));
+		setEditorPick(to, isEditorPick(from));
+	}
+
+	public int getNumCopies(int slot) {
+		return numCopies.getInt(slot * INT_BYTES);
+	}
+
+	public void setNumCopies(int slot, int numCopies) {
+		this.numCopies.putInt(slot * INT_BYTES, numCopies);
+	}
+
+	public long getTotalRating(int slot) {
+		return totalRating.getLong(slot * LONG_BYTES);
+	}
+
+	public void setTotalRating(int slot, long totalRating) {
+		this.totalRating.putLong(slot * LONG_BYTES, totalRating);
+	}
+
+	public long getTimesRated(int slot) {
+		return timesRated.getLong(slot * LONG_BYTES);
+	}
+
+	public void setTimesRated(int slot, long timesRated) {
+		this.timesRated.putLong(slot * LONG_BYTES, timesRated);
+	}
+
+	public long getSaleMisses(int slot) {
+		return saleMisses.getLong(slot * LONG_BYTES);
+	}
+
+	public void setSaleMisses(int slot, long saleMisses) {
+		this.saleMisses.putLong(slot * LONG_BYTES, saleMisses);
+	}
+
+	public boolean isEditorPick(int slot) {
+		return editorPick.get(slot) != 0;
+	}
+
+	public void setEditorPick(int slot, boolean editorPick) {
+		this.editorPick.put(slot, (byte) (editorPick ? 1 : 0));
+	}
+}
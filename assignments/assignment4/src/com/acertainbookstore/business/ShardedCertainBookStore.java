@@ -0,0 +1,671 @@
+/**
+ *
+ */
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+import com.acertainbookstore.business.WriteCombiner.Write;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.IntIntHashMap;
+
+/**
+ * ShardedCertainBookStore is a CertainBookStore whose catalog is split by a
+ * hash of the ISBN into shards, each with its own BookInventory and its own
+ * StampedLock, so that orders of books in different shards do not wait for
+ * each other.
+ *
+ * An operation on several books locks the shards of those books, always in
+ * shard order so that two operations cannot deadlock, and checks all the books
+ * before changing any of them, so it is still all-or-nothing. Reads are run
+ * optimistically as in the CertainBookStore and only kept if none of their
+ * shards changed meanwhile, otherwise they are run again under the read locks.
+ * Operations on the whole catalog use every shard, so they see the catalog as
+ * it was at one point in time.
+ *
+ */
+public class ShardedCertainBookStore implements BookStore, StockManager {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// The books with the highest average rating first, then by ISBN, which is
+	// the order of the top rated books in a BookInventory
+	private static final Comparator<BookStoreBook> RATING_ORDER = new Comparator<BookStoreBook>() {
+		public int compare(BookStoreBook book1, BookStoreBook book2) {
+			int order = Float.compare(book2.getAverageRating(),
+					book1.getAverageRating());
+			return order != 0 ? order : Integer.compare(book1.getISBN(),
+					book2.getISBN());
+		}
+	};
+
+	// The order of the books in a page of the catalog
+	private static final Comparator<BookStoreBook> ISBN_ORDER = new Comparator<BookStoreBook>() {
+		public int compare(BookStoreBook book1, BookStoreBook book2) {
+			return Integer.compare(book1.getISBN(), book2.getISBN());
+		}
+	};
+
+	private final BookInventory[] inventories;
+	private final StampedLock[] locks;
+	private final boolean[] allShards;
+
+	public ShardedCertainBookStore() {
+		this(Integer.getInteger(BookStoreConstants.PROPERTY_KEY_SHARDS, Runtime
+				.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Creates a store with numShards shards.
+	 *
+	 * @param numShards
+	 */
+	public ShardedCertainBookStore(int numShards) {
+		if (numShards < 1) {
+			throw new IllegalArgumentException("numShards = " + numShards
+					+ ", but it must be positive");
+		}
+
+		// Constructors are not synchronized
+		boolean offHeap = Boolean
+				.getBoolean(BookStoreConstants.PROPERTY_KEY_OFF_HEAP_INVENTORY);
+		int capacity = Math.max(INITIAL_CAPACITY / numShards, 1);
+		inventories = new BookInventory[numShards];
+		locks = new StampedLock[numShards];
+		allShards = new boolean[numShards];
+		for (int i = 0; i < numShards; i++) {
+			inventories[i] = new BookInventory(
+					offHeap ? new DirectInventoryColumns(capacity)
+							: new HeapInventoryColumns(capacity));
+			locks[i] = new StampedLock();
+			allShards[i] = true;
+		}
+	}
+
+	private int shard(int ISBN) {
+		int hash = ISBN * 0x9E3779B9;
+		return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % inventories.length;
+	}
+
+	private BookInventory inventory(int ISBN) {
+		return inventories[shard(ISBN)];
+	}
+
+	/**
+	 * A read of the store, cf. CertainBookStore.
+	 */
+	private interface Read<T> {
+		public T run() throws BookStoreException;
+	}
+
+	/**
+	 * Runs the read optimistically and returns its result (or throws its
+	 * exception) if none of the shards changed meanwhile. Otherwise the read
+	 * is run again under the read locks of the shards.
+	 *
+	 * @param shards
+	 *            the shards read
+	 * @param read
+	 * @return
+	 * @throws BookStoreException
+	 */
+	private <T> T read(boolean[] shards, Read<T> read)
+			throws BookStoreException {
+		long[] stamps = new long[shards.length];
+		boolean optimistic = true;
+		for (int i = 0; i < shards.length && optimistic; i++) {
+			if (shards[i]) {
+				stamps[i] = locks[i].tryOptimisticRead();
+				optimistic = stamps[i] != 0;
+			}
+		}
+		if (optimistic) {
+			try {
+				T result = read.run();
+				if (validate(shards, stamps)) {
+					return result;
+				}
+			} catch (BookStoreException ex) {
+				if (validate(shards, stamps)) {
+					throw ex;
+				}
+			} catch (RuntimeException ex) {
+				// An inconsistent read may fail in any way, it is only an
+				// error if nothing changed underneath it
+				if (validate(shards, stamps)) {
+					throw ex;
+				}
+			}
+		}
+
+		for (int i = 0; i < shards.length; i++) {
+			if (shards[i]) {
+				stamps[i] = locks[i].readLock();
+			}
+		}
+		try {
+			return read.run();
+		} finally {
+			for (int i = shards.length - 1; i >= 0; i--) {
+				if (shards[i]) {
+					locks[i].unlockRead(stamps[i]);
+				}
+			}
+		}
+	}
+
+	private boolean validate(boolean[] shards, long[] stamps) {
+		for (int i = 0; i < shards.length; i++) {
+			if (shards[i] && !locks[i].validate(stamps[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the update under the write locks of the shards, which are taken in
+	 * shard order.
+	 *
+	 * @param shards
+	 *            the shards written
+	 * @param write
+	 * @throws BookStoreException
+	 */
+	private void write(boolean[] shards, Write write) throws BookStoreException {
+		long[] stamps = new long[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			if (shards[i]) {
+				stamps[i] = locks[i].writeLock();
+			}
+		}
+		try {
+			write.run();
+		} finally {
+			for (int i = shards.length - 1; i >= 0; i--) {
+				if (shards[i]) {
+					locks[i].unlockWrite(stamps[i]);
+				}
+			}
+		}
+	}
+
+	private boolean[] shardsOf(Set<Integer> isbnSet) {
+		boolean[] shards = new boolean[inventories.length];
+		for (Integer ISBN : isbnSet) {
+			shards[shard(ISBN)] = true;
+		}
+		return shards;
+	}
+
+	private boolean[] shardsOf(int[] isbns) {
+		boolean[] shards = new boolean[inventories.length];
+		for (int ISBN : isbns) {
+			shards[shard(ISBN)] = true;
+		}
+		return shards;
+	}
+
+	public void addBooks(final Set<StockBook> bookSet)
+			throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		boolean[] shards = new boolean[inventories.length];
+		for (StockBook book : bookSet) {
+			shards[shard(book.getISBN())] = true;
+		}
+
+		write(shards, new Write() {
+			public void run() throws BookStoreException {
+				// Check if all are there, and only once in the set
+				Set<Integer> ISBNs = new HashSet<Integer>();
+				for (StockBook book : bookSet) {
+					int ISBN = book.getISBN();
+					String bookTitle = book.getTitle();
+					String bookAuthor = book.getAuthor();
+					int noCopies = book.getNumCopies();
+					float bookPrice = book.getPrice();
+					if (BookStoreUtility.isInvalidISBN(ISBN)
+							|| BookStoreUtility.isEmpty(bookTitle)
+							|| BookStoreUtility.isEmpty(bookAuthor)
+							|| BookStoreUtility.isInvalidNoCopies(noCopies)
+							|| bookPrice < 0.0) {
+						throw new BookStoreException(BookStoreConstants.BOOK
+								+ book.toString() + BookStoreConstants.INVALID);
+					} else if (inventory(ISBN).containsKey(ISBN)
+							|| !ISBNs.add(ISBN)) {
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.DUPLICATED);
+					}
+				}
+
+				for (StockBook book : bookSet) {
+					inventory(book.getISBN()).add(book);
+				}
+			}
+		});
+	}
+
+	public void addCopies(Set<BookCopy> bookCopiesSet)
+			throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		addCopies(BookCopy.isbns(bookCopiesSet),
+				BookCopy.numCopies(bookCopiesSet));
+	}
+
+	public void addCopies(final int[] isbns, final int[] numCopies)
+			throws BookStoreException {
+		CertainBookStore.checkArrays(isbns, numCopies);
+
+		write(shardsOf(isbns), new Write() {
+			public void run() throws BookStoreException {
+				int ISBN;
+				for (int i = 0; i < isbns.length; i++) {
+					ISBN = isbns[i];
+					if (BookStoreUtility.isInvalidISBN(ISBN))
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.INVALID);
+					if (!inventory(ISBN).containsKey(ISBN))
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.NOT_AVAILABLE);
+					if (BookStoreUtility.isInvalidNoCopies(numCopies[i]))
+						throw new BookStoreException(BookStoreConstants.NUM_COPIES
+								+ numCopies[i] + BookStoreConstants.INVALID);
+				}
+
+				// Update the number of copies
+				for (int i = 0; i < isbns.length; i++) {
+					inventory(isbns[i]).addCopies(isbns[i], numCopies[i]);
+				}
+			}
+		});
+	}
+
+	public List<StockBook> getBooks() {
+		try {
+			return read(allShards, new Read<List<StockBook>>() {
+				public List<StockBook> run() {
+					List<StockBook> listBooks = new ArrayList<StockBook>();
+					for (BookInventory inventory : inventories) {
+						for (BookStoreBook book : inventory.values()) {
+							listBooks.add(book.immutableStockBook());
+						}
+					}
+					return listBooks;
+				}
+			});
+		} catch (BookStoreException ex) {
+			// Cannot happen, listing the books does not throw
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	public List<StockBook> getBooks(final int afterISBN, final int numBooks)
+			throws BookStoreException {
+		return read(allShards, new Read<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				if (afterISBN < 0) {
+					throw new BookStoreException(BookStoreConstants.ISBN
+							+ afterISBN + BookStoreConstants.INVALID);
+				}
+				if (BookStoreUtility.isInvalidPageSize(numBooks)) {
+					throw new BookStoreException(BookStoreConstants.PAGE_SIZE
+							+ numBooks + BookStoreConstants.INVALID);
+				}
+
+				// the page is among the first numBooks books of each shard
+				List<BookStoreBook> candidates = new ArrayList<BookStoreBook>();
+				for (BookInventory inventory : inventories) {
+					candidates.addAll(inventory.booksAfter(afterISBN, numBooks));
+				}
+				Collections.sort(candidates, ISBN_ORDER);
+
+				List<StockBook> listBooks = new ArrayList<StockBook>();
+				for (BookStoreBook book : candidates.subList(0,
+						Math.min(numBooks, candidates.size()))) {
+					listBooks.add(book.immutableStockBook());
+				}
+				return listBooks;
+			}
+		});
+	}
+
+	public void updateEditorPicks(final Set<BookEditorPick> editorPicks)
+			throws BookStoreException {
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		boolean[] shards = new boolean[inventories.length];
+		for (BookEditorPick editorPickArg : editorPicks) {
+			shards[shard(editorPickArg.getISBN())] = true;
+		}
+
+		write(shards, new Write() {
+			public void run() throws BookStoreException {
+				int ISBNVal;
+				for (BookEditorPick editorPickArg : editorPicks) {
+					ISBNVal = editorPickArg.getISBN();
+					if (BookStoreUtility.isInvalidISBN(ISBNVal))
+						throw new BookStoreException(BookStoreConstants.ISBN
+								+ ISBNVal + BookStoreConstants.INVALID);
+					if (!inventory(ISBNVal).containsKey(ISBNVal))
+						throw new BookStoreException(BookStoreConstants.ISBN
+								+ ISBNVal + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				for (BookEditorPick editorPickArg : editorPicks) {
+					ISBNVal = editorPickArg.getISBN();
+					inventory(ISBNVal).setEditorPick(ISBNVal,
+							editorPickArg.isEditorPick());
+				}
+			}
+		});
+	}
+
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy)
+			throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		buyBooks(BookCopy.isbns(bookCopiesToBuy),
+				BookCopy.numCopies(bookCopiesToBuy));
+	}
+
+	/**
+	 * Buys the copies as CertainBookStore.buyBooks(int[], int[]) does.
+	 */
+	public void buyBooks(final int[] isbns, final int[] numCopies)
+			throws BookStoreException {
+		CertainBookStore.checkArrays(isbns, numCopies);
+
+		write(shardsOf(isbns), new Write() {
+			public void run() throws BookStoreException {
+				// Check that all ISBNs that we buy are there first.
+				int ISBN;
+				int[] slots = new int[isbns.length];
+				for (int i = 0; i < isbns.length; i++) {
+					ISBN = isbns[i];
+					if (numCopies[i] < 0)
+						throw new BookStoreException(BookStoreConstants.NUM_COPIES
+								+ numCopies[i] + BookStoreConstants.INVALID);
+					if (BookStoreUtility.isInvalidISBN(ISBN))
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.INVALID);
+					slots[i] = inventory(ISBN).slot(ISBN);
+					if (slots[i] == BookInventory.NO_SLOT)
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				// Then make purchase, until the first book that is short
+				int bought = isbns.length;
+				for (int i = 0; i < isbns.length; i++) {
+					BookInventory inventory = inventory(isbns[i]);
+					if (inventory.getNumCopiesAt(slots[i]) < numCopies[i]) {
+						// If we cannot sell the copies of the book its a miss
+						inventory.addSaleMissAt(slots[i]);
+						bought = Math.min(bought, i);
+					} else if (bought == isbns.length) {
+						inventory.buyCopiesAt(slots[i], numCopies[i]);
+					}
+				}
+
+				// We throw exception now since we want to see how many books in
+				// the order incurred misses which is used by books in demand
+				if (bought < isbns.length) {
+					for (int i = 0; i < bought; i++) {
+						inventory(isbns[i]).releaseCopiesAt(slots[i], numCopies[i]);
+					}
+					throw new BookStoreException(BookStoreConstants.BOOK
+							+ BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+		});
+	}
+
+	public List<StockBook> getBooksByISBN(final Set<Integer> isbnSet)
+			throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		return read(shardsOf(isbnSet), new Read<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				checkBooks(isbnSet);
+				List<StockBook> listBooks = new ArrayList<StockBook>();
+				for (Integer ISBN : isbnSet) {
+					listBooks.add(inventory(ISBN).get(ISBN).immutableStockBook());
+				}
+				return listBooks;
+			}
+		});
+	}
+
+	public List<Book> getBooks(Set<Integer> isbnSet)
+			throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		return getBooks(BookStoreUtility.toArray(isbnSet));
+	}
+
+	public List<Book> getBooks(final int[] isbns) throws BookStoreException {
+		if (isbns == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		return read(shardsOf(isbns), new Read<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				int ISBN;
+				for (int i = 0; i < isbns.length; i++) {
+					ISBN = isbns[i];
+					if (BookStoreUtility.isInvalidISBN(ISBN))
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.INVALID);
+					if (!inventory(ISBN).containsKey(ISBN))
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.NOT_AVAILABLE);
+				}
+				List<Book> listBooks = new ArrayList<Book>(isbns.length);
+				for (int ISBNVal : isbns) {
+					listBooks.add(inventory(ISBNVal).get(ISBNVal).immutableBook());
+				}
+				return listBooks;
+			}
+		});
+	}
+
+	/**
+	 * Checks that the ISBNs are valid and in the store.
+	 *
+	 * @param isbnSet
+	 * @throws BookStoreException
+	 */
+	private void checkBooks(Set<Integer> isbnSet) throws BookStoreException {
+		for (Integer ISBN : isbnSet) {
+			if (BookStoreUtility.isInvalidISBN(ISBN))
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.INVALID);
+			if (!inventory(ISBN).containsKey(ISBN))
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.NOT_AVAILABLE);
+		}
+	}
+
+	public List<Book> getEditorPicks(final int numBooks)
+			throws BookStoreException {
+		return read(allShards, new Read<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				if (numBooks < 0) {
+					throw new BookStoreException("numBooks = " + numBooks
+							+ ", but it must be positive");
+				}
+
+				List<Book> listEditorPicks = new ArrayList<Book>();
+				int range = 0;
+				for (BookInventory inventory : inventories) {
+					range += inventory.numEditorPicks();
+				}
+				if (range <= numBooks) {
+					for (BookInventory inventory : inventories) {
+						for (BookStoreBook book : inventory.editorPicks()) {
+							listEditorPicks.add(book.immutableBook());
+						}
+					}
+					return listEditorPicks;
+				}
+
+				// A partial Fisher-Yates shuffle of the editor picks of all
+				// the shards, cf. BookInventory
+				Random rand = new Random();
+				IntIntHashMap swapped = new IntIntHashMap(numBooks * 2);
+				for (int i = 0; i < numBooks; i++) {
+					int j = i + rand.nextInt(range - i);
+					int atJ = swapped.get(j);
+					int atI = swapped.get(i);
+					swapped.put(j, atI == IntIntHashMap.NO_VALUE ? i : atI);
+					listEditorPicks.add(editorPick(
+							atJ == IntIntHashMap.NO_VALUE ? j : atJ)
+							.immutableBook());
+				}
+				return listEditorPicks;
+			}
+		});
+	}
+
+	/**
+	 * Returns the editor pick at the position in the editor picks of all the
+	 * shards, taken in shard order.
+	 */
+	private BookStoreBook editorPick(int position) {
+		for (BookInventory inventory : inventories) {
+			if (position < inventory.numEditorPicks()) {
+				return inventory.editorPick(position);
+			}
+			position -= inventory.numEditorPicks();
+		}
+		throw new IndexOutOfBoundsException("position = " + position);
+	}
+
+	public List<Book> getTopRatedBooks(final int numBooks)
+			throws BookStoreException {
+		return read(allShards, new Read<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				if (numBooks < 0) {
+					throw new BookStoreException("numBooks = " + numBooks
+							+ ", but it must be positive");
+				}
+
+				int size = 0;
+				for (BookInventory inventory : inventories) {
+					size += inventory.size();
+				}
+				if (numBooks > size) {
+					throw new BookStoreException("numBooks = " + numBooks
+							+ ", but it must be less than or equal to number of books in store");
+				}
+
+				// the top rated books are among the top rated of each shard
+				List<BookStoreBook> candidates = new ArrayList<BookStoreBook>();
+				for (BookInventory inventory : inventories) {
+					candidates.addAll(inventory.topRated(numBooks));
+				}
+				Collections.sort(candidates, RATING_ORDER);
+
+				List<Book> listTopRated = new ArrayList<Book>(numBooks);
+				for (BookStoreBook book : candidates.subList(0, numBooks)) {
+					listTopRated.add(book.immutableBook());
+				}
+				return listTopRated;
+			}
+		});
+	}
+
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		return read(allShards, new Read<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				List<StockBook> listBooks = new ArrayList<StockBook>();
+				for (BookInventory inventory : inventories) {
+					for (BookStoreBook book : inventory.booksInDemand()) {
+						listBooks.add(book.immutableStockBook());
+					}
+				}
+				return listBooks;
+			}
+		});
+	}
+
+	public void rateBooks(final Set<BookRating> bookRating)
+			throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		boolean[] shards = new boolean[inventories.length];
+		for (BookRating bookRatingToRate : bookRating) {
+			shards[shard(bookRatingToRate.getISBN())] = true;
+		}
+
+		write(shards, new Write() {
+			public void run() throws BookStoreException {
+				int ISBN, rating;
+				for (BookRating bookRatingToRate : bookRating) {
+					ISBN = bookRatingToRate.getISBN();
+					rating = bookRatingToRate.getRating();
+					if (BookStoreUtility.isInvalidISBN(ISBN))
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.INVALID);
+					if (!inventory(ISBN).containsKey(ISBN))
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.NOT_AVAILABLE);
+					if (BookStoreUtility.isInvalidRating(rating))
+						throw new BookStoreException(BookStoreConstants.RATING
+								+ rating + BookStoreConstants.INVALID);
+				}
+
+				for (BookRating bookRatingToRate : bookRating) {
+					ISBN = bookRatingToRate.getISBN();
+					inventory(ISBN).addRating(ISBN, bookRatingToRate.getRating());
+				}
+			}
+		});
+	}
+
+	public void removeAllBooks() throws BookStoreException {
+		write(allShards, new Write() {
+			public void run() {
+				for (BookInventory inventory : inventories) {
+					inventory.clear();
+				}
+			}
+		});
+	}
+
+	public void removeBooks(final Set<Integer> isbnSet)
+			throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		write(shardsOf(isbnSet), new Write() {
+			public void run() throws BookStoreException {
+				checkBooks(isbnSet);
+				for (int ISBN : isbnSet) {
+					inventory(ISBN).remove(ISBN);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * 
+ */
+package com.acertainbookstore.client;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.io.ByteArrayBuffer;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.interfaces.AsyncBookStore;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.FutureExchange;
+
+/**
+ * AsyncBookStoreHTTPProxy implements the client level asynchronous
+ * CertainBookStore API declared in the AsyncBookStore class. It sends the
+ * same requests as the BookStoreHTTPProxy, but no thread waits for the
+ * responses, so the number of calls in flight is not bounded by the threads
+ * of the caller.
+ * 
+ */
+public class AsyncBookStoreHTTPProxy implements AsyncBookStore {
+	// Drops the response of a call which has no result
+	private static final Function<List<?>, Void> NO_RESULT = new Function<List<?>, Void>() {
+		public Void apply(List<?> response) {
+			return null;
+		}
+	};
+
+	protected HttpClient client;
+	protected String serverAddress;
+
+	/**
+	 * Initialize the client object
+	 */
+	public AsyncBookStoreHTTPProxy(String serverAddress) throws Exception {
+		setServerAddress(serverAddress);
+		client = new HttpClient();
+		client.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
+		client.setMaxConnectionsPerAddress(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
+		client.setThreadPool(new QueuedThreadPool(
+				BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+		client.setTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
+		client.start();
+	}
+
+	public String getServerAddress() {
+		return serverAddress;
+	}
+
+	public void setServerAddress(String serverAddress) {
+		this.serverAddress = serverAddress;
+	}
+
+	private CompletableFuture<List<?>> post(BookStoreMessageTag tag,
+			Object content) {
+		FutureExchange exchange = new FutureExchange();
+		exchange.setMethod("POST");
+		exchange.setURL(serverAddress + "/" + tag);
+		exchange.setRequestContent(new ByteArrayBuffer(BookStoreUtility
+				.serializeObjectToXMLString(content)));
+		return BookStoreUtility.sendAsync(client, exchange);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> CompletableFuture<List<T>> books(
+			CompletableFuture<List<?>> response) {
+		return (CompletableFuture<List<T>>) (CompletableFuture<?>) response;
+	}
+
+	public CompletableFuture<Void> buyBooks(Set<BookCopy> isbnSet) {
+		return post(BookStoreMessageTag.BUYBOOKS, isbnSet).thenApply(
+				NO_RESULT);
+	}
+
+	public CompletableFuture<List<Book>> getBooks(Set<Integer> isbnSet) {
+		return books(post(BookStoreMessageTag.GETBOOKS, isbnSet));
+	}
+
+	/**
+	 * Gets the numBooks books of the request with the given tag, cf.
+	 * getEditorPicks and getTopRatedBooks.
+	 */
+	private CompletableFuture<List<Book>> get(BookStoreMessageTag tag,
+			int numBooks) {
+		String urlEncodedNumBooks = null;
+		try {
+			urlEncodedNumBooks = URLEncoder.encode(Integer.toString(numBooks),
+					"UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			CompletableFuture<List<Book>> failed = new CompletableFuture<List<Book>>();
+			failed.completeExceptionally(new BookStoreException(
+					"unsupported encoding of numbooks", ex));
+			return failed;
+		}
+
+		FutureExchange exchange = new FutureExchange();
+		exchange.setURL(serverAddress + "/" + tag + "?"
+				+ BookStoreConstants.BOOK_NUM_PARAM + "=" + urlEncodedNumBooks);
+		return books(BookStoreUtility.sendAsync(client, exchange));
+	}
+
+	public CompletableFuture<List<Book>> getEditorPicks(int numBooks) {
+		return get(BookStoreMessageTag.EDITORPICKS, numBooks);
+	}
+
+	public CompletableFuture<Void> rateBooks(Set<BookRating> bookRating) {
+		return post(BookStoreMessageTag.RATEBOOKS, bookRating).thenApply(
+				NO_RESULT);
+	}
+
+	public CompletableFuture<List<Book>> getTopRatedBooks(int numBooks) {
+		return get(BookStoreMessageTag.TOPRATEDBOOKS, numBooks);
+	}
+
+	public void stop() {
+		try {
+			client.stop();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * 
+ */
+package com.acertainbookstore.client;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.io.ByteArrayBuffer;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.AsyncStockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.FutureExchange;
+
+/**
+ * AsyncStockManagerHTTPProxy implements the client level asynchronous
+ * CertainBookStore API declared in the AsyncStockManager class, cf.
+ * AsyncBookStoreHTTPProxy.
+ * 
+ * Uses the HTTP protocol for communication with the server
+ * 
+ */
+public class AsyncStockManagerHTTPProxy implements AsyncStockManager {
+	// Drops the response of a call which has no result
+	private static final Function<List<?>, Void> NO_RESULT = new Function<List<?>, Void>() {
+		public Void apply(List<?> response) {
+			return null;
+		}
+	};
+
+	protected HttpClient client;
+	protected String serverAddress;
+
+	/**
+	 * Initialize the client object
+	 */
+	public AsyncStockManagerHTTPProxy(String serverAddress) throws Exception {
+		setServerAddress(serverAddress);
+		client = new HttpClient();
+		client.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
+		client.setMaxConnectionsPerAddress(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
+		client.setThreadPool(new QueuedThreadPool(
+				BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
+		client.setTimeout(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS);
+		client.start();
+	}
+
+	public String getServerAddress() {
+		return serverAddress;
+	}
+
+	public void setServerAddress(String serverAddress) {
+		this.serverAddress = serverAddress;
+	}
+
+	private CompletableFuture<List<?>> post(String url, Object content) {
+		FutureExchange exchange = new FutureExchange();
+		exchange.setMethod("POST");
+		exchange.setURL(url);
+		exchange.setRequestContent(new ByteArrayBuffer(BookStoreUtility
+				.serializeObjectToXMLString(content)));
+		return BookStoreUtility.sendAsync(client, exchange);
+	}
+
+	private CompletableFuture<List<?>> post(BookStoreMessageTag tag,
+			Object content) {
+		return post(serverAddress + "/" + tag, content);
+	}
+
+	private CompletableFuture<List<?>> get(BookStoreMessageTag tag) {
+		FutureExchange exchange = new FutureExchange();
+		exchange.setURL(serverAddress + "/" + tag);
+		return BookStoreUtility.sendAsync(client, exchange);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CompletableFuture<List<StockBook>> books(
+			CompletableFuture<List<?>> response) {
+		return (CompletableFuture<List<StockBook>>) (CompletableFuture<?>) response;
+	}
+
+	public CompletableFuture<Void> addBooks(Set<StockBook> bookSet) {
+		return post(BookStoreMessageTag.ADDBOOKS, bookSet).thenApply(NO_RESULT);
+	}
+
+	public CompletableFuture<Void> addCopies(Set<BookCopy> bookCopiesSet) {
+		return post(BookStoreMessageTag.ADDCOPIES, bookCopiesSet).thenApply(
+				NO_RESULT);
+	}
+
+	public CompletableFuture<List<StockBook>> getBooks() {
+		return books(get(BookStoreMessageTag.LISTBOOKS));
+	}
+
+	public CompletableFuture<List<StockBook>> getBooks(int afterISBN,
+			int numBooks) {
+		FutureExchange exchange = new FutureExchange();
+		exchange.setURL(serverAddress + "/" + BookStoreMessageTag.LISTBOOKSPAGE
+				+ "?" + BookStoreConstants.AFTER_ISBN_PARAM + "=" + afterISBN
+				+ "&" + BookStoreConstants.BOOK_NUM_PARAM + "=" + numBooks);
+		return books(BookStoreUtility.sendAsync(client, exchange));
+	}
+
+	public CompletableFuture<List<StockBook>> getBooksByISBN(Set<Integer> isbns) {
+		return books(post(BookStoreMessageTag.GETSTOCKBOOKSBYISBN, isbns));
+	}
+
+	public CompletableFuture<List<StockBook>> getBooksInDemand() {
+		return books(get(BookStoreMessageTag.GETBOOKSINDEMAND));
+	}
+
+	public CompletableFuture<Void> updateEditorPicks(
+			Set<BookEditorPick> editorPicksValues) {
+		return post(
+				serverAddress + "/" + BookStoreMessageTag.UPDATEEDITORPICKS
+						+ "?", editorPicksValues).thenApply(NO_RESULT);
+	}
+
+	public CompletableFuture<Void> removeAllBooks() {
+		FutureExchange exchange = new FutureExchange();
+		exchange.setMethod("POST");
+		exchange.setURL(serverAddress + "/" + BookStoreMessageTag.REMOVEALLBOOKS);
+		exchange.setRequestContent(new ByteArrayBuffer("test"));
+		return BookStoreUtility.sendAsync(client, exchange).thenApply(NO_RESULT);
+	}
+
+	public CompletableFuture<Void> removeBooks(Set<Integer> isbnSet) {
+		return post(BookStoreMessageTag.REMOVEBOOKS, isbnSet).thenApply(
+				NO_RESULT);
+	}
+
+	public void stop() {
+		try {
+			client.stop();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -83,6 +83,22 @@ public class BookStoreHTTPProxy implements BookStore {
 
 	}
 
+	public void buyBooks(int[] isbns, int[] numCopies)
+			throws BookStoreException {
+		ContentExchange exchange = new ContentExchange();
+		String urlString = serverAddress + "/"
+				+ BookStoreMessageTag.BULKBUYBOOKS;
+
+		String copiesxmlString = BookStoreUtility
+				.serializeObjectToXMLString(new int[][] { isbns, numCopies });
+		exchange.setMethod("POST");
+		exchange.setURL(urlString);
+		Buffer requestContent = new ByteArrayBuffer(copiesxmlString);
+		exchange.setRequestContent(requestContent);
+
+		BookStoreUtility.SendAndRecv(this.client, exchange);
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
 		ContentExchange exchange = new ContentExchange();
@@ -98,6 +114,22 @@ public class BookStoreHTTPProxy implements BookStore {
 		return (List<Book>) BookStoreUtility.SendAndRecv(this.client, exchange);
 	}
 
+	@SuppressWarnings("unchecked")
+	public List<Book> getBooks(int[] isbns) throws BookStoreException {
+		ContentExchange exchange = new ContentExchange();
+		String urlString = serverAddress + "/"
+				+ BookStoreMessageTag.BULKGETBOOKS;
+
+		String isbnsxmlString = BookStoreUtility
+				.serializeObjectToXMLString(isbns);
+		exchange.setMethod("POST");
+		exchange.setURL(urlString);
+		Buffer requestContent = new ByteArrayBuffer(isbnsxmlString);
+		exchange.setRequestContent(requestContent);
+
+		return (List<Book>) BookStoreUtility.SendAndRecv(this.client, exchange);
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
 		ContentExchange exchange = new ContentExchange();
@@ -128,17 +160,39 @@ public class BookStoreHTTPProxy implements BookStore {
 		}
 	}
 
-	@Override
 	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
-		// TODO Auto-generated method stub
-		throw new BookStoreException("Not implemented");
-		
+		ContentExchange exchange = new ContentExchange();
+		String urlString = serverAddress + "/" + BookStoreMessageTag.RATEBOOKS;
+
+		String ratingsxmlString = BookStoreUtility
+				.serializeObjectToXMLString(bookRating);
+		exchange.setMethod("POST");
+		exchange.setURL(urlString);
+		Buffer requestContent = new ByteArrayBuffer(ratingsxmlString);
+		exchange.setRequestContent(requestContent);
+
+		BookStoreUtility.SendAndRecv(this.client, exchange);
 	}
 
-	@Override
+	@SuppressWarnings("unchecked")
 	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
-		// TODO Auto-generated method stub
-		throw new BookStoreException("Not implemented");
+		ContentExchange exchange = new ContentExchange();
+		String urlEncodedNumBooks = null;
+
+		try {
+			urlEncodedNumBooks = URLEncoder.encode(Integer.toString(numBooks),
+					"UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new BookStoreException("unsupported encoding of numbooks", ex);
+		}
+
+		String urlString = serverAddress + "/"
+				+ BookStoreMessageTag.TOPRATEDBOOKS + "?"
+				+ BookStoreConstants.BOOK_NUM_PARAM + "=" + urlEncodedNumBooks;
+
+		exchange.setURL(urlString);
+
+		return (List<Book>) BookStoreUtility.SendAndRecv(this.client, exchange);
 	}
 
 }
@@ -16,6 +16,7 @@ import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreUtility;
@@ -100,6 +101,23 @@ public class StockManagerHTTPProxy implements StockManager {
 		BookStoreUtility.SendAndRecv(this.client, exchange);
 	}
 
+	public void addCopies(int[] isbns, int[] numCopies)
+			throws BookStoreException {
+		ContentExchange exchange = new ContentExchange();
+
+		String urlString;
+		urlString = serverAddress + "/" + BookStoreMessageTag.BULKADDCOPIES;
+
+		String copiesxmlString = BookStoreUtility
+				.serializeObjectToXMLString(new int[][] { isbns, numCopies });
+		exchange.setMethod("POST");
+		exchange.setURL(urlString);
+		Buffer requestContent = new ByteArrayBuffer(copiesxmlString);
+		exchange.setRequestContent(requestContent);
+
+		BookStoreUtility.SendAndRecv(this.client, exchange);
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<StockBook> getBooks() throws BookStoreException {
 		ContentExchange exchange = new ContentExchange();
@@ -111,6 +129,21 @@ public class StockManagerHTTPProxy implements StockManager {
 				exchange);
 	}
 
+	@SuppressWarnings("unchecked")
+	public List<StockBook> getBooks(int afterISBN, int numBooks)
+			throws BookStoreException {
+		ContentExchange exchange = new ContentExchange();
+		String urlString = serverAddress + "/"
+				+ BookStoreMessageTag.LISTBOOKSPAGE + "?"
+				+ BookStoreConstants.AFTER_ISBN_PARAM + "=" + afterISBN + "&"
+				+ BookStoreConstants.BOOK_NUM_PARAM + "=" + numBooks;
+
+		exchange.setURL(urlString);
+
+		return (List<StockBook>) BookStoreUtility.SendAndRecv(this.client,
+				exchange);
+	}
+
 	public void updateEditorPicks(Set<BookEditorPick> editorPicksValues)
 			throws BookStoreException {
 		ContentExchange exchange = new ContentExchange();
@@ -130,9 +163,17 @@ public class StockManagerHTTPProxy implements StockManager {
 
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		ContentExchange exchange = new ContentExchange();
+		String urlString = serverAddress + "/"
+				+ BookStoreMessageTag.GETBOOKSINDEMAND;
+
+		exchange.setURL(urlString);
+
+		return (List<StockBook>) BookStoreUtility.SendAndRecv(this.client,
+				exchange);
 	}
 
 	public void removeAllBooks() throws BookStoreException {
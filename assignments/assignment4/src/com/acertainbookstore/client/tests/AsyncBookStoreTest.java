@@ -0,0 +1,176 @@
+package com.acertainbookstore.client.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.acertainbookstore.business.AsyncBookStoreAdapter;
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.client.AsyncBookStoreHTTPProxy;
+import com.acertainbookstore.client.AsyncStockManagerHTTPProxy;
+import com.acertainbookstore.interfaces.AsyncBookStore;
+import com.acertainbookstore.interfaces.AsyncStockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * Test class to test the AsyncBookStore and AsyncStockManager interfaces
+ *
+ */
+public class AsyncBookStoreTest {
+
+	private static final int TEST_ISBN = 3044560;
+	private static final int NUM_COPIES = 500;
+	private static boolean localTest = true;
+	private static ExecutorService executor;
+	private static AsyncStockManager storeManager;
+	private static AsyncBookStore client;
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		try {
+			String localTestProperty = System
+					.getProperty(BookStoreConstants.PROPERTY_KEY_LOCAL_TEST);
+			localTest = (localTestProperty != null) ? Boolean
+					.parseBoolean(localTestProperty) : localTest;
+			if (localTest) {
+				CertainBookStore store = new CertainBookStore();
+				executor = Executors.newFixedThreadPool(4);
+				AsyncBookStoreAdapter adapter = new AsyncBookStoreAdapter(
+						store, store, executor);
+				storeManager = adapter;
+				client = adapter;
+			} else {
+				storeManager = new AsyncStockManagerHTTPProxy(
+						"http://localhost:8081/stock");
+				client = new AsyncBookStoreHTTPProxy("http://localhost:8081");
+			}
+			storeManager.removeAllBooks().get();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method to add a book, executed before every test case is run
+	 */
+	@Before
+	public void initializeBooks() throws Exception {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN,
+				"Harry Potter and JUnit", "JK Unit", (float) 10, NUM_COPIES,
+				0, 0, 0, false));
+		storeManager.addBooks(booksToAdd).get();
+	}
+
+	/**
+	 * Method to clean up the book store, execute after every test case is run
+	 */
+	@After
+	public void cleanupBooks() throws Exception {
+		storeManager.removeAllBooks().get();
+	}
+
+	/**
+	 * Tests that many purchases can be in flight at once and all of them are
+	 * applied
+	 */
+	@Test
+	public void testManyBuysInFlight() throws Exception {
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN, 1));
+
+		CompletableFuture<?>[] buys = new CompletableFuture<?>[NUM_COPIES];
+		for (int i = 0; i < NUM_COPIES; i++) {
+			buys[i] = client.buyBooks(booksToBuy);
+		}
+		CompletableFuture.allOf(buys).get();
+
+		Set<Integer> isbnSet = new HashSet<Integer>();
+		isbnSet.add(TEST_ISBN);
+		List<StockBook> listBooks = storeManager.getBooksByISBN(isbnSet).get();
+		assertEquals(0, listBooks.get(0).getNumCopies());
+
+		List<Book> books = client.getBooks(isbnSet).get();
+		assertEquals(1, books.size());
+		assertEquals(TEST_ISBN, books.get(0).getISBN());
+	}
+
+	/**
+	 * Tests that a failed call completes its future with the
+	 * BookStoreException of the call
+	 */
+	@Test
+	public void testFailedBuyCompletesExceptionally() throws Exception {
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN, NUM_COPIES + 1));
+
+		try {
+			client.buyBooks(booksToBuy).get();
+			fail();
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof BookStoreException);
+		}
+
+		List<StockBook> listBooks = storeManager.getBooks().get();
+		assertEquals(NUM_COPIES, listBooks.get(0).getNumCopies());
+		assertEquals(1, storeManager.getBooksInDemand().get().size());
+	}
+
+	/**
+	 * Tests that ratings are applied and the books come back top rated
+	 * first
+	 */
+	@Test
+	public void testRateBooks() throws Exception {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"Harry Potter and Async", "JK Unit", (float) 10, NUM_COPIES,
+				0, 0, 0, false));
+		storeManager.addBooks(booksToAdd).get();
+
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN, 2));
+		booksToRate.add(new BookRating(TEST_ISBN + 1, 5));
+		client.rateBooks(booksToRate).get();
+
+		List<Book> topRated = client.getTopRatedBooks(2).get();
+		assertEquals(2, topRated.size());
+		assertEquals(TEST_ISBN + 1, topRated.get(0).getISBN());
+		assertEquals(TEST_ISBN, topRated.get(1).getISBN());
+
+		Set<Integer> isbnSet = new HashSet<Integer>();
+		isbnSet.add(TEST_ISBN);
+		StockBook book = storeManager.getBooksByISBN(isbnSet).get().get(0);
+		assertEquals(1, book.getTimesRated());
+		assertEquals(2, book.getTotalRating());
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		storeManager.removeAllBooks().get();
+		if (localTest) {
+			executor.shutdown();
+		} else {
+			((AsyncBookStoreHTTPProxy) client).stop();
+			((AsyncStockManagerHTTPProxy) storeManager).stop();
+		}
+	}
+}
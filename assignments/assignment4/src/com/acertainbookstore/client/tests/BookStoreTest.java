@@ -16,6 +16,7 @@ import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.ShardedCertainBookStore;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
@@ -44,9 +45,15 @@ public class BookStoreTest {
 			localTest = (localTestProperty != null) ? Boolean
 					.parseBoolean(localTestProperty) : localTest;
 			if (localTest) {
-				CertainBookStore store = new CertainBookStore();
-				storeManager = store;
-				client = store;
+				if (Integer.getInteger(BookStoreConstants.PROPERTY_KEY_SHARDS, 0) > 0) {
+					ShardedCertainBookStore store = new ShardedCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else {
+					CertainBookStore store = new CertainBookStore();
+					storeManager = store;
+					client = store;
+				}
 			} else {
 				storeManager = new StockManagerHTTPProxy(
 						"http://localhost:8081/stock");
@@ -314,6 +321,75 @@ public class BookStoreTest {
 
 	}
 
+	/**
+	 * Tests buying with the array overload, where a book may be listed more
+	 * than once
+	 */
+	@Test
+	public void testBuyBooksArrays() throws BookStoreException {
+		client.buyBooks(new int[] { TEST_ISBN, TEST_ISBN }, new int[] { 2,
+				NUM_COPIES - 2 });
+
+		List<StockBook> listBooks = storeManager.getBooks();
+		assertTrue(listBooks.size() == 1);
+		assertEquals(0, listBooks.get(0).getNumCopies());
+	}
+
+	/**
+	 * Tests that a book listed more than once is not sold more often than it
+	 * is in stock, and that nothing is bought then
+	 */
+	@Test
+	public void testBuyBooksArraysTooMany() throws BookStoreException {
+		try {
+			client.buyBooks(new int[] { TEST_ISBN, TEST_ISBN }, new int[] {
+					NUM_COPIES, 1 });
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> listBooks = storeManager.getBooks();
+		assertTrue(listBooks.size() == 1);
+		assertEquals(NUM_COPIES, listBooks.get(0).getNumCopies());
+
+		// arrays of different lengths are rejected
+		try {
+			client.buyBooks(new int[] { TEST_ISBN }, new int[] { 1, 1 });
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+		assertEquals(NUM_COPIES, storeManager.getBooks().get(0)
+				.getNumCopies());
+	}
+
+	/**
+	 * Tests that the books of the array overload come in the order of the
+	 * ISBNs
+	 */
+	@Test
+	public void testGetBooksArray() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"The Art of Computer Programming", "Donald Knuth", (float) 300,
+				NUM_COPIES, 0, 0, 0, false));
+		storeManager.addBooks(booksToAdd);
+
+		List<Book> books = client.getBooks(new int[] { TEST_ISBN + 1,
+				TEST_ISBN });
+		assertEquals(2, books.size());
+		assertEquals(TEST_ISBN + 1, books.get(0).getISBN());
+		assertEquals(TEST_ISBN, books.get(1).getISBN());
+
+		try {
+			client.getBooks(new int[] { TEST_ISBN, -1 });
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+	}
+
 	@AfterClass
 	public static void tearDownAfterClass() throws BookStoreException {
 		storeManager.removeAllBooks();
@@ -18,6 +18,7 @@ import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.ShardedCertainBookStore;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
@@ -52,9 +53,15 @@ public class StockManagerTest {
 			localTest = (localTestProperty != null) ? Boolean
 					.parseBoolean(localTestProperty) : localTest;
 			if (localTest) {
-				CertainBookStore store = new CertainBookStore();
-				storeManager = store;
-				client = store;
+				if (Integer.getInteger(BookStoreConstants.PROPERTY_KEY_SHARDS, 0) > 0) {
+					ShardedCertainBookStore store = new ShardedCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else {
+					CertainBookStore store = new CertainBookStore();
+					storeManager = store;
+					client = store;
+				}
 			} else {
 				storeManager = new StockManagerHTTPProxy(
 						"http://localhost:8081/stock");
@@ -197,6 +204,36 @@ public class StockManagerTest {
 
 	}
 
+	/**
+	 * Checks whether a set of books holding two books with the same ISBN is
+	 * rejected, instead of adding the book twice
+	 */
+	@Test
+	public void testAddBookDuplicateISBN() throws BookStoreException {
+		List<StockBook> booksInStorePreTest = storeManager.getBooks();
+
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"Harry Potter and Vivek", "JUnit Rowling", (float) 100, 5, 0,
+				0, 0, false)); // valid
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"Harry Potter and Marcos", "JUnit Rowling", (float) 100, 5, 0,
+				0, 0, false)); // same isbn
+		assertEquals(2, booksToAdd.size());
+
+		try {
+			storeManager.addBooks(booksToAdd);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInStorePostTest = storeManager.getBooks();
+		// Check pre and post state are same
+		assertTrue(booksInStorePreTest.containsAll(booksInStorePostTest)
+				&& booksInStorePreTest.size() == booksInStorePostTest.size());
+	}
+
 	/**
 	 * Tests adding copies of a book with correct parameters
 	 */
@@ -310,6 +347,36 @@ public class StockManagerTest {
 
 	}
 
+	/**
+	 * Tests adding copies with the array overload
+	 */
+	@Test
+	public void testAddCopiesArrays() throws BookStoreException {
+		storeManager.addCopies(new int[] { TEST_ISBN, TEST_ISBN }, new int[] {
+				1, 2 });
+
+		Set<Integer> testISBNList = new HashSet<Integer>();
+		testISBNList.add(TEST_ISBN);
+		List<StockBook> listBooks = storeManager.getBooksByISBN(testISBNList);
+		assertEquals(NUM_COPIES + 3, listBooks.get(0).getNumCopies());
+
+		try {
+			storeManager.addCopies(new int[] { TEST_ISBN, TEST_ISBN + 1 },
+					new int[] { 1, 1 });
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+		try {
+			storeManager.addCopies(new int[] { TEST_ISBN }, null);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+		listBooks = storeManager.getBooksByISBN(testISBNList);
+		assertEquals(NUM_COPIES + 3, listBooks.get(0).getNumCopies());
+	}
+
 	/**
 	 * Helper method to make an Editor's pick
 	 */
@@ -438,6 +505,58 @@ public class StockManagerTest {
 		assertTrue(booksInStoreList.size() == 0);
 	}
 
+	/**
+	 * Tests that listing the catalog a page at a time returns every book once,
+	 * in ISBN order
+	 */
+	@Test
+	public void testGetBooksPaginated() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		for (int i = 1; i <= 10; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN - i, "Book " + i,
+					"Author " + i, (float) 10, NUM_COPIES, 0, 0, 0, false));
+		}
+		storeManager.addBooks(booksToAdd);
+
+		List<StockBook> listBooks = new ArrayList<StockBook>();
+		int afterISBN = 0;
+		List<StockBook> page;
+		do {
+			page = storeManager.getBooks(afterISBN, 3);
+			assertTrue(page.size() <= 3);
+			listBooks.addAll(page);
+			if (!page.isEmpty()) {
+				afterISBN = page.get(page.size() - 1).getISBN();
+			}
+		} while (page.size() == 3);
+
+		assertEquals(11, listBooks.size());
+		for (int i = 0; i < listBooks.size(); i++) {
+			assertEquals(TEST_ISBN - 10 + i, listBooks.get(i).getISBN());
+		}
+		assertTrue(storeManager.getBooks(TEST_ISBN, 3).isEmpty());
+	}
+
+	/**
+	 * Tests that a page size out of range is rejected
+	 */
+	@Test
+	public void testGetBooksInvalidPageSize() throws BookStoreException {
+		try {
+			storeManager.getBooks(0, 0);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		try {
+			storeManager.getBooks(0, BookStoreConstants.MAX_PAGE_SIZE + 1);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+	}
+
 	@AfterClass
 	public static void tearDownAfterClass() throws BookStoreException {
 		storeManager.removeAllBooks();
@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ *
+ * BookSetBenchmark reports the time per book of the operations on a set of
+ * books of the CertainBookStore, i.e. the cost of looking the books up and
+ * applying the operation to them, for sets of SET_SIZE random books out of a
+ * catalog of NUM_BOOKS books. The sets are made up front, so only the store is
+ * measured.
+ *
+ */
+public class BookSetBenchmark {
+	private static final int NUM_BOOKS = 100000;
+	private static final int SET_SIZE = 10;
+	private static final int NUM_SETS = 1000;
+	private static final int ROUNDS = 200;
+
+	private static long sink;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		CertainBookStore store = new CertainBookStore();
+		Set<StockBook> books = new HashSet<StockBook>();
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn++) {
+			books.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author "
+					+ isbn, (float) 10, Integer.MAX_VALUE / 2, 0, 0, 0, false));
+		}
+		store.addBooks(books);
+
+		Random rand = new Random(42);
+		List<Set<Integer>> isbnSets = new ArrayList<Set<Integer>>();
+		List<Set<BookCopy>> copySets = new ArrayList<Set<BookCopy>>();
+		List<Set<BookEditorPick>> pickSets = new ArrayList<Set<BookEditorPick>>();
+		for (int i = 0; i < NUM_SETS; i++) {
+			Set<Integer> isbns = new HashSet<Integer>();
+			while (isbns.size() < SET_SIZE) {
+				isbns.add(1 + rand.nextInt(NUM_BOOKS));
+			}
+			Set<BookCopy> copies = new HashSet<BookCopy>();
+			Set<BookEditorPick> picks = new HashSet<BookEditorPick>();
+			for (int isbn : isbns) {
+				copies.add(new BookCopy(isbn, 1));
+				picks.add(new BookEditorPick(isbn, rand.nextBoolean()));
+			}
+			isbnSets.add(isbns);
+			copySets.add(copies);
+			pickSets.add(picks);
+		}
+
+		System.out.println("operation\tns/book");
+		for (int pass = 0; pass < 2; pass++) { // the first pass warms up
+			boolean print = pass == 1;
+			report(print, "addCopies", run(store, copySets, 0));
+			report(print, "buyBooks", run(store, copySets, 1));
+			report(print, "updateEditorPicks", run(store, pickSets, 2));
+			report(print, "getBooksByISBN", run(store, isbnSets, 3));
+			report(print, "getBooks", run(store, isbnSets, 4));
+		}
+		System.out.println("(ignore: " + sink + ")");
+	}
+
+	private static void report(boolean print, String operation, double nanos) {
+		if (print) {
+			System.out.printf("%s\t%.1f%n", operation, nanos);
+		}
+	}
+
+	/**
+	 * Runs the operation on every set ROUNDS times and returns the time per
+	 * book.
+	 */
+	@SuppressWarnings("unchecked")
+	private static double run(CertainBookStore store, List<?> sets,
+			int operation) throws BookStoreException {
+		long start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			for (Object set : sets) {
+				switch (operation) {
+				case 0:
+					store.addCopies((Set<BookCopy>) set);
+					break;
+				case 1:
+					store.buyBooks((Set<BookCopy>) set);
+					break;
+				case 2:
+					store.updateEditorPicks((Set<BookEditorPick>) set);
+					break;
+				case 3:
+					sink += store.getBooksByISBN((Set<Integer>) set).size();
+					break;
+				default:
+					sink += store.getBooks((Set<Integer>) set).size();
+				}
+			}
+		}
+		return (double) (System.nanoTime() - start) / ROUNDS / sets.size()
+				/ SET_SIZE;
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.acertainbookstore.utils.IntIntHashMap;
+
+/**
+ *
+ * CatalogIndexBenchmark compares the catalog index of the BookInventory, an
+ * IntIntHashMap from ISBNs to dense slots of a column of books, with the
+ * HashMap it replaced, for inserting ISBNs, looking them up and iterating
+ * over the books. Each measurement is
+ * repeated after a warmup and the average time per operation is reported.
+ *
+ */
+public class CatalogIndexBenchmark {
+	private static final int NUM_BOOKS = 1000000;
+	private static final int NUM_LOOKUPS = 10000000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	private static int[] isbns;
+	private static int[] lookups;
+	private static Object book = new Object();
+	private static long sink;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Random rand = new Random(42);
+		isbns = new int[NUM_BOOKS];
+		for (int i = 0; i < NUM_BOOKS; i++) {
+			isbns[i] = 1 + rand.nextInt(Integer.MAX_VALUE - 1);
+		}
+		lookups = new int[NUM_LOOKUPS];
+		for (int i = 0; i < NUM_LOOKUPS; i++) {
+			lookups[i] = isbns[rand.nextInt(NUM_BOOKS)];
+		}
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			runHashMap();
+			runSlotIndex();
+		}
+
+		long[] hashMap = new long[3];
+		long[] intMap = new long[3];
+		for (int i = 0; i < ROUNDS; i++) {
+			add(hashMap, runHashMap());
+			add(intMap, runSlotIndex());
+		}
+
+		System.out.println("ns/op\t\tHashMap\tIntIntHashMap");
+		report("insert", hashMap[0], intMap[0], NUM_BOOKS);
+		report("lookup", hashMap[1], intMap[1], NUM_LOOKUPS);
+		report("iterate", hashMap[2], intMap[2], NUM_BOOKS);
+		System.out.println("(ignore: " + sink + ")");
+	}
+
+	private static long[] runHashMap() {
+		long[] times = new long[3];
+		long start = System.nanoTime();
+		Map<Integer, Object> map = new HashMap<Integer, Object>();
+		for (int isbn : isbns) {
+			map.put(isbn, book);
+		}
+		times[0] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int isbn : lookups) {
+			if (map.get(isbn) != null) {
+				sink++;
+			}
+		}
+		times[1] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (Object value : map.values()) {
+			sink += value.hashCode();
+		}
+		times[2] = System.nanoTime() - start;
+		return times;
+	}
+
+	private static long[] runSlotIndex() {
+		long[] times = new long[3];
+		long start = System.nanoTime();
+		IntIntHashMap index = new IntIntHashMap();
+		Object[] books = new Object[16];
+		int size = 0;
+		for (int isbn : isbns) {
+			if (index.get(isbn) == IntIntHashMap.NO_VALUE) {
+				if (size == books.length) {
+					books = Arrays.copyOf(books, size * 2);
+				}
+				index.put(isbn, size);
+				books[size++] = book;
+			}
+		}
+		times[0] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int isbn : lookups) {
+			int slot = index.get(isbn);
+			if (slot != IntIntHashMap.NO_VALUE && books[slot] != null) {
+				sink++;
+			}
+		}
+		times[1] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int slot = 0; slot < size; slot++) {
+			sink += books[slot].hashCode();
+		}
+		times[2] = System.nanoTime() - start;
+		return times;
+	}
+
+	private static void add(long[] total, long[] times) {
+		for (int i = 0; i < total.length; i++) {
+			total[i] += times[i];
+		}
+	}
+
+	private static void report(String operation, long hashMapTime,
+			long intMapTime, int numOps) {
+		double ops = (double) numOps * ROUNDS;
+		System.out.printf("%s\t\t%.1f\t%.1f%n", operation, hashMapTime / ops,
+				intMapTime / ops);
+	}
+}
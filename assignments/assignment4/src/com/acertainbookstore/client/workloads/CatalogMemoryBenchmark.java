@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ *
+ * CatalogMemoryBenchmark fills a CertainBookStore with a large catalog of
+ * distinct titles, written by BOOKS_PER_AUTHOR books per author, and reports
+ * the heap used per book and the bytes allocated per book read when the
+ * catalog is listed a page at a time.
+ *
+ * Every book gets its own title and author strings, as if it had just been
+ * deserialized from a request. The number of books may be given as the first
+ * argument; the default of 5M books needs a heap of about 2GB.
+ *
+ */
+public class CatalogMemoryBenchmark {
+	private static final int NUM_BOOKS = 5000000;
+	private static final int BOOKS_PER_AUTHOR = 10;
+	private static final int BATCH_SIZE = 10000;
+	private static final int ROUNDS = 3;
+
+	private static long sink;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		int numBooks = args.length > 0 ? Integer.parseInt(args[0]) : NUM_BOOKS;
+
+		long before = usedHeap();
+		CertainBookStore store = new CertainBookStore();
+		fill(store, numBooks);
+		long after = usedHeap();
+
+		listAll(store); // warm up
+		long allocated = allocatedBytes();
+		for (int i = 0; i < ROUNDS; i++) {
+			listAll(store);
+		}
+		double readBytes = (double) (allocatedBytes() - allocated) / ROUNDS
+				/ numBooks;
+
+		System.out.println("books\theap bytes/book\tbytes allocated/book read");
+		System.out.printf("%d\t%d\t\t%.1f%n", numBooks, (after - before)
+				/ numBooks, readBytes);
+		System.out.println("(ignore: " + sink + ")");
+	}
+
+	private static void fill(CertainBookStore store, int numBooks)
+			throws BookStoreException {
+		for (int isbn = 1; isbn <= numBooks; isbn += BATCH_SIZE) {
+			Set<StockBook> books = new HashSet<StockBook>();
+			for (int i = isbn; i < isbn + BATCH_SIZE && i <= numBooks; i++) {
+				books.add(new ImmutableStockBook(i, "The Collected Works, Vol. "
+						+ i, "Author Number " + (i / BOOKS_PER_AUTHOR),
+						(float) 10, 5, 0, 0, 0, false));
+			}
+			store.addBooks(books);
+		}
+	}
+
+	private static void listAll(CertainBookStore store)
+			throws BookStoreException {
+		int afterISBN = 0;
+		List<StockBook> page;
+		do {
+			page = store.getBooks(afterISBN, BookStoreConstants.MAX_PAGE_SIZE);
+			if (!page.isEmpty()) {
+				afterISBN = page.get(page.size() - 1).getISBN();
+				sink += page.size();
+			}
+		} while (page.size() == BookStoreConstants.MAX_PAGE_SIZE);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@SuppressWarnings("restriction")
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean()).getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+}
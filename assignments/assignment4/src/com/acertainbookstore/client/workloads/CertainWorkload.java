@@ -17,6 +17,7 @@ import java.util.concurrent.ThreadLocalRandom;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ShardedCertainBookStore;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
 import com.acertainbookstore.interfaces.BookStore;
@@ -56,9 +57,15 @@ public class CertainWorkload {
         BookSetGenerator bookSetGenerator = null;
 		if (localTest) {
             bookSetGenerator = new BookSetGenerator();
-			CertainBookStore store = new CertainBookStore();
-			bookStore = store;
-			stockManager = store;
+			if (Integer.getInteger(BookStoreConstants.PROPERTY_KEY_SHARDS, 0) > 0) {
+				ShardedCertainBookStore store = new ShardedCertainBookStore();
+				bookStore = store;
+				stockManager = store;
+			} else {
+				CertainBookStore store = new CertainBookStore();
+				bookStore = store;
+				stockManager = store;
+			}
 		} else {
             bookSetGenerator = new BookSetGenerator();
 			stockManager = new StockManagerHTTPProxy(serverAddress + "/stock");
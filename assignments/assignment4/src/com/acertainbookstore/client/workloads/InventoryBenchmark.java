@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.DirectInventoryColumns;
+import com.acertainbookstore.business.HeapInventoryColumns;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.InventoryColumns;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ *
+ * InventoryBenchmark fills a CertainBookStore with a large catalog, once with
+ * the counters on the heap and once off the heap, and reports the heap used
+ * per book and the time of getEditorPicks.
+ *
+ */
+public class InventoryBenchmark {
+	private static final int NUM_BOOKS = 1000000;
+	private static final int BATCH_SIZE = 10000;
+	private static final int EDITOR_PICK_EVERY = 100;
+	private static final int ROUNDS = 20;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		System.out.println("columns\theap bytes/book\tgetEditorPicks (ms)");
+		run(false);
+		run(true);
+	}
+
+	private static void run(boolean offHeap) throws BookStoreException {
+		long before = usedHeap();
+		InventoryColumns columns = offHeap ? new DirectInventoryColumns(
+				NUM_BOOKS) : new HeapInventoryColumns(NUM_BOOKS);
+		CertainBookStore store = new CertainBookStore(columns);
+		fill(store);
+		long after = usedHeap();
+
+		// warm up, then measure
+		for (int i = 0; i < ROUNDS; i++) {
+			store.getEditorPicks(10);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			store.getEditorPicks(10);
+		}
+		double scanMillis = (System.nanoTime() - start) / 1e6 / ROUNDS;
+
+		System.out.printf("%s\t%d\t\t%.2f%n", offHeap ? "direct" : "heap", (after - before)
+				/ NUM_BOOKS, scanMillis);
+		store.removeAllBooks();
+	}
+
+	private static void fill(CertainBookStore store) throws BookStoreException {
+		for (int isbn = 1; isbn <= NUM_BOOKS; isbn += BATCH_SIZE) {
+			Set<StockBook> books = new HashSet<StockBook>();
+			Set<BookEditorPick> picks = new HashSet<BookEditorPick>();
+			for (int i = isbn; i < isbn + BATCH_SIZE; i++) {
+				books.add(new ImmutableStockBook(i, "T", "A", (float) 10, 5, 0,
+						0, 0, false));
+				if (i % EDITOR_PICK_EVERY == 0) {
+					picks.add(new BookEditorPick(i, true));
+				}
+			}
+			store.addBooks(books);
+			store.updateEditorPicks(picks);
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.ImmutableBook;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+
+/**
+ *
+ * XStreamBenchmark reports the time to encode and decode the request and the
+ * response of each message, with a new XStream per call as BookStoreUtility
+ * used to do, and with its shared XStream. The messages are on the scale of
+ * an order of the workload, i.e. NUM_BOOKS books.
+ *
+ */
+public class XStreamBenchmark {
+	private static final int NUM_BOOKS = 10;
+	private static final int ROUNDS = 2000;
+	private static final int FRESH_ROUNDS = 200; // building XStreams is slow
+
+	private static long sink;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		System.out.println("message\tnew XStream ns\tshared XStream ns");
+		for (int pass = 0; pass < 2; pass++) { // the first pass warms up
+			for (BookStoreMessageTag tag : BookStoreMessageTag.values()) {
+				Object request = request(tag);
+				BookStoreResponse response = response(tag);
+				double fresh = run(request, response, FRESH_ROUNDS, true);
+				double shared = run(request, response, ROUNDS, false);
+				if (pass == 1) {
+					System.out.printf("%s\t%.0f\t%.0f%n", tag, fresh, shared);
+				}
+			}
+		}
+		System.out.println("(ignore: " + sink + ")");
+	}
+
+	/**
+	 * Returns the content of a request with the tag, or null if it has none.
+	 */
+	private static Object request(BookStoreMessageTag tag) {
+		Set<Integer> isbns = new HashSet<Integer>();
+		Set<BookCopy> copies = new HashSet<BookCopy>();
+		Set<BookEditorPick> picks = new HashSet<BookEditorPick>();
+		Set<StockBook> books = new HashSet<StockBook>();
+		int[] isbnArray = new int[NUM_BOOKS];
+		int[] copiesArray = new int[NUM_BOOKS];
+		for (int i = 0; i < NUM_BOOKS; i++) {
+			isbns.add(i + 1);
+			copies.add(new BookCopy(i + 1, 1));
+			picks.add(new BookEditorPick(i + 1, true));
+			books.add(stockBook(i + 1));
+			isbnArray[i] = i + 1;
+			copiesArray[i] = 1;
+		}
+
+		switch (tag) {
+		case ADDBOOKS:
+			return books;
+		case ADDCOPIES:
+		case BUYBOOKS:
+			return copies;
+		case UPDATEEDITORPICKS:
+			return picks;
+		case GETBOOKS:
+		case REMOVEBOOKS:
+		case GETSTOCKBOOKSBYISBN:
+			return isbns;
+		case BULKADDCOPIES:
+		case BULKBUYBOOKS:
+			return new int[][] { isbnArray, copiesArray };
+		case BULKGETBOOKS:
+			return isbnArray;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a response to a request with the tag.
+	 */
+	private static BookStoreResponse response(BookStoreMessageTag tag) {
+		BookStoreResponse response = new BookStoreResponse();
+		switch (tag) {
+		case LISTBOOKS:
+		case LISTBOOKSPAGE:
+		case GETSTOCKBOOKSBYISBN:
+		case GETBOOKSINDEMAND:
+			List<StockBook> stockBooks = new ArrayList<StockBook>();
+			for (int i = 0; i < NUM_BOOKS; i++) {
+				stockBooks.add(stockBook(i + 1));
+			}
+			response.setList(stockBooks);
+			break;
+		case GETBOOKS:
+		case EDITORPICKS:
+		case BULKGETBOOKS:
+			List<Book> books = new ArrayList<Book>();
+			for (int i = 0; i < NUM_BOOKS; i++) {
+				books.add(new ImmutableBook(i + 1, "Title " + i, "Author " + i,
+						(float) 10));
+			}
+			response.setList(books);
+			break;
+		case BUYBOOKS:
+		case BULKBUYBOOKS:
+			// a purchase that failed
+			response.setException(new BookStoreException("Book not available"));
+			break;
+		default:
+			break;
+		}
+		return response;
+	}
+
+	private static StockBook stockBook(int isbn) {
+		return new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn,
+				(float) 10, 5, 0, 0, 0, false);
+	}
+
+	/**
+	 * Encodes and decodes the request and the response rounds times and
+	 * returns the time per message.
+	 */
+	private static double run(Object request, BookStoreResponse response,
+			int rounds, boolean fresh) {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			if (request != null) {
+				sink += decode(encode(request, fresh), fresh) == null ? 0 : 1;
+			}
+			sink += decode(encode(response, fresh), fresh) == null ? 0 : 1;
+		}
+		return (double) (System.nanoTime() - start) / rounds;
+	}
+
+	private static String encode(Object object, boolean fresh) {
+		return fresh ? new XStream(new StaxDriver()).toXML(object)
+				: BookStoreUtility.serializeObjectToXMLString(object);
+	}
+
+	private static Object decode(String xml, boolean fresh) {
+		return fresh ? new XStream(new StaxDriver()).fromXML(xml)
+				: BookStoreUtility.deserializeXMLStringToObject(xml);
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * 
+ */
+package com.acertainbookstore.interfaces;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+
+/**
+ * AsyncBookStore declares the methods of the BookStore without blocking the
+ * caller. Each method returns at once with a future, which is completed with
+ * the result of the call, or completed exceptionally with the
+ * BookStoreException it would have thrown.
+ * 
+ */
+public interface AsyncBookStore {
+
+	/**
+	 * Buy the sets of books specified.
+	 * 
+	 * @param booksToBuy
+	 * @return
+	 */
+	public CompletableFuture<Void> buyBooks(Set<BookCopy> booksToBuy);
+
+	/**
+	 * Applies the BookRatings in the set, i.e. rates each book with their
+	 * respective rating.
+	 * 
+	 * @param bookRating
+	 * @return
+	 */
+	public CompletableFuture<Void> rateBooks(Set<BookRating> bookRating);
+
+	/**
+	 * Returns the list of books corresponding to the set of ISBNs
+	 * 
+	 * @param ISBNList
+	 * @return
+	 */
+	public CompletableFuture<List<Book>> getBooks(Set<Integer> ISBNList);
+
+	/**
+	 * Return a list of top rated numBooks books.
+	 * 
+	 * @param numBooks
+	 * @return
+	 */
+	public CompletableFuture<List<Book>> getTopRatedBooks(int numBooks);
+
+	/**
+	 * Returns the list of books containing numBooks editor picks
+	 * 
+	 * @param numBooks
+	 * @return
+	 */
+	public CompletableFuture<List<Book>> getEditorPicks(int numBooks);
+}
@@ -0,0 +1,93 @@
+/**
+ * 
+ */
+package com.acertainbookstore.interfaces;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.StockBook;
+
+/**
+ * AsyncStockManager declares the methods of the StockManager without blocking
+ * the caller, cf. AsyncBookStore.
+ * 
+ */
+public interface AsyncStockManager {
+
+	/**
+	 * Adds the books in bookSet to the stock.
+	 * 
+	 * @param bookSet
+	 * @return
+	 */
+	public CompletableFuture<Void> addBooks(Set<StockBook> bookSet);
+
+	/**
+	 * Add copies of the existing book to the bookstore.
+	 * 
+	 * @param bookCopiesSet
+	 * @return
+	 */
+	public CompletableFuture<Void> addCopies(Set<BookCopy> bookCopiesSet);
+
+	/**
+	 * Returns the list of books in the bookstore
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<List<StockBook>> getBooks();
+
+	/**
+	 * Returns a page of the books in the bookstore, cf.
+	 * StockManager.getBooks(int, int)
+	 * 
+	 * @param afterISBN
+	 * @param numBooks
+	 * @return
+	 */
+	public CompletableFuture<List<StockBook>> getBooks(int afterISBN,
+			int numBooks);
+
+	/**
+	 * Returns the books matching the set of ISBNs given
+	 * 
+	 * @param isbns
+	 * @return
+	 */
+	public CompletableFuture<List<StockBook>> getBooksByISBN(Set<Integer> isbns);
+
+	/**
+	 * Returns the list of books which has sale miss
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<List<StockBook>> getBooksInDemand();
+
+	/**
+	 * Books are marked/unmarked as an editor pick
+	 * 
+	 * @param editorPicks
+	 * @return
+	 */
+	public CompletableFuture<Void> updateEditorPicks(
+			Set<BookEditorPick> editorPicks);
+
+	/**
+	 * Clean up the bookstore - remove all the books and the associated data
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<Void> removeAllBooks();
+
+	/**
+	 * Clean up the bookstore selectively for the list of isbns provided
+	 * 
+	 * @param isbnSet
+	 * @return
+	 */
+	public CompletableFuture<Void> removeBooks(Set<Integer> isbnSet);
+}
@@ -25,6 +25,17 @@ public interface BookStore {
 	 */
 	public void buyBooks(Set<BookCopy> booksToBuy) throws BookStoreException;
 
+	/**
+	 * Buy numCopies[i] copies of the book isbns[i], for each i. A book may be
+	 * listed more than once.
+	 * 
+	 * @param isbns
+	 * @param numCopies
+	 * @throws BookStoreException
+	 */
+	public void buyBooks(int[] isbns, int[] numCopies)
+			throws BookStoreException;
+
 	/**
 	 * Applies the BookRatings in the set, i.e. rates each book with their
 	 * respective rating.
@@ -46,6 +57,15 @@ public interface BookStore {
 	public List<Book> getBooks(Set<Integer> ISBNList)
 			throws BookStoreException;
 
+	/**
+	 * Returns the list of books corresponding to the ISBNs, in the same order
+	 * 
+	 * @param isbns
+	 * @return
+	 * @throws BookStoreException
+	 */
+	public List<Book> getBooks(int[] isbns) throws BookStoreException;
+
 	/**
 	 * Return a list of top rated numBooks
 	 * books.
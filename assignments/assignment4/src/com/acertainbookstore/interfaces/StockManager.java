@@ -34,6 +34,17 @@ public interface StockManager {
 	public void addCopies(Set<BookCopy> bookCopiesSet)
 			throws BookStoreException;
 
+	/**
+	 * Add numCopies[i] copies of the existing book isbns[i] to the bookstore,
+	 * for each i.
+	 * 
+	 * @param isbns
+	 * @param numCopies
+	 * @throws BookStoreException
+	 */
+	public void addCopies(int[] isbns, int[] numCopies)
+			throws BookStoreException;
+
 	/**
 	 * Returns the list of books in the bookstore
 	 * 
@@ -42,6 +53,22 @@ public interface StockManager {
 	 */
 	public List<StockBook> getBooks() throws BookStoreException;
 
+	/**
+	 * Returns a page of the books in the bookstore: at most numBooks books
+	 * with an ISBN greater than afterISBN, in ISBN order. The first page is
+	 * after ISBN 0 and each next page is after the ISBN of the last book of
+	 * the page before, so the whole catalog can be listed without holding it
+	 * all at once. A page with fewer than numBooks books is the last page.
+	 * 
+	 * @param afterISBN
+	 * @param numBooks
+	 *            at most BookStoreConstants.MAX_PAGE_SIZE
+	 * @return
+	 * @throws BookStoreException
+	 */
+	public List<StockBook> getBooks(int afterISBN, int numBooks)
+			throws BookStoreException;
+
 	/**
 	 * Returns the books matching the set of ISBNs given, is different to
 	 * getBooks in the BookStore interface because of the return type of the
@@ -16,8 +16,12 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ShardedCertainBookStore;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreMessageTag;
@@ -32,10 +36,17 @@ import com.acertainbookstore.utils.BookStoreUtility;
  * 
  */
 public class BookStoreHTTPMessageHandler extends AbstractHandler {
-	private CertainBookStore myBookStore = null;
+	private BookStore myBookStore = null;
+	private StockManager myStockManager = null;
 
 	public BookStoreHTTPMessageHandler(CertainBookStore bookStore) {
 		myBookStore = bookStore;
+		myStockManager = bookStore;
+	}
+
+	public BookStoreHTTPMessageHandler(ShardedCertainBookStore bookStore) {
+		myBookStore = bookStore;
+		myStockManager = bookStore;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -67,79 +78,110 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 		// the RequestURI before the switch
 		if (messageTag == null) {
 			System.out.println("Unknown message tag");
+		} else if (BookStoreUtility.isRequestTooLarge(request)) {
+			bookStoreResponse = new BookStoreResponse();
+			bookStoreResponse.setException(new BookStoreException(
+					BookStoreConstants.REQUEST_SIZE
+							+ request.getContentLength()
+							+ BookStoreConstants.INVALID));
+			response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			BookStoreUtility.encodeResponse(response, bookStoreResponse);
 		} else {
 			switch (messageTag) {
 			case REMOVEBOOKS:
-				String xml = BookStoreUtility
-						.extractPOSTDataFromRequest(request);
-
 				Set<Integer> bookSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
-					myBookStore.removeBooks(bookSet);
+					myStockManager.removeBooks(bookSet);
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				String listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case REMOVEALLBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				bookStoreResponse = new BookStoreResponse();
 				try {
-					myBookStore.removeAllBooks();
+					myStockManager.removeAllBooks();
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case ADDBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				Set<StockBook> newBooks = (Set<StockBook>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
-					myBookStore.addBooks(newBooks);
+					myStockManager.addBooks(newBooks);
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case ADDCOPIES:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
 				Set<BookCopy> listBookCopies = (Set<BookCopy>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 				bookStoreResponse = new BookStoreResponse();
 				try {
-					myBookStore.addCopies(listBookCopies);
+					myStockManager.addCopies(listBookCopies);
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
+				break;
+
+			case BULKADDCOPIES:
+				int[][] bookCopiesArrays = bulkArrays(BookStoreUtility
+						.decodeRequest(request));
+				bookStoreResponse = new BookStoreResponse();
+				try {
+					myStockManager.addCopies(bookCopiesArrays[0],
+							bookCopiesArrays[1]);
+				} catch (BookStoreException ex) {
+					bookStoreResponse.setException(ex);
+				}
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case LISTBOOKS:
 				bookStoreResponse = new BookStoreResponse();
-				bookStoreResponse.setList(myBookStore.getBooks());
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				try {
+					bookStoreResponse.setList(myStockManager.getBooks());
+				} catch (BookStoreException ex) {
+					bookStoreResponse.setException(ex);
+				}
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
+				break;
+
+			case LISTBOOKSPAGE:
+				bookStoreResponse = new BookStoreResponse();
+				try {
+					int afterISBN = BookStoreUtility.convertStringToInt(request
+							.getParameter(BookStoreConstants.AFTER_ISBN_PARAM));
+					numBooks = BookStoreUtility.convertStringToInt(request
+							.getParameter(BookStoreConstants.BOOK_NUM_PARAM));
+					bookStoreResponse.setList(myStockManager.getBooks(
+							afterISBN, numBooks));
+				} catch (BookStoreException ex) {
+					bookStoreResponse.setException(ex);
+				}
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
+				break;
+
+			case GETBOOKSINDEMAND:
+				bookStoreResponse = new BookStoreResponse();
+				try {
+					bookStoreResponse.setList(myStockManager.getBooksInDemand());
+				} catch (BookStoreException ex) {
+					bookStoreResponse.setException(ex);
+				}
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case UPDATEEDITORPICKS:
@@ -147,25 +189,19 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				bookStoreResponse = new BookStoreResponse();
 
 				try {
-					String xmlStringEditorPicksValues = BookStoreUtility
-							.extractPOSTDataFromRequest(request);
-
 					Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) BookStoreUtility
-							.deserializeXMLStringToObject(xmlStringEditorPicksValues);
+							.decodeRequest(request);
 
-					myBookStore.updateEditorPicks(mapEditorPicksValues);
+					myStockManager.updateEditorPicks(mapEditorPicksValues);
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case BUYBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) BookStoreUtility
-						.deserializeXMLStringToObject(new String(xml));
+						.decodeRequest(request);
 
 				// Make the purchase
 				bookStoreResponse = new BookStoreResponse();
@@ -174,15 +210,41 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
+				break;
+
+			case BULKBUYBOOKS:
+				int[][] bookCopiesToBuyArrays = bulkArrays(BookStoreUtility
+						.decodeRequest(request));
+
+				bookStoreResponse = new BookStoreResponse();
+				try {
+					myBookStore.buyBooks(bookCopiesToBuyArrays[0],
+							bookCopiesToBuyArrays[1]);
+				} catch (BookStoreException ex) {
+					bookStoreResponse.setException(ex);
+				}
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
+				break;
+
+			case BULKGETBOOKS:
+				Object isbnsObject = BookStoreUtility
+						.decodeRequest(request);
+				int[] isbns = isbnsObject instanceof int[] ? (int[]) isbnsObject
+						: null;
+
+				bookStoreResponse = new BookStoreResponse();
+				try {
+					bookStoreResponse.setList(myBookStore.getBooks(isbns));
+				} catch (BookStoreException ex) {
+					bookStoreResponse.setException(ex);
+				}
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case GETBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				Set<Integer> isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
@@ -190,9 +252,7 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case EDITORPICKS:
@@ -209,26 +269,51 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
+				break;
+
+			case RATEBOOKS:
+				Set<BookRating> bookRating = (Set<BookRating>) BookStoreUtility
+						.decodeRequest(request);
+
+				bookStoreResponse = new BookStoreResponse();
+				try {
+					myBookStore.rateBooks(bookRating);
+				} catch (BookStoreException ex) {
+					bookStoreResponse.setException(ex);
+				}
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
+				break;
+
+			case TOPRATEDBOOKS:
+				numBooksString = URLDecoder
+						.decode(request
+								.getParameter(BookStoreConstants.BOOK_NUM_PARAM),
+								"UTF-8");
+				bookStoreResponse = new BookStoreResponse();
+				try {
+					numBooks = BookStoreUtility
+							.convertStringToInt(numBooksString);
+					bookStoreResponse.setList(myBookStore
+							.getTopRatedBooks(numBooks));
+				} catch (BookStoreException ex) {
+					bookStoreResponse.setException(ex);
+				}
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 
 			case GETSTOCKBOOKSBYISBN:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
 				isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
+						.decodeRequest(request);
 
 				bookStoreResponse = new BookStoreResponse();
 				try {
-					bookStoreResponse.setList(myBookStore
+					bookStoreResponse.setList(myStockManager
 							.getBooksByISBN(isbnSet));
 				} catch (BookStoreException ex) {
 					bookStoreResponse.setException(ex);
 				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
+				BookStoreUtility.encodeResponse(response, bookStoreResponse);
 				break;
 				
 			default:
@@ -240,4 +325,18 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 		baseRequest.setHandled(true);
 
 	}
+
+	/**
+	 * Returns the ISBNs and the numbers of copies of a bulk request, or two
+	 * nulls if the request does not hold two arrays, which the store rejects.
+	 * 
+	 * @param object
+	 * @return
+	 */
+	private static int[][] bulkArrays(Object object) {
+		if (object instanceof int[][] && ((int[][]) object).length == 2) {
+			return (int[][]) object;
+		}
+		return new int[2][];
+	}
 }
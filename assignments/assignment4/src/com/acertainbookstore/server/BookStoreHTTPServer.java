@@ -4,6 +4,7 @@
 package com.acertainbookstore.server;
 
 import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ShardedCertainBookStore;
 import com.acertainbookstore.utils.BookStoreConstants;
 
 /**
@@ -15,10 +16,16 @@ public class BookStoreHTTPServer {
 	 * @param args
 	 */
 	public static void main(String[] args) {
-		CertainBookStore bookStore = new CertainBookStore();
 		int listen_on_port = 8081;
-		BookStoreHTTPMessageHandler handler = new BookStoreHTTPMessageHandler(
-				bookStore);
+		BookStoreHTTPMessageHandler handler;
+		int numShards = Integer.getInteger(
+				BookStoreConstants.PROPERTY_KEY_SHARDS, 0);
+		if (numShards > 0) {
+			handler = new BookStoreHTTPMessageHandler(
+					new ShardedCertainBookStore(numShards));
+		} else {
+			handler = new BookStoreHTTPMessageHandler(new CertainBookStore());
+		}
 		String server_port_string = System.getProperty(BookStoreConstants.PROPERTY_KEY_SERVER_PORT);
 		if(server_port_string != null) {
 			try {
@@ -13,11 +13,18 @@ public final class BookStoreConstants {
 	// Constants used when creating URLs	
 	public static final String BOOKISBN_PARAM = "ISBN";
 	public static final String BOOK_NUM_PARAM = "number_of_books";
+	public static final String AFTER_ISBN_PARAM = "after_isbn";
 	public static final String XMLSTRINGLEN_PARAM = "len";
 	
 	// Used as error code when converting numbers to integer
 	public static final int INVALID_PARAMS = -1;
 
+	// The most books listed on one page of the catalog
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	// The largest request a server reads by default, in bytes
+	public static final long DEFAULT_MAX_REQUEST_SIZE = 256L * 1024 * 1024;
+
 	// Constants used when creating exception messages
 	// When book has an invalid ISBN
 	public static final String INVALID = " is invalid";
@@ -29,8 +36,18 @@ public final class BookStoreConstants {
 	public static final String ISBN = "The ISBN: ";
 	public static final String NUM_COPIES = "The Number of copies: ";
 	public static final String RATING = "The rating: ";
+	public static final String ARRAY_LENGTHS = "The lengths of the arrays: ";
+	// When the arrays of a bulk operation have different lengths
+	public static final String MISMATCHED = " do not match";
 	public static final String NULL_INPUT = "null input parameters";
+	public static final String REQUEST_SIZE = "The size of the request: ";
+	public static final String PAGE_SIZE = "The page size: ";
 
 	public static final String PROPERTY_KEY_LOCAL_TEST = "localtest";
 	public static final String PROPERTY_KEY_SERVER_PORT = "port";
+	public static final String PROPERTY_KEY_OFF_HEAP_INVENTORY = "offheapinventory";
+	public static final String PROPERTY_KEY_COMBINED_WRITES = "combinedwrites";
+	public static final String PROPERTY_KEY_RESOLVE_CAPACITY = "resolvecapacity";
+	public static final String PROPERTY_KEY_SHARDS = "shards";
+	public static final String PROPERTY_KEY_MAX_REQUEST_SIZE = "maxrequestsize";
 }
@@ -8,5 +8,5 @@ package com.acertainbookstore.utils;
  * 
  */
 public enum BookStoreMessageTag {
-	ADDBOOKS, LISTBOOKS, ADDCOPIES, GETBOOKS, BUYBOOKS, UPDATEEDITORPICKS, EDITORPICKS, REMOVEALLBOOKS, REMOVEBOOKS, GETSTOCKBOOKSBYISBN;
+	ADDBOOKS, LISTBOOKS, LISTBOOKSPAGE, ADDCOPIES, GETBOOKS, BUYBOOKS, UPDATEEDITORPICKS, EDITORPICKS, REMOVEALLBOOKS, REMOVEBOOKS, GETSTOCKBOOKSBYISBN, GETBOOKSINDEMAND, BULKADDCOPIES, BULKGETBOOKS, BULKBUYBOOKS, RATEBOOKS, TOPRATEDBOOKS;
 }
@@ -0,0 +1,65 @@
+/**
+ * 
+ */
+package com.acertainbookstore.utils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jetty.client.ContentExchange;
+
+import com.acertainbookstore.client.BookStoreClientConstants;
+
+/**
+ * FutureExchange is an exchange which completes a future when it is done,
+ * instead of having a thread wait for it. The future is completed with the
+ * unpacked response, cf. BookStoreUtility.unpackResponse, or exceptionally
+ * with a BookStoreException if the exchange or the call failed.
+ * 
+ * The future is completed by the threads of the HttpClient, so anything
+ * chained to it without an executor runs on them and must not block.
+ * 
+ */
+public class FutureExchange extends ContentExchange {
+	private final CompletableFuture<List<?>> future = new CompletableFuture<List<?>>();
+
+	public CompletableFuture<List<?>> getFuture() {
+		return future;
+	}
+
+	@Override
+	protected void onResponseComplete() throws IOException {
+		super.onResponseComplete();
+		try {
+			future.complete(BookStoreUtility.unpackResponse(this));
+		} catch (BookStoreException ex) {
+			future.completeExceptionally(ex);
+		} catch (RuntimeException ex) {
+			future.completeExceptionally(new BookStoreException(
+					BookStoreClientConstants.strERR_CLIENT_RESPONSE_DECODING,
+					ex));
+		}
+	}
+
+	@Override
+	protected void onConnectionFailed(Throwable x) {
+		super.onConnectionFailed(x);
+		future.completeExceptionally(new BookStoreException(
+				BookStoreClientConstants.strERR_CLIENT_REQUEST_EXCEPTION, x));
+	}
+
+	@Override
+	protected void onException(Throwable x) {
+		super.onException(x);
+		future.completeExceptionally(new BookStoreException(
+				BookStoreClientConstants.strERR_CLIENT_REQUEST_EXCEPTION, x));
+	}
+
+	@Override
+	protected void onExpire() {
+		super.onExpire();
+		future.completeExceptionally(new BookStoreException(
+				BookStoreClientConstants.strERR_CLIENT_REQUEST_TIMEOUT));
+	}
+}
@@ -0,0 +1,441 @@
+package com.acertainbookstore.business;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.acertainbookstore.interfaces.InventoryColumns;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.DenseIntSet;
+import com.acertainbookstore.utils.IntIntHashMap;
+
+/**
+ * BookInventory is the storage of the CertainBookStore. Every book gets a
+ * dense slot: its counters live in that slot of the InventoryColumns and its
+ * immutable ISBN, title, author and price in the same slot of the metadata
+ * arrays, so no object is kept per book. A BookStoreBook view of the slot is
+ * created whenever a book is looked up.
+ *
+ * When a book is removed the last book is moved into its slot, so the slots
+ * stay dense and a scan over a column only reads live books.
+ *
+ * The slots of the editor picks and of the books in demand are also kept in
+ * dense sets, so that they are found without scanning the catalog. The editor
+ * pick flag and the sale misses must therefore only be changed through
+ * setEditorPick, addSaleMiss and addCopies.
+ *
+ * The books are also kept ordered by their average rating, highest first and
+ * then by ISBN, so that the top rated books are found without sorting the
+ * catalog. The ratings must therefore only be changed through addRating. The
+ * order is a skip list, which can be read while it is being written.
+ *
+ * Like the IntIntHashMap it is not thread-safe, but it may be read by the
+ * optimistic reads of the CertainBookStore while it is being written.
+ *
+ */
+public class BookInventory {
+	public static final int NO_SLOT = IntIntHashMap.NO_VALUE;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final InventoryColumns columns;
+	private final IntIntHashMap index; // ISBN -> slot
+	private int[] isbns;
+	private String[] titles;
+	private String[] authors;
+	private float[] prices;
+	private int size;
+	private final DenseIntSet picks; // slots of the editor picks
+	private final DenseIntSet inDemand; // slots of the books with sale misses
+	private final ConcurrentSkipListSet<Long> ratingOrder; // cf. ratingKey
+
+	public BookInventory() {
+		this(new HeapInventoryColumns(DEFAULT_CAPACITY));
+	}
+
+	public BookInventory(InventoryColumns columns) {
+		int capacity = Math.max(columns.capacity(), DEFAULT_CAPACITY);
+		this.columns = columns;
+		columns.grow(capacity);
+		index = new IntIntHashMap();
+		isbns = new int[capacity];
+		titles = new String[capacity];
+		authors = new String[capacity];
+		prices = new float[capacity];
+		picks = new DenseIntSet();
+		inDemand = new DenseIntSet();
+		ratingOrder = new ConcurrentSkipListSet<Long>();
+	}
+
+	/**
+	 * Returns the key of the book in the rating order: the average rating in
+	 * the high bits, mapped so that higher ratings come first, and the ISBN
+	 * in the low bits.
+	 */
+	private static long ratingKey(int ISBN, float averageRating) {
+		int bits = Float.floatToIntBits(averageRating);
+		bits ^= (bits >> 31) & Integer.MAX_VALUE; // ordered like the floats
+		return ((long) ~bits << 32) | (ISBN & 0xFFFFFFFFL);
+	}
+
+	private static int ratingKeyISBN(long key) {
+		return (int) key;
+	}
+
+	private BookStoreBook book(int slot) {
+		return new BookStoreBook(isbns[slot], titles[slot], authors[slot],
+				prices[slot], columns, slot);
+	}
+
+	/**
+	 * Returns a view of the book, or null if it is not in the inventory.
+	 *
+	 * @param ISBN
+	 * @return
+	 */
+	public BookStoreBook get(int ISBN) {
+		int slot = index.get(ISBN);
+		return slot == IntIntHashMap.NO_VALUE ? null : book(slot);
+	}
+
+	public boolean containsKey(int ISBN) {
+		return index.containsKey(ISBN);
+	}
+
+	/**
+	 * Returns the slot of the book, or NO_SLOT if it is not in the inventory.
+	 * The slot of a book may change when another book is removed, so a slot
+	 * must not be kept past the current read or update.
+	 *
+	 * @param ISBN
+	 * @return
+	 */
+	public int slot(int ISBN) {
+		return index.get(ISBN);
+	}
+
+	/**
+	 * Returns a view of the book in the slot.
+	 *
+	 * @param slot
+	 * @return
+	 */
+	public BookStoreBook getAt(int slot) {
+		return book(slot);
+	}
+
+	public int getNumCopiesAt(int slot) {
+		return columns.getNumCopies(slot);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds the book in the next free slot. The book must not be in the
+	 * inventory already, its old slot would be left behind otherwise.
+	 *
+	 * @param book
+	 */
+	public void add(StockBook book) {
+		if (index.containsKey(book.getISBN())) {
+			throw new IllegalArgumentException("ISBN " + book.getISBN()
+					+ " already has a slot");
+		}
+		if (size == isbns.length) {
+			int capacity = isbns.length * 2;
+			columns.grow(capacity);
+			isbns = Arrays.copyOf(isbns, capacity);
+			titles = Arrays.copyOf(titles, capacity);
+			authors = Arrays.copyOf(authors, capacity);
+			prices = Arrays.copyOf(prices, capacity);
+		}
+
+		int slot = size;
+		isbns[slot] = book.getISBN();
+		titles[slot] = book.getTitle();
+		authors[slot] = book.getAuthor();
+		prices[slot] = book.getPrice();
+		columns.setNumCopies(slot, book.getNumCopies());
+		columns.setTotalRating(slot, book.getTotalRating());
+		columns.setTimesRated(slot, book.getTimesRated());
+		columns.setSaleMisses(slot, book.getSaleMisses());
+		columns.setEditorPick(slot, book.isEditorPick());
+		if (book.isEditorPick()) {
+			picks.add(slot);
+		}
+		if (book.getSaleMisses() > 0) {
+			inDemand.add(slot);
+		}
+		size++;
+		index.put(book.getISBN(), slot);
+		ratingOrder.add(ratingKey(book.getISBN(), book(slot).getAverageRating()));
+	}
+
+	/**
+	 * Adds the rating to the total rating of the book and moves it in the
+	 * rating order.
+	 *
+	 * @param ISBN
+	 * @param rating
+	 */
+	public void addRating(int ISBN, int rating) {
+		int slot = index.get(ISBN);
+		if (slot != IntIntHashMap.NO_VALUE) {
+			addRatingAt(slot, rating);
+		}
+	}
+
+	public void addRatingAt(int slot, int rating) {
+		if (BookStoreUtility.isInvalidRating(rating)) {
+			return;
+		}
+
+		BookStoreBook book = book(slot);
+		ratingOrder.remove(ratingKey(isbns[slot], book.getAverageRating()));
+		columns.setTotalRating(slot, book.getTotalRating() + rating);
+		columns.setTimesRated(slot, book.getTimesRated() + 1);
+		ratingOrder.add(ratingKey(isbns[slot], book.getAverageRating()));
+	}
+
+	/**
+	 * Sets the book to be an editor pick if the boolean is true, otherwise the
+	 * book is not an editor pick.
+	 *
+	 * @param ISBN
+	 * @param editorPick
+	 */
+	public void setEditorPick(int ISBN, boolean editorPick) {
+		int slot = index.get(ISBN);
+		if (slot != IntIntHashMap.NO_VALUE) {
+			setEditorPickAt(slot, editorPick);
+		}
+	}
+
+	public void setEditorPickAt(int slot, boolean editorPick) {
+		if (columns.isEditorPick(slot) == editorPick) {
+			return;
+		}
+
+		columns.setEditorPick(slot, editorPick);
+		if (editorPick) {
+			picks.add(slot);
+		} else {
+			picks.remove(slot);
+		}
+	}
+
+	/**
+	 * Increases the amount of missed sales of the book.
+	 *
+	 * @param ISBN
+	 */
+	public void addSaleMiss(int ISBN) {
+		int slot = index.get(ISBN);
+		if (slot != IntIntHashMap.NO_VALUE) {
+			addSaleMissAt(slot);
+		}
+	}
+
+	public void addSaleMissAt(int slot) {
+		columns.setSaleMisses(slot, columns.getSaleMisses(slot) + 1);
+		inDemand.add(slot);
+	}
+
+	/**
+	 * Adds newCopies to the total number of copies of the book, which is then
+	 * no longer in demand.
+	 *
+	 * @param ISBN
+	 * @param newCopies
+	 */
+	public void addCopies(int ISBN, int newCopies) {
+		int slot = index.get(ISBN);
+		if (slot != IntIntHashMap.NO_VALUE) {
+			addCopiesAt(slot, newCopies);
+		}
+	}
+
+	public void addCopiesAt(int slot, int newCopies) {
+		if (BookStoreUtility.isInvalidNoCopies(newCopies)) {
+			return;
+		}
+
+		columns.setNumCopies(slot, columns.getNumCopies(slot) + newCopies);
+		columns.setSaleMisses(slot, 0);
+		inDemand.remove(slot);
+	}
+
+	/**
+	 * Takes numCopies of the book in the slot out of the stock, if they are in
+	 * stock.
+	 *
+	 * @param slot
+	 * @param numCopies
+	 * @return true if the copies were taken
+	 */
+	public boolean buyCopiesAt(int slot, int numCopies) {
+		int inStock = columns.getNumCopies(slot);
+		if (BookStoreUtility.isInvalidNoCopies(numCopies)
+				|| inStock < numCopies) {
+			return false;
+		}
+
+		columns.setNumCopies(slot, inStock - numCopies);
+		return true;
+	}
+
+	/**
+	 * Removes the book and moves the last book into its slot.
+	 *
+	 * @param ISBN
+	 * @return true if the book was in the inventory
+	 */
+	public boolean remove(int ISBN) {
+		int slot = index.remove(ISBN);
+		if (slot == IntIntHashMap.NO_VALUE) {
+			return false;
+		}
+
+		ratingOrder.remove(ratingKey(ISBN, book(slot).getAverageRating()));
+
+		picks.remove(slot);
+		inDemand.remove(slot);
+
+		int last = --size;
+		if (slot != last) {
+			isbns[slot] = isbns[last];
+			titles[slot] = titles[last];
+			authors[slot] = authors[last];
+			prices[slot] = prices[last];
+			columns.move(last, slot);
+			index.put(isbns[slot], slot);
+			picks.replace(last, slot);
+			inDemand.replace(last, slot);
+		}
+		titles[last] = null;
+		authors[last] = null;
+		return true;
+	}
+
+	public void clear() {
+		index.clear();
+		Arrays.fill(titles, 0, size, null);
+		Arrays.fill(authors, 0, size, null);
+		size = 0;
+		picks.clear();
+		inDemand.clear();
+		ratingOrder.clear();
+	}
+
+	/**
+	 * Returns views of the books, in slot order.
+	 *
+	 * @return
+	 */
+	public List<BookStoreBook> values() {
+		final int size = this.size;
+		return new AbstractList<BookStoreBook>() {
+			public BookStoreBook get(int slot) {
+				return book(slot);
+			}
+
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private List<BookStoreBook> books(DenseIntSet slots) {
+		int numBooks = slots.size();
+		List<BookStoreBook> listBooks = new ArrayList<BookStoreBook>(numBooks);
+		for (int i = 0; i < numBooks; i++) {
+			listBooks.add(book(slots.get(i)));
+		}
+		return listBooks;
+	}
+
+	/**
+	 * Returns the books that had a sale miss.
+	 *
+	 * @return
+	 */
+	public List<BookStoreBook> booksInDemand() {
+		return books(inDemand);
+	}
+
+	/**
+	 * Returns the books that are editor picks.
+	 *
+	 * @return
+	 */
+	public List<BookStoreBook> editorPicks() {
+		return books(picks);
+	}
+
+	public int numEditorPicks() {
+		return picks.size();
+	}
+
+	/**
+	 * Returns the editor pick at the position, which must be less than
+	 * numEditorPicks().
+	 *
+	 * @param position
+	 * @return
+	 */
+	public BookStoreBook editorPick(int position) {
+		return book(picks.get(position));
+	}
+
+	/**
+	 * Returns numBooks editor picks chosen at random, or all of them if there
+	 * are not that many. This is a partial Fisher-Yates shuffle of the editor
+	 * pick index, so it takes time proportional to numBooks. The swaps are
+	 * kept aside rather than done in the index, which may be read
+	 * concurrently.
+	 *
+	 * @param numBooks
+	 * @param rand
+	 * @return
+	 */
+	public List<BookStoreBook> editorPicks(int numBooks, Random rand) {
+		int range = picks.size();
+		if (range <= numBooks) {
+			return editorPicks();
+		}
+
+		List<BookStoreBook> listBooks = new ArrayList<BookStoreBook>(numBooks);
+		IntIntHashMap swapped = new IntIntHashMap(numBooks * 2);
+		for (int i = 0; i < numBooks; i++) {
+			int j = i + rand.nextInt(range - i);
+			int atJ = swapped.get(j);
+			int atI = swapped.get(i);
+			swapped.put(j, atI == IntIntHashMap.NO_VALUE ? i : atI);
+			listBooks.add(book(picks.get(atJ == IntIntHashMap.NO_VALUE ? j : atJ)));
+		}
+		return listBooks;
+	}
+
+	/**
+	 * Returns the numBooks books with the highest average rating, highest
+	 * first and then by ISBN, or all the books if there are not that many.
+	 *
+	 * @param numBooks
+	 * @return
+	 */
+	public List<BookStoreBook> topRated(int numBooks) {
+		List<BookStoreBook> listBooks = new ArrayList<BookStoreBook>(
+				Math.min(numBooks, size));
+		for (Long key : ratingOrder) {
+			if (listBooks.size() == numBooks) {
+				break;
+			}
+			listBooks.add(get(ratingKeyISBN(key)));
+		}
+		return listBooks;
+	}
+}
@@ -0,0 +1,109 @@
+package com.acertainbookstore.business;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.acertainbookstore.utils.BookStoreMessageTag;
+
+/**
+ * BookStoreOperation represents one update of a batch, cf.
+ * BookStore.executeBatch: the message type of the update and the set it is
+ * called with.
+ */
+public class BookStoreOperation {
+	private Set<?> dataSet;
+	private BookStoreMessageTag messageType;
+
+	private BookStoreOperation(Set<?> dataSet, BookStoreMessageTag messageType) {
+		this.dataSet = dataSet;
+		this.messageType = messageType;
+	}
+
+	public static BookStoreOperation addBooks(Set<StockBook> bookSet) {
+		return new BookStoreOperation(bookSet, BookStoreMessageTag.ADDBOOKS);
+	}
+
+	public static BookStoreOperation addCopies(Set<BookCopy> bookCopiesSet) {
+		return new BookStoreOperation(bookCopiesSet,
+				BookStoreMessageTag.ADDCOPIES);
+	}
+
+	public static BookStoreOperation updateEditorPicks(
+			Set<BookEditorPick> editorPicks) {
+		return new BookStoreOperation(editorPicks,
+				BookStoreMessageTag.UPDATEEDITORPICKS);
+	}
+
+	public static BookStoreOperation buyBooks(Set<BookCopy> booksToBuy) {
+		return new BookStoreOperation(booksToBuy, BookStoreMessageTag.BUYBOOKS);
+	}
+
+	public static BookStoreOperation rateBooks(Set<BookRating> bookRating) {
+		return new BookStoreOperation(bookRating, BookStoreMessageTag.RATEBOOKS);
+	}
+
+	public static BookStoreOperation removeBooks(Set<Integer> isbnSet) {
+		return new BookStoreOperation(isbnSet, BookStoreMessageTag.REMOVEBOOKS);
+	}
+
+	public static BookStoreOperation removeAllBooks() {
+		return new BookStoreOperation(null, BookStoreMessageTag.REMOVEALLBOOKS);
+	}
+
+	public Set<?> getDataSet() {
+		return dataSet;
+	}
+
+	public BookStoreMessageTag getMessageType() {
+		return messageType;
+	}
+
+	/**
+	 * Returns true if a customer may run the operation, i.e. if it is a
+	 * purchase or a rating.
+	 *
+	 * @return
+	 */
+	public boolean isCustomerOperation() {
+		return messageType == BookStoreMessageTag.BUYBOOKS
+				|| messageType == BookStoreMessageTag.RATEBOOKS;
+	}
+
+	/**
+	 * Returns the ISBNs of the books, copies, editor picks or ratings of the
+	 * operation. The set is empty for removeAllBooks.
+	 *
+	 * @return
+	 */
+	public Set<Integer> getISBNs() {
+		return getISBNs(dataSet);
+	}
+
+	/**
+	 * Returns the ISBNs of the books, copies, editor picks, ratings or ISBNs
+	 * in the set.
+	 *
+	 * @param dataSet
+	 * @return
+	 */
+	static Set<Integer> getISBNs(Set<?> dataSet) {
+		Set<Integer> isbnSet = new HashSet<Integer>();
+		if (dataSet == null) {
+			return isbnSet;
+		}
+		for (Object data : dataSet) {
+			if (data instanceof Book) {
+				isbnSet.add(((Book) data).getISBN());
+			} else if (data instanceof BookCopy) {
+				isbnSet.add(((BookCopy) data).getISBN());
+			} else if (data instanceof BookEditorPick) {
+				isbnSet.add(((BookEditorPick) data).getISBN());
+			} else if (data instanceof BookRating) {
+				isbnSet.add(((BookRating) data).getISBN());
+			} else if (data instanceof Integer) {
+				isbnSet.add((Integer) data);
+			}
+		}
+		return isbnSet;
+	}
+}
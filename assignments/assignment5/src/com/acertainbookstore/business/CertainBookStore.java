@@ -5,314 +5,634 @@ package com.acertainbookstore.business;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
 
+import com.acertainbookstore.business.WriteCombiner.Write;
 import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.InventoryColumns;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreUtility;
 
 /**
  * CertainBookStore implements the bookstore and its functionality which is
  * defined in the BookStore
+ * 
+ * Updates take the write lock of a StampedLock. Reads first run without any
+ * lock in optimistic mode and only keep the result if no update happened in
+ * the meantime, otherwise they are run again under the read lock. Since every
+ * update invalidates the stamp, a read of several books returns the books as
+ * they were at one point in time.
+ * 
+ * The updates may also be run by flat combining, cf. WriteCombiner, so that
+ * bursts of purchases and restocks take the write lock once per batch rather
+ * than once per update.
+ * 
+ * A batch of updates, cf. executeBatch, is run as one update. The books it
+ * touches are copied before they are first changed and put back if one of
+ * the updates fails, so the batch is all-or-nothing.
+ * 
+ * The operations on a set of books look every book up once, cf. resolve, and
+ * then work on the slots of the books in the inventory.
  */
 public class CertainBookStore implements BookStore, StockManager {
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private BookInventory inventory = null;
+	private final StampedLock lock = new StampedLock();
+	private final WriteCombiner combiner; // null if updates take the lock
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int RESOLVE_CAPACITY = Integer.getInteger(
+			BookStoreConstants.PROPERTY_KEY_RESOLVE_CAPACITY, 64);
+
+	// the slots of the books of the current operation of the thread
+	private static final ThreadLocal<int[]> resolved = new ThreadLocal<int[]>() {
+		protected int[] initialValue() {
+			return new int[RESOLVE_CAPACITY];
+		}
+	};
 
 	public CertainBookStore() {
+		this(Boolean
+				.getBoolean(BookStoreConstants.PROPERTY_KEY_OFF_HEAP_INVENTORY) ? new DirectInventoryColumns(
+				INITIAL_CAPACITY) : new HeapInventoryColumns(INITIAL_CAPACITY),
+				Boolean.getBoolean(BookStoreConstants.PROPERTY_KEY_COMBINED_WRITES));
+	}
+
+	/**
+	 * Creates a store which keeps the counters of its books in the columns.
+	 * 
+	 * @param columns
+	 */
+	public CertainBookStore(InventoryColumns columns) {
+		this(columns, false);
+	}
+
+	/**
+	 * Creates a store which keeps the counters of its books in the columns
+	 * and, if combineWrites is true, runs its updates by flat combining.
+	 * 
+	 * @param columns
+	 * @param combineWrites
+	 */
+	public CertainBookStore(InventoryColumns columns, boolean combineWrites) {
 		// Constructors are not synchronized
-		bookMap = new HashMap<Integer, BookStoreBook>();
+		inventory = new BookInventory(columns);
+		combiner = combineWrites ? new WriteCombiner(lock) : null;
 	}
 
-	public synchronized void addBooks(Set<StockBook> bookSet)
-			throws BookStoreException {
+	/**
+	 * A read of the store. It may be run without holding any lock, so it must
+	 * not change the store and must cope with books changing underneath it.
+	 */
+	private interface Read<T> {
+		public T run() throws BookStoreException;
+	}
 
-		if (bookSet == null) {
-			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
-		}
-		// Check if all are there
-		for (StockBook book : bookSet) {
-			int ISBN = book.getISBN();
-			String bookTitle = book.getTitle();
-			String bookAuthor = book.getAuthor();
-			int noCopies = book.getNumCopies();
-			float bookPrice = book.getPrice();
-			if (BookStoreUtility.isInvalidISBN(ISBN)
-					|| BookStoreUtility.isEmpty(bookTitle)
-					|| BookStoreUtility.isEmpty(bookAuthor)
-					|| BookStoreUtility.isInvalidNoCopies(noCopies)
-					|| bookPrice < 0.0) {
-				throw new BookStoreException(BookStoreConstants.BOOK
-						+ book.toString() + BookStoreConstants.INVALID);
-			} else if (bookMap.containsKey(ISBN)) {
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.DUPLICATED);
+	/**
+	 * Runs the read optimistically and returns its result (or throws its
+	 * exception) if no update happened meanwhile. Otherwise the read is run
+	 * again under the read lock.
+	 * 
+	 * @param read
+	 * @return
+	 * @throws BookStoreException
+	 */
+	private <T> T read(Read<T> read) throws BookStoreException {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				T result = read.run();
+				if (lock.validate(stamp)) {
+					return result;
+				}
+			} catch (BookStoreException ex) {
+				if (lock.validate(stamp)) {
+					throw ex;
+				}
+			} catch (RuntimeException ex) {
+				// An inconsistent read may fail in any way, it is only an
+				// error if nothing changed underneath it
+				if (lock.validate(stamp)) {
+					throw ex;
+				}
 			}
 		}
 
-		for (StockBook book : bookSet) {
-			int ISBN = book.getISBN();
-			bookMap.put(ISBN, new BookStoreBook(book));
+		stamp = lock.readLock();
+		try {
+			return read.run();
+		} finally {
+			lock.unlockRead(stamp);
 		}
-		return;
 	}
 
-	public synchronized void addCopies(Set<BookCopy> bookCopiesSet)
-			throws BookStoreException {
-		int ISBN, numCopies;
-
-		if (bookCopiesSet == null) {
-			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
-		}
-
-		for (BookCopy bookCopy : bookCopiesSet) {
-			ISBN = bookCopy.getISBN();
-			numCopies = bookCopy.getNumCopies();
-			if (BookStoreUtility.isInvalidISBN(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.INVALID);
-			if (!bookMap.containsKey(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.NOT_AVAILABLE);
-			if (BookStoreUtility.isInvalidNoCopies(numCopies))
-				throw new BookStoreException(BookStoreConstants.NUM_COPIES
-						+ numCopies + BookStoreConstants.INVALID);
-
+	/**
+	 * Runs the update under the write lock, either directly or through the
+	 * combiner.
+	 * 
+	 * @param write
+	 * @throws BookStoreException
+	 */
+	private void write(Write write) throws BookStoreException {
+		if (combiner != null) {
+			combiner.execute(write);
+			return;
 		}
 
-		BookStoreBook book;
-		// Update the number of copies
-		for (BookCopy bookCopy : bookCopiesSet) {
-			ISBN = bookCopy.getISBN();
-			numCopies = bookCopy.getNumCopies();
-			book = bookMap.get(ISBN);
-			book.addCopies(numCopies);
+		long stamp = lock.writeLock();
+		try {
+			write.run();
+		} finally {
+			lock.unlockWrite(stamp);
 		}
 	}
 
-	public synchronized List<StockBook> getBooks() {
-		List<StockBook> listBooks = new ArrayList<StockBook>();
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-		for (BookStoreBook book : bookMapValues) {
-			listBooks.add(book.immutableStockBook());
-		}
-		return listBooks;
+	/**
+	 * Returns an array for the slots of numBooks books. Up to RESOLVE_CAPACITY
+	 * books the array of the thread is reused, so it must not be kept past
+	 * the current read or update.
+	 * 
+	 * @param numBooks
+	 * @return
+	 */
+	private static int[] slots(int numBooks) {
+		int[] slots = resolved.get();
+		return numBooks <= slots.length ? slots : new int[numBooks];
 	}
 
-	public synchronized void updateEditorPicks(Set<BookEditorPick> editorPicks)
-			throws BookStoreException {
-		// Check that all ISBNs that we add/remove are there first.
-		if (editorPicks == null) {
-			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
-		}
-
-		int ISBNVal;
+	/**
+	 * Checks that the ISBN is valid and that the book is in the store, and
+	 * returns the slot of the book.
+	 * 
+	 * @param ISBN
+	 * @return
+	 * @throws BookStoreException
+	 */
+	private int resolve(int ISBN) throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(ISBN))
+			throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+					+ BookStoreConstants.INVALID);
+		int slot = inventory.slot(ISBN);
+		if (slot == BookInventory.NO_SLOT)
+			throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+					+ BookStoreConstants.NOT_AVAILABLE);
+		return slot;
+	}
 
-		for (BookEditorPick editorPickArg : editorPicks) {
-			ISBNVal = editorPickArg.getISBN();
-			if (BookStoreUtility.isInvalidISBN(ISBNVal))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBNVal
-						+ BookStoreConstants.INVALID);
-			if (!bookMap.containsKey(ISBNVal))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBNVal
-						+ BookStoreConstants.NOT_AVAILABLE);
-		}
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		write(addBooksWrite(bookSet));
+	}
 
-		for (BookEditorPick editorPickArg : editorPicks) {
-			bookMap.get(editorPickArg.getISBN()).setEditorPick(
-					editorPickArg.isEditorPick());
-		}
-		return;
+	private Write addBooksWrite(final Set<StockBook> bookSet) {
+		return new Write() {
+			public void run() throws BookStoreException {
+				if (bookSet == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+				}
+				// Check if all are there, and only once in the set
+				Set<Integer> ISBNs = new HashSet<Integer>();
+				for (StockBook book : bookSet) {
+					int ISBN = book.getISBN();
+					String bookTitle = book.getTitle();
+					String bookAuthor = book.getAuthor();
+					int noCopies = book.getNumCopies();
+					float bookPrice = book.getPrice();
+					if (BookStoreUtility.isInvalidISBN(ISBN)
+							|| BookStoreUtility.isEmpty(bookTitle)
+							|| BookStoreUtility.isEmpty(bookAuthor)
+							|| BookStoreUtility.isInvalidNoCopies(noCopies)
+							|| bookPrice < 0.0) {
+						throw new BookStoreException(BookStoreConstants.BOOK
+								+ book.toString() + BookStoreConstants.INVALID);
+					} else if (inventory.containsKey(ISBN)
+							|| !ISBNs.add(ISBN)) {
+						throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+								+ BookStoreConstants.DUPLICATED);
+					}
+				}
+
+				for (StockBook book : bookSet) {
+					inventory.add(book);
+				}
+				return;
+			}
+		};
 	}
 
-	public synchronized void buyBooks(Set<BookCopy> bookCopiesToBuy)
+	public void addCopies(Set<BookCopy> bookCopiesSet)
 			throws BookStoreException {
-		if (bookCopiesToBuy == null) {
-			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
-		}
+		write(addCopiesWrite(bookCopiesSet));
+	}
 
-		// Check that all ISBNs that we buy are there first.
-		int ISBN;
-		BookStoreBook book;
-		Boolean saleMiss = false;
-		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
-			ISBN = bookCopyToBuy.getISBN();
-			if (bookCopyToBuy.getNumCopies() < 0)
-				throw new BookStoreException(BookStoreConstants.NUM_COPIES
-						+ bookCopyToBuy.getNumCopies()
-						+ BookStoreConstants.INVALID);
-			if (BookStoreUtility.isInvalidISBN(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.INVALID);
-			if (!bookMap.containsKey(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.NOT_AVAILABLE);
-			book = bookMap.get(ISBN);
-			if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
-				book.addSaleMiss(); // If we cannot sell the copies of the book
-									// its a miss
-				saleMiss = true;
+	private Write addCopiesWrite(final Set<BookCopy> bookCopiesSet) {
+		return new Write() {
+			public void run() throws BookStoreException {
+				int ISBN, numCopies;
+
+				if (bookCopiesSet == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+				}
+
+				int[] slots = slots(bookCopiesSet.size());
+				int i = 0;
+				for (BookCopy bookCopy : bookCopiesSet) {
+					ISBN = bookCopy.getISBN();
+					numCopies = bookCopy.getNumCopies();
+					slots[i++] = resolve(ISBN);
+					if (BookStoreUtility.isInvalidNoCopies(numCopies))
+						throw new BookStoreException(BookStoreConstants.NUM_COPIES
+								+ numCopies + BookStoreConstants.INVALID);
+
+				}
+
+				// Update the number of copies
+				i = 0;
+				for (BookCopy bookCopy : bookCopiesSet) {
+					inventory.addCopiesAt(slots[i++], bookCopy.getNumCopies());
+				}
 			}
-		}
-
-		// We throw exception now since we want to see how many books in the
-		// order incurred misses which is used by books in demand
-		if (saleMiss)
-			throw new BookStoreException(BookStoreConstants.BOOK
-					+ BookStoreConstants.NOT_AVAILABLE);
+		};
+	}
 
-		// Then make purchase
-		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
-			book = bookMap.get(bookCopyToBuy.getISBN());
-			book.buyCopies(bookCopyToBuy.getNumCopies());
+	public List<StockBook> getBooks() {
+		try {
+			return read(new Read<List<StockBook>>() {
+				public List<StockBook> run() {
+					List<StockBook> listBooks = new ArrayList<StockBook>();
+					Collection<BookStoreBook> inventoryValues = inventory.values();
+					for (BookStoreBook book : inventoryValues) {
+						listBooks.add(book.immutableStockBook());
+					}
+					return listBooks;
+				}
+			});
+		} catch (BookStoreException ex) {
+			// Cannot happen, listing the books does not throw
+			throw new IllegalStateException(ex);
 		}
-		return;
 	}
 
-	public synchronized List<StockBook> getBooksByISBN(Set<Integer> isbnSet)
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks)
 			throws BookStoreException {
-		if (isbnSet == null) {
-			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
-		}
-		for (Integer ISBN : isbnSet) {
-			if (BookStoreUtility.isInvalidISBN(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.INVALID);
-			if (!bookMap.containsKey(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.NOT_AVAILABLE);
-		}
-
-		List<StockBook> listBooks = new ArrayList<StockBook>();
-
-		for (Integer ISBN : isbnSet) {
-			listBooks.add(bookMap.get(ISBN).immutableStockBook());
-		}
+		write(updateEditorPicksWrite(editorPicks));
+	}
 
-		return listBooks;
+	private Write updateEditorPicksWrite(final Set<BookEditorPick> editorPicks) {
+		return new Write() {
+			public void run() throws BookStoreException {
+				// Check that all ISBNs that we add/remove are there first.
+				if (editorPicks == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+				}
+
+				int ISBNVal;
+
+				int[] slots = slots(editorPicks.size());
+				int i = 0;
+				for (BookEditorPick editorPickArg : editorPicks) {
+					ISBNVal = editorPickArg.getISBN();
+					slots[i++] = resolve(ISBNVal);
+				}
+
+				i = 0;
+				for (BookEditorPick editorPickArg : editorPicks) {
+					inventory.setEditorPickAt(slots[i++],
+							editorPickArg.isEditorPick());
+				}
+				return;
+			}
+		};
 	}
 
-	public synchronized List<Book> getBooks(Set<Integer> isbnSet)
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy)
 			throws BookStoreException {
-		if (isbnSet == null) {
-			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
-		}
-		// Check that all ISBNs that we rate are there first.
-		for (Integer ISBN : isbnSet) {
-			if (BookStoreUtility.isInvalidISBN(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.INVALID);
-			if (!bookMap.containsKey(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.NOT_AVAILABLE);
-		}
-
-		List<Book> listBooks = new ArrayList<Book>();
+		write(buyBooksWrite(bookCopiesToBuy));
+	}
 
-		// Get the books
-		for (Integer ISBN : isbnSet) {
-			listBooks.add(bookMap.get(ISBN).immutableBook());
-		}
-		return listBooks;
+	private Write buyBooksWrite(final Set<BookCopy> bookCopiesToBuy) {
+		return new Write() {
+			public void run() throws BookStoreException {
+				if (bookCopiesToBuy == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+				}
+
+				// Check that all ISBNs that we buy are there first.
+				int ISBN, slot;
+				Boolean saleMiss = false;
+				int[] slots = slots(bookCopiesToBuy.size());
+				int i = 0;
+				for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+					ISBN = bookCopyToBuy.getISBN();
+					if (bookCopyToBuy.getNumCopies() < 0)
+						throw new BookStoreException(BookStoreConstants.NUM_COPIES
+								+ bookCopyToBuy.getNumCopies()
+								+ BookStoreConstants.INVALID);
+					slot = slots[i++] = resolve(ISBN);
+					if (inventory.getNumCopiesAt(slot) < bookCopyToBuy.getNumCopies()) {
+						inventory.addSaleMissAt(slot); // If we cannot sell the copies of the book
+											// its a miss
+						saleMiss = true;
+					}
+				}
+
+				// We throw exception now since we want to see how many books in the
+				// order incurred misses which is used by books in demand
+				if (saleMiss)
+					throw new BookStoreException(BookStoreConstants.BOOK
+							+ BookStoreConstants.NOT_AVAILABLE);
+
+				// Then make purchase
+				i = 0;
+				for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+					inventory.buyCopiesAt(slots[i++], bookCopyToBuy.getNumCopies());
+				}
+				return;
+			}
+		};
 	}
 
-	public synchronized List<Book> getEditorPicks(int numBooks)
+	public List<StockBook> getBooksByISBN(final Set<Integer> isbnSet)
 			throws BookStoreException {
-		if (numBooks < 0) {
-			throw new BookStoreException("numBooks = " + numBooks
-					+ ", but it must be positive");
-		}
-
-		List<BookStoreBook> listAllEditorPicks = new ArrayList<BookStoreBook>();
-		List<Book> listEditorPicks = new ArrayList<Book>();
-		Iterator<Entry<Integer, BookStoreBook>> it = bookMap.entrySet()
-				.iterator();
-		BookStoreBook book;
-
-		// Get all books that are editor picks
-		while (it.hasNext()) {
-			Entry<Integer, BookStoreBook> pair = (Entry<Integer, BookStoreBook>) it
-					.next();
-			book = (BookStoreBook) pair.getValue();
-			if (book.isEditorPick()) {
-				listAllEditorPicks.add(book);
+		return read(new Read<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				if (isbnSet == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+				}
+				int[] slots = slots(isbnSet.size());
+				int numBooks = 0;
+				for (Integer ISBN : isbnSet) {
+					slots[numBooks++] = resolve(ISBN);
+				}
+
+				List<StockBook> listBooks = new ArrayList<StockBook>(numBooks);
+
+				for (int i = 0; i < numBooks; i++) {
+					listBooks.add(inventory.getAt(slots[i]).immutableStockBook());
+				}
+
+				return listBooks;
 			}
-		}
+		});
+	}
 
-		// Find numBooks random indices of books that will be picked
-		Random rand = new Random();
-		Set<Integer> tobePicked = new HashSet<Integer>();
-		int rangePicks = listAllEditorPicks.size();
-		if (rangePicks <= numBooks) {
-			// We need to add all the books
-			for (int i = 0; i < listAllEditorPicks.size(); i++) {
-				tobePicked.add(i);
-			}
-		} else {
-			// We need to pick randomly the books that need to be returned
-			int randNum;
-			while (tobePicked.size() < numBooks) {
-				randNum = rand.nextInt(rangePicks);
-				tobePicked.add(randNum);
+	public List<Book> getBooks(final Set<Integer> isbnSet)
+			throws BookStoreException {
+		return read(new Read<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				if (isbnSet == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+				}
+				// Check that all ISBNs that we rate are there first.
+				int[] slots = slots(isbnSet.size());
+				int numBooks = 0;
+				for (Integer ISBN : isbnSet) {
+					slots[numBooks++] = resolve(ISBN);
+				}
+
+				List<Book> listBooks = new ArrayList<Book>(numBooks);
+
+				// Get the books
+				for (int i = 0; i < numBooks; i++) {
+					listBooks.add(inventory.getAt(slots[i]).immutableBook());
+				}
+				return listBooks;
 			}
-		}
-
-		// Get the numBooks random books
-		for (Integer index : tobePicked) {
-			book = listAllEditorPicks.get(index);
-			listEditorPicks.add(book.immutableBook());
-		}
-		return listEditorPicks;
+		});
+	}
 
+	public List<Book> getEditorPicks(final int numBooks)
+			throws BookStoreException {
+		return read(new Read<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				if (numBooks < 0) {
+					throw new BookStoreException("numBooks = " + numBooks
+							+ ", but it must be positive");
+				}
+
+				// Get numBooks random books out of the editor pick index
+				List<Book> listEditorPicks = new ArrayList<Book>();
+				for (BookStoreBook book : inventory.editorPicks(numBooks,
+						new Random())) {
+					listEditorPicks.add(book.immutableBook());
+				}
+				return listEditorPicks;
+			}
+		});
 	}
 
 	@Override
-	public synchronized List<Book> getTopRatedBooks(int numBooks)
+	public List<Book> getTopRatedBooks(final int numBooks)
 			throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		return read(new Read<List<Book>>() {
+			public List<Book> run() throws BookStoreException {
+				if (numBooks < 0) {
+					throw new BookStoreException("numBooks = " + numBooks
+							+ ", but it must be positive");
+				}
+		
+				if (numBooks > inventory.size()) {
+					throw new BookStoreException("numBooks = " + numBooks
+							+ ", but it must be less than or equal to number of books in store");
+				}
+
+				// the books are kept in order of their rating
+				List<Book> listTopRated = new ArrayList<Book>();
+				for (BookStoreBook book : inventory.topRated(numBooks)) {
+					listTopRated.add(book.immutableBook());
+				}
+				return listTopRated;
+			}
+		});
 	}
 
 	@Override
-	public synchronized List<StockBook> getBooksInDemand()
+	public List<StockBook> getBooksInDemand()
 			throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		return read(new Read<List<StockBook>>() {
+			public List<StockBook> run() throws BookStoreException {
+				List<StockBook> listBooks = new ArrayList<StockBook>();
+
+				// the books in demand are kept in a set
+				for (BookStoreBook book : inventory.booksInDemand()) {
+					listBooks.add(book.immutableStockBook());
+				}
+		
+				return listBooks;
+			}
+		});
 	}
 
 	@Override
-	public synchronized void rateBooks(Set<BookRating> bookRating)
+	public void rateBooks(Set<BookRating> bookRating)
 			throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		write(rateBooksWrite(bookRating));
 	}
 
-	public synchronized void removeAllBooks() throws BookStoreException {
-		bookMap.clear();
+	private Write rateBooksWrite(final Set<BookRating> bookRating) {
+		return new Write() {
+			public void run() throws BookStoreException {
+		 		if (bookRating == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		        }
+
+		        // validate
+		        int ISBN, rating;
+				int[] slots = slots(bookRating.size());
+				int i = 0;
+				for (BookRating bookRatingToRate : bookRating) {
+					ISBN = bookRatingToRate.getISBN();
+					rating = bookRatingToRate.getRating();
+
+					// validate ISBN and in store
+					slots[i++] = resolve(ISBN);
+
+					// validate rating
+					if (BookStoreUtility.isInvalidRating(rating))
+						throw new BookStoreException(BookStoreConstants.RATING + rating
+								+ BookStoreConstants.INVALID);
+				}
+
+				// rate all books
+				i = 0;
+				for (BookRating bookRatingToRate : bookRating) {
+					inventory.addRatingAt(slots[i++], bookRatingToRate.getRating());
+				}
+
+				return;
+			}
+		};
+	}
+
+	public void removeAllBooks() throws BookStoreException {
+		write(removeAllBooksWrite());
+	}
+
+	private Write removeAllBooksWrite() {
+		return new Write() {
+			public void run() throws BookStoreException {
+				inventory.clear();
+			}
+		};
+	}
+
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		write(removeBooksWrite(isbnSet));
+	}
+
+	private Write removeBooksWrite(final Set<Integer> isbnSet) {
+		return new Write() {
+			public void run() throws BookStoreException {
+				if (isbnSet == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+				}
+				// the slots move as books are removed, so only the ISBNs are
+				// used to remove them
+				for (Integer ISBN : isbnSet) {
+					resolve(ISBN);
+				}
+
+				for (int isbn : isbnSet) {
+					inventory.remove(isbn);
+				}
+			}
+		};
 	}
 
-	public synchronized void removeBooks(Set<Integer> isbnSet)
+	public void executeBatch(List<BookStoreOperation> operations)
 			throws BookStoreException {
+		write(executeBatchWrite(operations));
+	}
+
+	private Write executeBatchWrite(final List<BookStoreOperation> operations) {
+		return new Write() {
+			public void run() throws BookStoreException {
+				if (operations == null) {
+					throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+				}
+				for (BookStoreOperation operation : operations) {
+					if (operation == null) {
+						throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+					}
+				}
+
+				// the books as they were before the batch, null if absent
+				Map<Integer, StockBook> before = new LinkedHashMap<Integer, StockBook>();
+				try {
+					for (BookStoreOperation operation : operations) {
+						Write write = operationWrite(operation);
+						if (operation.getMessageType() == BookStoreMessageTag.REMOVEALLBOOKS) {
+							for (BookStoreBook book : inventory.values()) {
+								keep(before, book.getISBN());
+							}
+						} else {
+							for (Integer ISBN : operation.getISBNs()) {
+								keep(before, ISBN);
+							}
+						}
+						write.run();
+					}
+				} catch (BookStoreException ex) {
+					restore(before);
+					throw ex;
+				} catch (RuntimeException ex) {
+					restore(before);
+					throw ex;
+				}
+			}
+		};
+	}
 
-		if (isbnSet == null) {
-			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+	@SuppressWarnings("unchecked")
+	private Write operationWrite(BookStoreOperation operation)
+			throws BookStoreException {
+		switch (operation.getMessageType()) {
+		case ADDBOOKS:
+			return addBooksWrite((Set<StockBook>) operation.getDataSet());
+		case ADDCOPIES:
+			return addCopiesWrite((Set<BookCopy>) operation.getDataSet());
+		case UPDATEEDITORPICKS:
+			return updateEditorPicksWrite((Set<BookEditorPick>) operation
+					.getDataSet());
+		case BUYBOOKS:
+			return buyBooksWrite((Set<BookCopy>) operation.getDataSet());
+		case RATEBOOKS:
+			return rateBooksWrite((Set<BookRating>) operation.getDataSet());
+		case REMOVEBOOKS:
+			return removeBooksWrite((Set<Integer>) operation.getDataSet());
+		case REMOVEALLBOOKS:
+			return removeAllBooksWrite();
+		default:
+			throw new BookStoreException(BookStoreConstants.OPERATION
+					+ operation.getMessageType() + BookStoreConstants.INVALID);
 		}
-		for (Integer ISBN : isbnSet) {
-			if (BookStoreUtility.isInvalidISBN(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.INVALID);
-			if (!bookMap.containsKey(ISBN))
-				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
-						+ BookStoreConstants.NOT_AVAILABLE);
+	}
+
+	/**
+	 * Copies the book before the batch first changes it.
+	 */
+	private void keep(Map<Integer, StockBook> before, int ISBN) {
+		if (!before.containsKey(ISBN)) {
+			BookStoreBook book = inventory.get(ISBN);
+			before.put(ISBN, book == null ? null : book.immutableStockBook());
 		}
+	}
 
-		for (int isbn : isbnSet) {
-			bookMap.remove(isbn);
+	/**
+	 * Puts the books back as they were before the batch.
+	 */
+	private void restore(Map<Integer, StockBook> before) {
+		for (Map.Entry<Integer, StockBook> entry : before.entrySet()) {
+			inventory.remove(entry.getKey());
+			if (entry.getValue() != null) {
+				inventory.add(entry.getValue());
+			}
 		}
 	}
 }
@@ -0,0 +1,89 @@
+package com.acertainbookstore.business;
+
+import java.util.Arrays;
+
+import com.acertainbookstore.interfaces.InventoryColumns;
+
+/**
+ * HeapInventoryColumns keeps the counters of the books in parallel primitive
+ * arrays on the heap.
+ *
+ */
+public class HeapInventoryColumns implements InventoryColumns {
+	private int[] numCopies;
+	private long[] totalRating;
+	private long[] timesRated;
+	private long[] saleMisses;
+	private boolean[] editorPick;
+
+	public HeapInventoryColumns(int capacity) {
+		numCopies = new int[capacity];
+		totalRating = new long[capacity];
+		timesRated = new long[capacity];
+		saleMisses = new long[capacity];
+		editorPick = new boolean[capacity];
+	}
+
+	public int capacity() {
+		return numCopies.length;
+	}
+
+	public void grow(int capacity) {
+		if (capacity <= numCopies.length) {
+			return;
+		}
+		numCopies = Arrays.copyOf(numCopies, capacity);
+		totalRating = Arrays.copyOf(totalRating, capacity);
+		timesRated = Arrays.copyOf(timesRated, capacity);
+		saleMisses = Arrays.copyOf(saleMisses, capacity);
+		editorPick = Arrays.copyOf(editorPick, capacity);
+	}
+
+	public void move(int from, int to) {
+		numCopies[to] = numCopies[from];
+		totalRating[to] = totalRating[from];
+		timesRated[to] = timesRated[from];
+		saleMisses[to] = saleMisses[from];
+		editorPick[to] = editorPick[from];
+	}
+
+	public int getNumCopies(int slot) {
+		return numCopies[slot];
+	}
+
+	public void setNumCopies(int slot, int numCopies) {
+		this.numCopies[slot] = numCopies;
+	}
+
+	public long getTotalRating(int slot) {
+		return totalRating[slot];
+	}
+
+	public void setTotalRating(int slot, long totalRating) {
+		this.totalRating[slot] = totalRating;
+	}
+
+	public long getTimesRated(int slot) {
+		return timesRated[slot];
+	}
+
+	public void setTimesRated(int slot, long timesRated) {
+		this.timesRated[slot] = timesRated;
+	}
+
+	public long getSaleMisses(int slot) {
+		return saleMisses[slot];
+	}
+
+	public void setSaleMisses(int slot, long saleMisses) {
+		this.saleMisses[slot] = saleMisses;
+	}
+
+	public boolean isEditorPick(int slot) {
+		return editorPick[slot];
+	}
+
+	public void setEditorPick(int slot, boolean editorPick) {
+		this.editorPick[slot] = editorPick;
+	}
+}
@@ -2,6 +2,7 @@ package com.acertainbookstore.business;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
@@ -98,6 +99,7 @@ public class MasterCertainBookStore extends ReadOnlyCertainBookStore
 		List<Future<ReplicationResult>> replicatedSlaveFutures = replicator.replicate(request);
 		bookStore.addBooks(bookSet); // If this fails it will throw an exception
 		snapshotId++;
+		publishBooks(getISBNs(bookSet));
 		waitForSlaveUpdates(replicatedSlaveFutures);
 		BookStoreResult result = new BookStoreResult(null, snapshotId);
 		return result;
@@ -109,6 +111,7 @@ public class MasterCertainBookStore extends ReadOnlyCertainBookStore
 		bookStore.addCopies(bookCopiesSet); // If this fails it will throw an
 											// exception
 		snapshotId++;
+		publishBooks(getISBNs(bookCopiesSet));
 		waitForSlaveUpdates(replicatedSlaveFutures);
 		BookStoreResult result = new BookStoreResult(null, snapshotId);
 		return result;
@@ -120,6 +123,7 @@ public class MasterCertainBookStore extends ReadOnlyCertainBookStore
 		bookStore.updateEditorPicks(editorPicks); // If this fails it will throw
 													// an exception
 		snapshotId++;
+		publishBooks(getISBNs(editorPicks));
 		waitForSlaveUpdates(replicatedSlaveFutures);
 		BookStoreResult result = new BookStoreResult(null, snapshotId);
 		return result;
@@ -128,16 +132,31 @@ public class MasterCertainBookStore extends ReadOnlyCertainBookStore
 	public synchronized BookStoreResult buyBooks(Set<BookCopy> booksToBuy) throws BookStoreException {
 		ReplicationRequest request = new ReplicationRequest(booksToBuy, BookStoreMessageTag.BUYBOOKS);
 		List<Future<ReplicationResult>> replicatedSlaveFutures = replicator.replicate(request);
-		bookStore.buyBooks(booksToBuy); // If this fails it will throw an
-										// exception
+		try {
+			bookStore.buyBooks(booksToBuy); // If this fails it will throw an
+											// exception
+		} catch (BookStoreException ex) {
+			// the books that could not be bought count as sale misses
+			publishBooksInStore(getISBNs(booksToBuy));
+			throw ex;
+		}
 		snapshotId++;
+		publishBooks(getISBNs(booksToBuy));
 		waitForSlaveUpdates(replicatedSlaveFutures);
 		BookStoreResult result = new BookStoreResult(null, snapshotId);
 		return result;
 	}
 
 	public synchronized BookStoreResult rateBooks(Set<BookRating> bookRating) throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		ReplicationRequest request = new ReplicationRequest(bookRating, BookStoreMessageTag.RATEBOOKS);
+		List<Future<ReplicationResult>> replicatedSlaveFutures = replicator.replicate(request);
+		bookStore.rateBooks(bookRating); // If this fails it will throw an
+										// exception
+		snapshotId++;
+		publishBooks(getISBNs(bookRating));
+		waitForSlaveUpdates(replicatedSlaveFutures);
+		BookStoreResult result = new BookStoreResult(null, snapshotId);
+		return result;
 	}
 
 	public synchronized BookStoreResult removeAllBooks() throws BookStoreException {
@@ -146,6 +165,7 @@ public class MasterCertainBookStore extends ReadOnlyCertainBookStore
 		bookStore.removeAllBooks(); // If this fails it will throw an
 									// exception
 		snapshotId++;
+		catalog.publishRemoveAll(snapshotId);
 		waitForSlaveUpdates(replicatedSlaveFutures);
 		BookStoreResult result = new BookStoreResult(null, snapshotId);
 		return result;
@@ -157,6 +177,20 @@ public class MasterCertainBookStore extends ReadOnlyCertainBookStore
 		bookStore.removeBooks(isbnSet); // If this fails it will throw an
 										// exception
 		snapshotId++;
+		catalog.publish(new ArrayList<StockBook>(), isbnSet, snapshotId);
+		waitForSlaveUpdates(replicatedSlaveFutures);
+		BookStoreResult result = new BookStoreResult(null, snapshotId);
+		return result;
+	}
+
+	public synchronized BookStoreResult executeBatch(List<BookStoreOperation> operations) throws BookStoreException {
+		// the whole batch is one replication round and one snapshot
+		ReplicationRequest request = new ReplicationRequest(operations);
+		List<Future<ReplicationResult>> replicatedSlaveFutures = replicator.replicate(request);
+		bookStore.executeBatch(operations); // If this fails it will throw an
+											// exception and change nothing
+		snapshotId++;
+		publishBatch(operations);
 		waitForSlaveUpdates(replicatedSlaveFutures);
 		BookStoreResult result = new BookStoreResult(null, snapshotId);
 		return result;
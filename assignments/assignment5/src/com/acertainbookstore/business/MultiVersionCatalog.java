@@ -0,0 +1,398 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.acertainbookstore.utils.DenseIntSet;
+import com.acertainbookstore.utils.IntIntHashMap;
+
+/**
+ * MultiVersionCatalog keeps the versions of the books of a store, so that
+ * readers can read a consistent snapshot of the catalog without taking any
+ * locks while a writer keeps updating it.
+ *
+ * Every book has a chain of versions, newest first. A write creates new
+ * versions of the books it changed and then publishes a new snapshot, which
+ * sees every version up to its own. A reader pins the current snapshot, reads
+ * it and releases it again. Versions that are superseded are unlinked once no
+ * pinned snapshot can see them anymore, and are left to the garbage
+ * collector.
+ *
+ * The catalog also keeps the ISBNs of the books that may be in demand (have
+ * sale misses) in some live snapshot, so that the books in demand are found
+ * without scanning the catalog. An ISBN only leaves this set once no live
+ * snapshot can see the book in demand anymore.
+ *
+ * The versions of the books are also kept in RATING_ORDER, so that the top
+ * rated books are read in order without scanning the catalog. A version
+ * leaves this index when it is unlinked from its chain, so a reader only
+ * skips the versions its snapshot does not see.
+ *
+ * Every snapshot also has the ISBNs of its editor picks, so that they are
+ * sampled without scanning the catalog. The writer keeps the current picks
+ * and only copies them into the snapshot it publishes when a write changed
+ * them, otherwise the snapshot shares the picks of the one before.
+ *
+ * There must only be one writer at a time, readers may be many.
+ *
+ */
+public class MultiVersionCatalog {
+
+	/**
+	 * Orders books by their average rating, highest first and then by ISBN,
+	 * like the top rated books of the CertainBookStore.
+	 */
+	public static final Comparator<StockBook> RATING_ORDER = new Comparator<StockBook>() {
+		public int compare(StockBook a, StockBook b) {
+			int byRating = Float.compare(b.getAverageRating(),
+					a.getAverageRating());
+			return byRating != 0 ? byRating : Integer.compare(a.getISBN(),
+					b.getISBN());
+		}
+	};
+
+	/**
+	 * Orders the versions of books in RATING_ORDER of their books, and the
+	 * versions of a book with the same rating newest first.
+	 */
+	private static final Comparator<Version> VERSION_RATING_ORDER = new Comparator<Version>() {
+		public int compare(Version a, Version b) {
+			int byRating = RATING_ORDER.compare(a.book, b.book);
+			return byRating != 0 ? byRating : Long.compare(b.version,
+					a.version);
+		}
+	};
+
+	/**
+	 * A version of a book, a null book marks that the book was removed.
+	 */
+	private static final class Version {
+		private final int ISBN;
+		private final long version;
+		private final StockBook book;
+		private volatile Version previous;
+
+		private Version(int ISBN, long version, StockBook book,
+				Version previous) {
+			this.ISBN = ISBN;
+			this.version = version;
+			this.book = book;
+			this.previous = previous;
+		}
+	}
+
+	/**
+	 * A snapshot of the catalog, which must be released once the reader is
+	 * done with it.
+	 */
+	public final class Snapshot {
+		private final long version;
+		private final long snapshotId;
+		private final int[] picks; // ISBNs of the editor picks, never changed
+		// number of readers, -1 once the snapshot is retired
+		private final AtomicInteger readers = new AtomicInteger();
+
+		private Snapshot(long version, long snapshotId, int[] picks) {
+			this.version = version;
+			this.snapshotId = snapshotId;
+			this.picks = picks;
+		}
+
+		public long getSnapshotId() {
+			return snapshotId;
+		}
+
+		/**
+		 * Returns the book as it was in this snapshot, or null if the book was
+		 * not in the store.
+		 *
+		 * @param ISBN
+		 * @return
+		 */
+		public StockBook getBook(int ISBN) {
+			return visible(chains.get(ISBN));
+		}
+
+		/**
+		 * Returns all the books that were in the store in this snapshot.
+		 *
+		 * @return
+		 */
+		public List<StockBook> getBooks() {
+			List<StockBook> listBooks = new ArrayList<StockBook>();
+			for (Version head : chains.values()) {
+				StockBook book = visible(head);
+				if (book != null) {
+					listBooks.add(book);
+				}
+			}
+			return listBooks;
+		}
+
+		/**
+		 * Returns the numBooks top rated books of this snapshot in
+		 * RATING_ORDER, or all of them if there are fewer. The rating index
+		 * is read in order, skipping the versions this snapshot does not
+		 * see, so it takes time proportional to numBooks and the versions not
+		 * yet unlinked.
+		 *
+		 * @param numBooks
+		 * @return
+		 */
+		public List<StockBook> getTopRatedBooks(int numBooks) {
+			List<StockBook> listBooks = new ArrayList<StockBook>();
+			Iterator<Version> it = byRating.iterator();
+			while (listBooks.size() < numBooks && it.hasNext()) {
+				Version v = it.next();
+				if (v.version <= version
+						&& visible(chains.get(v.ISBN)) == v.book) {
+					listBooks.add(v.book);
+				}
+			}
+			return listBooks;
+		}
+
+		/**
+		 * Returns numBooks editor picks of this snapshot chosen at random, or
+		 * all of them if there are not that many. This is a partial
+		 * Fisher-Yates shuffle of the picks, like the editor picks of the
+		 * BookInventory, so it takes time proportional to numBooks. The
+		 * picks are shared by the readers, so the swaps are kept aside.
+		 *
+		 * @param numBooks
+		 * @param rand
+		 * @return
+		 */
+		public List<StockBook> getEditorPicks(int numBooks, Random rand) {
+			int range = picks.length;
+			if (range <= numBooks) {
+				List<StockBook> listBooks = new ArrayList<StockBook>(range);
+				for (int ISBN : picks) {
+					listBooks.add(getBook(ISBN));
+				}
+				return listBooks;
+			}
+
+			List<StockBook> listBooks = new ArrayList<StockBook>(numBooks);
+			IntIntHashMap swapped = new IntIntHashMap(numBooks * 2);
+			for (int i = 0; i < numBooks; i++) {
+				int j = i + rand.nextInt(range - i);
+				int atJ = swapped.get(j);
+				int atI = swapped.get(i);
+				swapped.put(j, atI == IntIntHashMap.NO_VALUE ? i : atI);
+				listBooks.add(getBook(picks[atJ == IntIntHashMap.NO_VALUE ? j
+						: atJ]));
+			}
+			return listBooks;
+		}
+
+		/**
+		 * Returns the books that were in demand in this snapshot.
+		 *
+		 * @return
+		 */
+		public List<StockBook> getBooksInDemand() {
+			List<StockBook> listBooks = new ArrayList<StockBook>();
+			for (Integer ISBN : inDemand) {
+				StockBook book = visible(chains.get(ISBN));
+				if (book != null && book.getSaleMisses() > 0) {
+					listBooks.add(book);
+				}
+			}
+			return listBooks;
+		}
+
+		public void release() {
+			readers.decrementAndGet();
+		}
+
+		private StockBook visible(Version head) {
+			Version v = head;
+			while (v != null && v.version > version) {
+				v = v.previous;
+			}
+			return v == null ? null : v.book;
+		}
+
+		private boolean tryPin() {
+			int n;
+			do {
+				n = readers.get();
+				if (n < 0) {
+					return false;
+				}
+			} while (!readers.compareAndSet(n, n + 1));
+			return true;
+		}
+
+		private boolean tryRetire() {
+			return readers.compareAndSet(0, -1);
+		}
+	}
+
+	private final ConcurrentHashMap<Integer, Version> chains;
+	private final Set<Integer> inDemand;
+	private final ConcurrentSkipListSet<Version> byRating;
+	private volatile Snapshot current;
+
+	// only touched by the writer
+	private final Queue<Snapshot> snapshots;
+	private final Queue<Version> superseding;
+	private final Queue<Version> leavingDemand;
+	private final DenseIntSet picks; // ISBNs of the current editor picks
+	private boolean picksChanged = false; // since the current snapshot
+
+	public MultiVersionCatalog() {
+		chains = new ConcurrentHashMap<Integer, Version>();
+		inDemand = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+		byRating = new ConcurrentSkipListSet<Version>(VERSION_RATING_ORDER);
+		snapshots = new ArrayDeque<Snapshot>();
+		superseding = new ArrayDeque<Version>();
+		leavingDemand = new ArrayDeque<Version>();
+		picks = new DenseIntSet();
+		current = new Snapshot(0, 0, new int[0]);
+		snapshots.add(current);
+	}
+
+	/**
+	 * Pins the current snapshot. The snapshot cannot be retired until it is
+	 * released again.
+	 *
+	 * @return
+	 */
+	public Snapshot pin() {
+		while (true) {
+			Snapshot snapshot = current;
+			if (snapshot.tryPin()) {
+				return snapshot;
+			}
+		}
+	}
+
+	/**
+	 * Publishes a new snapshot in which the books are updated (or added) and
+	 * the books with the removed ISBNs are gone. Readers that pinned an older
+	 * snapshot keep seeing the books as they were.
+	 *
+	 * @param books
+	 * @param removed
+	 * @param snapshotId
+	 */
+	public void publish(Collection<StockBook> books,
+			Collection<Integer> removed, long snapshotId) {
+		long version = current.version + 1;
+		for (StockBook book : books) {
+			addVersion(book.getISBN(), version, book);
+		}
+		for (Integer ISBN : removed) {
+			addVersion(ISBN, version, null);
+		}
+
+		int[] snapshotPicks = current.picks;
+		if (picksChanged) {
+			snapshotPicks = new int[picks.size()];
+			for (int i = 0; i < snapshotPicks.length; i++) {
+				snapshotPicks[i] = picks.get(i);
+			}
+			picksChanged = false;
+		}
+
+		Snapshot snapshot = new Snapshot(version, snapshotId, snapshotPicks);
+		snapshots.add(snapshot);
+		current = snapshot;
+		reclaim();
+	}
+
+	/**
+	 * Publishes a new snapshot in which all the books are removed.
+	 *
+	 * @param snapshotId
+	 */
+	public void publishRemoveAll(long snapshotId) {
+		publish(new ArrayList<StockBook>(), new ArrayList<Integer>(
+				chains.keySet()), snapshotId);
+	}
+
+	private void addVersion(int ISBN, long version, StockBook book) {
+		Version previous = chains.get(ISBN);
+		if (previous == null && book == null) {
+			return;
+		}
+		Version v = new Version(ISBN, version, book, previous);
+		if (isEditorPick(v)) {
+			picksChanged |= picks.add(ISBN);
+		} else {
+			picksChanged |= picks.remove(ISBN);
+		}
+		if (book != null) {
+			byRating.add(v);
+		}
+		if (isInDemand(v)) {
+			inDemand.add(ISBN);
+		} else if (inDemand.contains(ISBN)) {
+			leavingDemand.add(v);
+		}
+		chains.put(ISBN, v);
+		if (previous != null) {
+			superseding.add(v);
+		}
+	}
+
+	private static boolean isEditorPick(Version v) {
+		return v.book != null && v.book.isEditorPick();
+	}
+
+	private static boolean isInDemand(Version v) {
+		return v != null && v.book != null && v.book.getSaleMisses() > 0;
+	}
+
+	/**
+	 * Retires the snapshots that are older than the current one and no
+	 * longer pinned, and unlinks the versions that none of the remaining
+	 * snapshots can see.
+	 */
+	private void reclaim() {
+		Snapshot oldest = snapshots.peek();
+		while (oldest != current && oldest.tryRetire()) {
+			snapshots.poll();
+			oldest = snapshots.peek();
+		}
+
+		// every live snapshot sees v (or a newer version), so not the versions
+		// it superseded
+		Version v = superseding.peek();
+		while (v != null && v.version <= oldest.version) {
+			superseding.poll();
+			if (v.previous.book != null) {
+				byRating.remove(v.previous);
+			}
+			v.previous = null;
+			if (v.book == null) {
+				chains.remove(v.ISBN, v);
+			}
+			v = superseding.peek();
+		}
+
+		// every live snapshot sees v (or a newer version), so the book is only
+		// in demand if its newest version is
+		v = leavingDemand.peek();
+		while (v != null && v.version <= oldest.version) {
+			leavingDemand.poll();
+			if (!isInDemand(chains.get(v.ISBN))) {
+				inDemand.remove(v.ISBN);
+			}
+			v = leavingDemand.peek();
+		}
+	}
+}
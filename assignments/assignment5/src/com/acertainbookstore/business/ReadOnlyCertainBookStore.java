@@ -1,55 +1,234 @@
 package com.acertainbookstore.business;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import com.acertainbookstore.interfaces.ReplicatedReadOnlyBookStore;
 import com.acertainbookstore.interfaces.ReplicatedReadOnlyStockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
 import com.acertainbookstore.utils.BookStoreResult;
+import com.acertainbookstore.utils.BookStoreUtility;
 
+/**
+ * ReadOnlyCertainBookStore serves the reads of the master and the slaves.
+ *
+ * Writes go to the wrapped CertainBookStore and then publish the books they
+ * changed in the MultiVersionCatalog, tagged with the snapshotId. Reads pin
+ * the current snapshot of the catalog and do not take any locks, so they
+ * never hold up a write and always see the books as of one snapshotId.
+ *
+ */
 public class ReadOnlyCertainBookStore implements ReplicatedReadOnlyBookStore, ReplicatedReadOnlyStockManager{
 	protected CertainBookStore bookStore = null;
-	protected long snapshotId = 0;
+	protected MultiVersionCatalog catalog = new MultiVersionCatalog();
+	protected long snapshotId = 0; // only used by the writer
 
 	public ReadOnlyCertainBookStore() {
 		bookStore = new CertainBookStore();
 	}
-	
-	public synchronized BookStoreResult getBooks() throws BookStoreException {
-		BookStoreResult result = new BookStoreResult(bookStore.getBooks(),
-				snapshotId);
-		return result;
+
+	/**
+	 * Publishes the books with the given ISBNs as they are now in the wrapped
+	 * store. Must be called by the writer after every change of the books.
+	 *
+	 * @param isbnSet
+	 * @throws BookStoreException
+	 */
+	protected void publishBooks(Set<Integer> isbnSet) throws BookStoreException {
+		catalog.publish(bookStore.getBooksByISBN(isbnSet),
+				Collections.<Integer> emptySet(), snapshotId);
+	}
+
+	/**
+	 * Publishes those of the books that are in the wrapped store. Used after a
+	 * failed write, which may have changed some of the books anyway.
+	 *
+	 * @param isbnSet
+	 */
+	protected void publishBooksInStore(Set<Integer> isbnSet) {
+		List<StockBook> books = new ArrayList<StockBook>();
+		for (Integer ISBN : isbnSet) {
+			try {
+				books.addAll(bookStore.getBooksByISBN(Collections
+						.singleton(ISBN)));
+			} catch (BookStoreException ex) {
+				// the book is not in the store, so it was not changed
+			}
+		}
+		catalog.publish(books, Collections.<Integer> emptySet(), snapshotId);
+	}
+
+	/**
+	 * Publishes the books changed by the batch as they are now in the wrapped
+	 * store, and removes those that are no longer in it. Must be called by the
+	 * writer after a batch succeeded.
+	 *
+	 * @param operations
+	 */
+	protected void publishBatch(List<BookStoreOperation> operations) {
+		Set<Integer> isbnSet = new HashSet<Integer>();
+		for (BookStoreOperation operation : operations) {
+			if (operation.getMessageType() == BookStoreMessageTag.REMOVEALLBOOKS) {
+				MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+				try {
+					for (StockBook book : snapshot.getBooks()) {
+						isbnSet.add(book.getISBN());
+					}
+				} finally {
+					snapshot.release();
+				}
+			}
+			isbnSet.addAll(operation.getISBNs());
+		}
+
+		List<StockBook> books = new ArrayList<StockBook>();
+		List<Integer> removed = new ArrayList<Integer>();
+		for (Integer ISBN : isbnSet) {
+			try {
+				books.addAll(bookStore.getBooksByISBN(Collections
+						.singleton(ISBN)));
+			} catch (BookStoreException ex) {
+				removed.add(ISBN);
+			}
+		}
+		catalog.publish(books, removed, snapshotId);
+	}
+
+	/**
+	 * Returns the ISBNs of the books, copies or editor picks of a write.
+	 *
+	 * @param dataSet
+	 * @return
+	 */
+	protected static Set<Integer> getISBNs(Set<?> dataSet) {
+		return BookStoreOperation.getISBNs(dataSet);
+	}
+
+	/**
+	 * Returns the books with the given ISBNs in the snapshot, or throws if one
+	 * of them is invalid or not in the store.
+	 */
+	private List<StockBook> getBooks(MultiVersionCatalog.Snapshot snapshot,
+			Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		List<StockBook> listBooks = new ArrayList<StockBook>();
+		for (Integer ISBN : isbnSet) {
+			if (BookStoreUtility.isInvalidISBN(ISBN))
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.INVALID);
+			StockBook book = snapshot.getBook(ISBN);
+			if (book == null)
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN
+						+ BookStoreConstants.NOT_AVAILABLE);
+			listBooks.add(book);
+		}
+		return listBooks;
 	}
 
-	public synchronized BookStoreResult getBooksInDemand()
+	private static Book immutableBook(StockBook book) {
+		return new ImmutableBook(book.getISBN(), book.getTitle(),
+				book.getAuthor(), book.getPrice());
+	}
+
+	public BookStoreResult getBooks() throws BookStoreException {
+		MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+		try {
+			return new BookStoreResult(snapshot.getBooks(),
+					snapshot.getSnapshotId());
+		} finally {
+			snapshot.release();
+		}
+	}
+
+	public BookStoreResult getBooksInDemand()
 			throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+		try {
+			return new BookStoreResult(snapshot.getBooksInDemand(),
+					snapshot.getSnapshotId());
+		} finally {
+			snapshot.release();
+		}
 	}
 
-	public synchronized BookStoreResult getBooks(Set<Integer> ISBNList)
+	public BookStoreResult getBooks(Set<Integer> ISBNList)
 			throws BookStoreException {
-		BookStoreResult result = new BookStoreResult(
-				bookStore.getBooks(ISBNList), snapshotId);
-		return result;
+		MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+		try {
+			List<Book> listBooks = new ArrayList<Book>();
+			for (StockBook book : getBooks(snapshot, ISBNList)) {
+				listBooks.add(immutableBook(book));
+			}
+			return new BookStoreResult(listBooks, snapshot.getSnapshotId());
+		} finally {
+			snapshot.release();
+		}
 	}
 
-	public synchronized BookStoreResult getTopRatedBooks(int numBooks)
+	public BookStoreResult getTopRatedBooks(int numBooks)
 			throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks
+					+ ", but it must be positive");
+		}
+
+		MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+		try {
+			List<StockBook> topRated = snapshot.getTopRatedBooks(numBooks);
+			if (topRated.size() < numBooks) {
+				throw new BookStoreException("numBooks = " + numBooks
+						+ ", but it must be less than or equal to number of books in store");
+			}
+
+			List<Book> listBooks = new ArrayList<Book>();
+			for (StockBook book : topRated) {
+				listBooks.add(immutableBook(book));
+			}
+			return new BookStoreResult(listBooks, snapshot.getSnapshotId());
+		} finally {
+			snapshot.release();
+		}
 	}
 
-	public synchronized BookStoreResult getEditorPicks(int numBooks)
+	public BookStoreResult getEditorPicks(int numBooks)
 			throws BookStoreException {
-		BookStoreResult result = new BookStoreResult(
-				bookStore.getEditorPicks(numBooks), snapshotId);
-		return result;
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks
+					+ ", but it must be positive");
+		}
+
+		MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+		try {
+			List<Book> listEditorPicks = new ArrayList<Book>();
+			for (StockBook book : snapshot.getEditorPicks(numBooks,
+					new Random())) {
+				listEditorPicks.add(immutableBook(book));
+			}
+			return new BookStoreResult(listEditorPicks,
+					snapshot.getSnapshotId());
+		} finally {
+			snapshot.release();
+		}
 	}
 
-	public synchronized BookStoreResult getBooksByISBN(Set<Integer> isbns)
+	public BookStoreResult getBooksByISBN(Set<Integer> isbns)
 			throws BookStoreException {
-		BookStoreResult result = new BookStoreResult(
-				bookStore.getBooksByISBN(isbns), snapshotId);
-		return result;
+		MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+		try {
+			return new BookStoreResult(getBooks(snapshot, isbns),
+					snapshot.getSnapshotId());
+		} finally {
+			snapshot.release();
+		}
 	}
 
 }
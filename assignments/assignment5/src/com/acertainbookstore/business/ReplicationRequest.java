@@ -1,14 +1,17 @@
 package com.acertainbookstore.business;
 
+import java.util.List;
 import java.util.Set;
 
 import com.acertainbookstore.utils.BookStoreMessageTag;
 
 /**
- * ReplicationRequest represents a replication request
+ * ReplicationRequest represents a replication request, either of one update
+ * or of a batch of updates, which is replicated as one unit
  */
 public class ReplicationRequest {
 	private Set<?> dataSet;
+	private List<BookStoreOperation> operations;
 	private BookStoreMessageTag messageType;
 
 	public ReplicationRequest(Set<?> dataSet, BookStoreMessageTag messageType) {
@@ -16,6 +19,11 @@ public class ReplicationRequest {
 		this.setMessageType(messageType);
 	}
 
+	public ReplicationRequest(List<BookStoreOperation> operations) {
+		this.setOperations(operations);
+		this.setMessageType(BookStoreMessageTag.EXECUTEBATCH);
+	}
+
 	public Set<?> getDataSet() {
 		return dataSet;
 	}
@@ -24,6 +32,14 @@ public class ReplicationRequest {
 		this.dataSet = dataSet;
 	}
 
+	public List<BookStoreOperation> getOperations() {
+		return operations;
+	}
+
+	public void setOperations(List<BookStoreOperation> operations) {
+		this.operations = operations;
+	}
+
 	public BookStoreMessageTag getMessageType() {
 		return messageType;
 	}
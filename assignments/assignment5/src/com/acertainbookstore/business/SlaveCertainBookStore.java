@@ -1,5 +1,6 @@
 package com.acertainbookstore.business;
 
+import java.util.ArrayList;
 import java.util.Set;
 
 import com.acertainbookstore.interfaces.ReplicatedReadOnlyBookStore;
@@ -14,7 +15,8 @@ import com.acertainbookstore.business.BookEditorPick;
  * supports the ReplicatedReadOnlyBookStore and ReplicatedReadOnlyStockManager
  * interfaces
  * 
- * This class must also handle replication requests sent by the master
+ * This class must also handle replication requests sent by the master. Each
+ * replicated write that succeeds counts as a new snapshot, like on the master.
  * 
  */
 public class SlaveCertainBookStore extends ReadOnlyCertainBookStore implements ReplicatedReadOnlyBookStore,
@@ -32,30 +34,60 @@ public class SlaveCertainBookStore extends ReadOnlyCertainBookStore implements R
             case REMOVEBOOKS:
                 Set<Integer> bookSet = (Set<Integer>) req.getDataSet();
                 bookStore.removeBooks(bookSet);
+                snapshotId++;
+                catalog.publish(new ArrayList<StockBook>(), bookSet, snapshotId);
                 break;
 
             case REMOVEALLBOOKS:
                 bookStore.removeAllBooks();
+                snapshotId++;
+                catalog.publishRemoveAll(snapshotId);
                 break;
 
             case ADDBOOKS:
                 Set<StockBook> newBooks = (Set<StockBook>) req.getDataSet();
                 bookStore.addBooks(newBooks);
+                snapshotId++;
+                publishBooks(getISBNs(newBooks));
                 break;
 
             case ADDCOPIES:
                 Set<BookCopy> listBookCopies = (Set<BookCopy>) req.getDataSet();
                 bookStore.addCopies(listBookCopies);
+                snapshotId++;
+                publishBooks(getISBNs(listBookCopies));
                 break;
 
             case UPDATEEDITORPICKS:
                 Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) req.getDataSet();
                 bookStore.updateEditorPicks(mapEditorPicksValues);
+                snapshotId++;
+                publishBooks(getISBNs(mapEditorPicksValues));
                 break;
 
             case BUYBOOKS:
                 Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) req.getDataSet();
-                bookStore.buyBooks(bookCopiesToBuy);
+                try {
+                    bookStore.buyBooks(bookCopiesToBuy);
+                } catch (BookStoreException ex) {
+                    publishBooksInStore(getISBNs(bookCopiesToBuy));
+                    throw ex;
+                }
+                snapshotId++;
+                publishBooks(getISBNs(bookCopiesToBuy));
+                break;
+
+            case RATEBOOKS:
+                Set<BookRating> bookRating = (Set<BookRating>) req.getDataSet();
+                bookStore.rateBooks(bookRating);
+                snapshotId++;
+                publishBooks(getISBNs(bookRating));
+                break;
+
+            case EXECUTEBATCH:
+                bookStore.executeBatch(req.getOperations());
+                snapshotId++;
+                publishBatch(req.getOperations());
                 break;
 
             default:
@@ -0,0 +1,263 @@
+package com.acertainbookstore.business.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.MultiVersionCatalog;
+import com.acertainbookstore.business.StockBook;
+
+public class MultiVersionCatalogTest {
+
+	private static final int TEST_ISBN = 3044560;
+	private static final int NUM_BOOKS = 3;
+	private MultiVersionCatalog catalog;
+
+	private static StockBook book(int ISBN, int numCopies) {
+		return new ImmutableStockBook(ISBN, "Harry Potter and JUnit",
+				"JK Unit", (float) 10, numCopies, 0, 0, 0, false);
+	}
+
+	private static List<StockBook> books(int numCopies) {
+		List<StockBook> books = new ArrayList<StockBook>();
+		for (int i = 0; i < NUM_BOOKS; i++) {
+			books.add(book(TEST_ISBN + i, numCopies));
+		}
+		return books;
+	}
+
+	@Before
+	public void setUp() {
+		catalog = new MultiVersionCatalog();
+		catalog.publish(books(0), Collections.<Integer> emptySet(), 1);
+	}
+
+	/**
+	 * Tests that a pinned snapshot keeps seeing the books as they were when
+	 * it was pinned
+	 */
+	@Test
+	public void testPinnedSnapshotIsStable() {
+		MultiVersionCatalog.Snapshot before = catalog.pin();
+
+		catalog.publish(books(1), Collections.<Integer> emptySet(), 2);
+		catalog.publish(Collections.<StockBook> emptyList(),
+				Collections.singleton(TEST_ISBN), 3);
+
+		MultiVersionCatalog.Snapshot after = catalog.pin();
+
+		assertEquals(1, before.getSnapshotId());
+		assertEquals(NUM_BOOKS, before.getBooks().size());
+		assertEquals(0, before.getBook(TEST_ISBN).getNumCopies());
+
+		assertEquals(3, after.getSnapshotId());
+		assertEquals(NUM_BOOKS - 1, after.getBooks().size());
+		assertNull(after.getBook(TEST_ISBN));
+		assertEquals(1, after.getBook(TEST_ISBN + 1).getNumCopies());
+
+		before.release();
+		after.release();
+	}
+
+	/**
+	 * Tests that versions are still readable after other snapshots were
+	 * reclaimed, and that books can be added again after being removed
+	 */
+	@Test
+	public void testReclaim() {
+		for (int i = 1; i <= 100; i++) {
+			MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+			assertEquals(i - 1, snapshot.getBook(TEST_ISBN).getNumCopies());
+			snapshot.release();
+			catalog.publish(books(i), Collections.<Integer> emptySet(), i + 1);
+		}
+
+		catalog.publishRemoveAll(102);
+		MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+		assertTrue(snapshot.getBooks().isEmpty());
+		snapshot.release();
+
+		catalog.publish(books(7), Collections.<Integer> emptySet(), 103);
+		snapshot = catalog.pin();
+		assertEquals(NUM_BOOKS, snapshot.getBooks().size());
+		assertEquals(7, snapshot.getBook(TEST_ISBN).getNumCopies());
+		snapshot.release();
+	}
+
+	/**
+	 * Tests that readers always see all the books of a write, while the
+	 * writer keeps publishing
+	 */
+	@Test
+	public void testConcurrentReads() throws InterruptedException {
+		final int rounds = 10000;
+		final boolean[] consistent = { true };
+
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				for (int i = 1; i <= rounds; i++) {
+					catalog.publish(books(i), Collections.<Integer> emptySet(),
+							i + 1);
+				}
+			}
+		});
+
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				for (int i = 0; i < rounds; i++) {
+					MultiVersionCatalog.Snapshot snapshot = catalog.pin();
+					List<StockBook> books = snapshot.getBooks();
+					if (books.size() != NUM_BOOKS) {
+						consistent[0] = false;
+					}
+					for (StockBook book : books) {
+						if (book.getNumCopies() != snapshot.getSnapshotId() - 1) {
+							consistent[0] = false;
+						}
+					}
+					snapshot.release();
+				}
+			}
+		});
+
+		writer.start();
+		reader.start();
+		writer.join();
+		reader.join();
+
+		assertTrue(consistent[0]);
+	}
+
+	/**
+	 * Tests that a pinned snapshot keeps seeing the books that were in demand
+	 * when it was pinned, while newer snapshots do not
+	 */
+	@Test
+	public void testBooksInDemand() {
+		StockBook missed = new ImmutableStockBook(TEST_ISBN, "Harry Potter and JUnit",
+				"JK Unit", (float) 10, 0, 1, 0, 0, false);
+		catalog.publish(Collections.singletonList(missed),
+				Collections.<Integer> emptySet(), 2);
+
+		MultiVersionCatalog.Snapshot before = catalog.pin();
+
+		// restocking resets the sale misses
+		catalog.publish(Collections.singletonList(book(TEST_ISBN, 1)),
+				Collections.<Integer> emptySet(), 3);
+		catalog.publish(Collections.<StockBook> emptyList(),
+				Collections.<Integer> emptySet(), 4);
+
+		MultiVersionCatalog.Snapshot after = catalog.pin();
+
+		assertEquals(1, before.getBooksInDemand().size());
+		assertEquals(TEST_ISBN, before.getBooksInDemand().get(0).getISBN());
+		assertTrue(after.getBooksInDemand().isEmpty());
+
+		before.release();
+		after.release();
+
+		catalog.publish(Collections.singletonList(missed),
+				Collections.<Integer> emptySet(), 5);
+		catalog.publish(Collections.<StockBook> emptyList(),
+				Collections.singleton(TEST_ISBN), 6);
+
+		MultiVersionCatalog.Snapshot removed = catalog.pin();
+		assertTrue(removed.getBooksInDemand().isEmpty());
+		removed.release();
+	}
+
+	/**
+	 * Tests that the editor picks are sampled without repeats from the picks
+	 * of the snapshot, which keeps them while newer snapshots change them
+	 */
+	@Test
+	public void testEditorPicks() {
+		List<StockBook> picked = new ArrayList<StockBook>();
+		for (int i = 0; i < 10; i++) {
+			picked.add(new ImmutableStockBook(TEST_ISBN + i,
+					"Harry Potter and JUnit", "JK Unit", (float) 10, 1, 0, 0,
+					0, i % 2 == 0));
+		}
+		catalog.publish(picked, Collections.<Integer> emptySet(), 2);
+
+		MultiVersionCatalog.Snapshot before = catalog.pin();
+		catalog.publish(Collections.singletonList(book(TEST_ISBN, 1)),
+				Collections.singleton(TEST_ISBN + 2), 3);
+		MultiVersionCatalog.Snapshot after = catalog.pin();
+
+		Random rand = new Random();
+		for (int round = 0; round < 100; round++) {
+			Set<Integer> ISBNs = new HashSet<Integer>();
+			for (StockBook book : before.getEditorPicks(3, rand)) {
+				assertTrue(book.isEditorPick());
+				assertTrue(ISBNs.add(book.getISBN()));
+			}
+			assertEquals(3, ISBNs.size());
+		}
+		assertEquals(5, before.getEditorPicks(10, rand).size());
+
+		List<StockBook> picks = after.getEditorPicks(10, rand);
+		assertEquals(3, picks.size());
+		for (StockBook book : picks) {
+			assertTrue(book.isEditorPick());
+			assertTrue(book.getISBN() != TEST_ISBN
+					&& book.getISBN() != TEST_ISBN + 2);
+		}
+
+		before.release();
+		after.release();
+	}
+
+	/**
+	 * Tests that the top rated books come in RATING_ORDER as of the
+	 * snapshot, while newer snapshots rate them differently
+	 */
+	@Test
+	public void testTopRatedBooks() {
+		List<StockBook> rated = new ArrayList<StockBook>();
+		for (int i = 0; i < NUM_BOOKS; i++) {
+			rated.add(new ImmutableStockBook(TEST_ISBN + i,
+					"Harry Potter and JUnit", "JK Unit", (float) 10, 1, 0, 1,
+					i + 1, false));
+		}
+		catalog.publish(rated, Collections.<Integer> emptySet(), 2);
+
+		MultiVersionCatalog.Snapshot before = catalog.pin();
+		// the lowest rated book becomes the highest rated, the highest is
+		// removed
+		catalog.publish(Collections.<StockBook> singletonList(new ImmutableStockBook(
+				TEST_ISBN, "Harry Potter and JUnit", "JK Unit", (float) 10, 1,
+				0, 1, 5, false)), Collections.singleton(TEST_ISBN + 2), 3);
+		MultiVersionCatalog.Snapshot after = catalog.pin();
+
+		List<StockBook> top = before.getTopRatedBooks(2);
+		assertEquals(2, top.size());
+		assertEquals(TEST_ISBN + 2, top.get(0).getISBN());
+		assertEquals(TEST_ISBN + 1, top.get(1).getISBN());
+		assertEquals(NUM_BOOKS, before.getTopRatedBooks(10).size());
+
+		top = after.getTopRatedBooks(10);
+		assertEquals(2, top.size());
+		assertEquals(TEST_ISBN, top.get(0).getISBN());
+		assertEquals(TEST_ISBN + 1, top.get(1).getISBN());
+
+		before.release();
+		after.release();
+
+		// once the old versions are unlinked only the current ones are left
+		catalog.publish(Collections.<StockBook> emptyList(),
+				Collections.<Integer> emptySet(), 4);
+		MultiVersionCatalog.Snapshot last = catalog.pin();
+		assertEquals(top, last.getTopRatedBooks(10));
+		last.release();
+	}
+}
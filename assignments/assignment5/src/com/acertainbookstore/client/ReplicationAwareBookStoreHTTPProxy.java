@@ -16,12 +16,13 @@ import java.util.Set;
 import org.eclipse.jetty.client.ContentExchange;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.io.Buffer;
-import org.eclipse.jetty.io.ByteArrayBuffer;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreOperation;
+import com.acertainbookstore.interfaces.BookStoreCodec;
 import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
@@ -43,6 +44,7 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 	private String masterAddress;
 	private String filePath = "proxy.properties";
 	private volatile long snapshotId = 0;
+	private BookStoreCodec codec = BookStoreUtility.getClientCodec();
 
 	public long getSnapshotId() {
 		return snapshotId;
@@ -106,8 +108,9 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 			String replicaAddress = (BookStoreUtility.isWriteOperation(tag)) ? getMasterServerAddress() : getReplicaAddress();
 			String urlString = replicaAddress + "/" + tag + arg;
 
-            ContentExchange exchangeTry = new ContentExchange();
+            ContentExchange exchangeTry = new ContentExchange(true);
             exchangeTry.setMethod(exchange.getMethod());
+            BookStoreUtility.setCodec(exchangeTry, codec);
             exchangeTry.setRequestContent(exchange.getRequestContent());
 			exchangeTry.setURL(urlString);
 
@@ -154,8 +157,8 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 
 	public void buyBooks(Set<BookCopy> isbnSet) throws BookStoreException {
 
-		String listISBNsxmlString = BookStoreUtility.serializeObjectToXMLString(isbnSet);
-		Buffer requestContent = new ByteArrayBuffer(listISBNsxmlString);
+		Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				isbnSet);
 
 		BookStoreResult result = null;
 
@@ -167,11 +170,27 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 		this.setSnapshotId(result.getSnapshotId());
 	}
 
+	public void executeBatch(List<BookStoreOperation> operations)
+			throws BookStoreException {
+
+		Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				operations);
+
+		BookStoreResult result = null;
+
+		ContentExchange exchange = new ContentExchange();
+		exchange.setMethod("POST");
+		exchange.setRequestContent(requestContent);
+
+		result = sendToAvailableReplica(exchange, BookStoreMessageTag.EXECUTEBATCH, "");
+		this.setSnapshotId(result.getSnapshotId());
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
 
-		String listISBNsxmlString = BookStoreUtility.serializeObjectToXMLString(isbnSet);
-		Buffer requestContent = new ByteArrayBuffer(listISBNsxmlString);
+		Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				isbnSet);
 
 		BookStoreResult result = null;
 		do {
@@ -215,16 +234,40 @@ public class ReplicationAwareBookStoreHTTPProxy implements BookStore {
 		}
 	}
 
-	@Override
 	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
-		// TODO Auto-generated method stub
-		throw new BookStoreException("Not implemented");
+
+		Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				bookRating);
+
+		BookStoreResult result = null;
+
+		ContentExchange exchange = new ContentExchange();
+		exchange.setMethod("POST");
+		exchange.setRequestContent(requestContent);
+
+		result = sendToAvailableReplica(exchange, BookStoreMessageTag.RATEBOOKS, "");
+		this.setSnapshotId(result.getSnapshotId());
 	}
 
-	@Override
+	@SuppressWarnings("unchecked")
 	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
-		// TODO Auto-generated method stub
-		throw new BookStoreException("Not implemented");
+		ContentExchange exchange = new ContentExchange();
+		String urlEncodedNumBooks = null;
+
+		try {
+			urlEncodedNumBooks = URLEncoder.encode(Integer.toString(numBooks), "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new BookStoreException("unsupported encoding of numbooks", ex);
+		}
+
+		BookStoreResult result = null;
+		do {
+			result = sendToAvailableReplica(exchange, BookStoreMessageTag.TOPRATEDBOOKS, "?"
+					+ BookStoreConstants.BOOK_NUM_PARAM + "=" + urlEncodedNumBooks);
+		} while (result.getSnapshotId() < this.getSnapshotId());
+		this.setSnapshotId(result.getSnapshotId());
+
+		return (List<Book>) result.getResultList();
 	}
 
 }
@@ -13,13 +13,16 @@ import java.util.Random;
 
 import org.eclipse.jetty.client.ContentExchange;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.http.HttpHeaders;
 import org.eclipse.jetty.io.Buffer;
 import org.eclipse.jetty.io.ByteArrayBuffer;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreOperation;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreCodec;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
@@ -41,6 +44,7 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 	private String masterAddress;
 	private String filePath = "proxy.properties";
 	private long snapshotId = 0;
+	private BookStoreCodec codec = BookStoreUtility.getClientCodec();
 
 	/**
 	 * Initialize the client object
@@ -121,9 +125,12 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 			String replicaAddress = (BookStoreUtility.isWriteOperation(tag)) ? getMasterServerAddress() : getReplicaAddress();
 			String urlString = replicaAddress + "/" + tag + arg;
 
-            ContentExchange exchangeTry = new ContentExchange();
+            ContentExchange exchangeTry = new ContentExchange(true);
             exchangeTry.setMethod(exchange.getMethod());
+            BookStoreUtility.setCodec(exchangeTry, codec);
             exchangeTry.setRequestContent(exchange.getRequestContent());
+            exchangeTry.setRequestHeader(HttpHeaders.CONTENT_ENCODING, exchange
+                    .getRequestFields().getStringField(HttpHeaders.CONTENT_ENCODING));
 			exchangeTry.setURL(urlString);
 
 			try {
@@ -170,26 +177,40 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 
 		BookStoreResult result = null;
 		
-        String listBooksxmlString = BookStoreUtility
-				.serializeObjectToXMLString(bookSet);
-		Buffer requestContent = new ByteArrayBuffer(listBooksxmlString);
+        Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				bookSet);
 		
         ContentExchange exchange = new ContentExchange();
 		exchange.setMethod("POST");
-		exchange.setRequestContent(requestContent);
+		BookStoreUtility.setRequestContent(exchange, requestContent);
 
         result = sendToAvailableReplica(exchange, BookStoreMessageTag.ADDBOOKS, "");
 		this.setSnapshotId(result.getSnapshotId());
 	}
 
+	public void executeBatch(List<BookStoreOperation> operations)
+			throws BookStoreException {
+
+		Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				operations);
+
+		BookStoreResult result = null;
+
+		ContentExchange exchange = new ContentExchange();
+		exchange.setMethod("POST");
+		exchange.setRequestContent(requestContent);
+
+		result = sendToAvailableReplica(exchange, BookStoreMessageTag.EXECUTEBATCH, "");
+		this.setSnapshotId(result.getSnapshotId());
+	}
+
 	public void addCopies(Set<BookCopy> bookCopiesSet)
 			throws BookStoreException {
 
 		BookStoreResult result = null;
 		
-        String listBookCopiesxmlString = BookStoreUtility
-				.serializeObjectToXMLString(bookCopiesSet);
-		Buffer requestContent = new ByteArrayBuffer(listBookCopiesxmlString);
+        Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				bookCopiesSet);
 
 		ContentExchange exchange = new ContentExchange();
 		exchange.setMethod("POST");
@@ -215,9 +236,8 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 	public void updateEditorPicks(Set<BookEditorPick> editorPicksValues)
 			throws BookStoreException {
 
-		String xmlStringEditorPicksValues = BookStoreUtility
-				.serializeObjectToXMLString(editorPicksValues);
-		Buffer requestContent = new ByteArrayBuffer(xmlStringEditorPicksValues);
+		Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				editorPicksValues);
 
 		BookStoreResult result = null;
 		ContentExchange exchange = new ContentExchange();
@@ -228,9 +248,18 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		this.setSnapshotId(result.getSnapshotId());
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		BookStoreResult result = null;
+
+		do {
+			ContentExchange exchange = new ContentExchange();
+			result = sendToAvailableReplica(exchange, BookStoreMessageTag.GETBOOKSINDEMAND, "");
+
+		} while ( result.getSnapshotId() < this.getSnapshotId() );
+		this.setSnapshotId(result.getSnapshotId());
+		return (List<StockBook>) result.getResultList();
 	}
 
 	public void removeAllBooks() throws BookStoreException {
@@ -251,10 +280,9 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 		BookStoreResult result = null;
 		ContentExchange exchange = new ContentExchange();
 
-		String listBooksxmlString = BookStoreUtility
-				.serializeObjectToXMLString(isbnSet);
+		Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				isbnSet);
 		exchange.setMethod("POST");
-		Buffer requestContent = new ByteArrayBuffer(listBooksxmlString);
 		exchange.setRequestContent(requestContent);
 		result = sendToAvailableReplica(exchange, BookStoreMessageTag.REMOVEBOOKS, "");
 		this.setSnapshotId(result.getSnapshotId());
@@ -271,9 +299,8 @@ public class ReplicationAwareStockManagerHTTPProxy implements StockManager {
 
 			exchange.setMethod("POST");
 
-			String listBooksxmlString = BookStoreUtility
-					.serializeObjectToXMLString(isbns);
-			Buffer requestContent = new ByteArrayBuffer(listBooksxmlString);
+			Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+					isbns);
 			exchange.setRequestContent(requestContent);
 
 			result = sendToAvailableReplica(exchange, BookStoreMessageTag.GETSTOCKBOOKSBYISBN, "");
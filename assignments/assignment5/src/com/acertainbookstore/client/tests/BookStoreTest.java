@@ -2,6 +2,7 @@ package com.acertainbookstore.client.tests;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -14,6 +15,8 @@ import org.junit.Test;
 
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreOperation;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.business.StockBook;
@@ -315,6 +318,113 @@ public class BookStoreTest {
 
 	}
 
+	/**
+	 * Tests that a purchase and a rating can be run as one batch
+	 */
+	@Test
+	public void testExecuteBatch() throws BookStoreException {
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN, 1));
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN, 4));
+
+		List<BookStoreOperation> operations = new ArrayList<BookStoreOperation>();
+		operations.add(BookStoreOperation.buyBooks(booksToBuy));
+		operations.add(BookStoreOperation.rateBooks(booksToRate));
+		client.executeBatch(operations);
+
+		List<StockBook> listBooks = storeManager.getBooks();
+		assertTrue(listBooks.size() == 1);
+		StockBook bookInList = listBooks.get(0);
+		assertTrue(bookInList.getNumCopies() == NUM_COPIES - 1
+				&& bookInList.getTimesRated() == 1
+				&& bookInList.getTotalRating() == 4);
+	}
+
+	/**
+	 * Tests that no operation of a batch takes effect if one of them fails
+	 */
+	@Test
+	public void testExecuteBatchRollback() throws BookStoreException {
+		List<StockBook> booksInStorePreTest = storeManager.getBooks();
+
+		// The purchase succeeds, but the rating is invalid
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN, 1));
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN, 6));
+
+		List<BookStoreOperation> operations = new ArrayList<BookStoreOperation>();
+		operations.add(BookStoreOperation.buyBooks(booksToBuy));
+		operations.add(BookStoreOperation.rateBooks(booksToRate));
+
+		try {
+			client.executeBatch(operations);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInStorePostTest = storeManager.getBooks();
+		assertTrue(booksInStorePreTest.containsAll(booksInStorePostTest)
+				&& booksInStorePreTest.size() == booksInStorePostTest.size());
+	}
+
+	/**
+	 * Tests that rated books are listed top rated first, with the books that
+	 * were never rated last
+	 */
+	@Test
+	public void testRateBooks() throws BookStoreException {
+		addBooks(TEST_ISBN + 1, NUM_COPIES);
+		addBooks(TEST_ISBN + 2, NUM_COPIES);
+
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN, 3));
+		booksToRate.add(new BookRating(TEST_ISBN + 2, 5));
+		client.rateBooks(booksToRate);
+
+		List<Book> topRated = client.getTopRatedBooks(3);
+		assertEquals(3, topRated.size());
+		assertEquals(TEST_ISBN + 2, topRated.get(0).getISBN());
+		assertEquals(TEST_ISBN, topRated.get(1).getISBN());
+		assertEquals(TEST_ISBN + 1, topRated.get(2).getISBN());
+
+		Set<Integer> isbns = new HashSet<Integer>();
+		isbns.add(TEST_ISBN + 2);
+		StockBook rated = storeManager.getBooksByISBN(isbns).get(0);
+		assertTrue(rated.getTimesRated() == 1 && rated.getTotalRating() == 5);
+	}
+
+	/**
+	 * Tests that an invalid rating changes no book, and that no more books
+	 * than there are in the store can be asked for
+	 */
+	@Test
+	public void testRateBooksInvalid() throws BookStoreException {
+		List<StockBook> booksInStorePreTest = storeManager.getBooks();
+
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN, 6));
+		try {
+			client.rateBooks(booksToRate);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		try {
+			client.getTopRatedBooks(2);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInStorePostTest = storeManager.getBooks();
+		assertTrue(booksInStorePreTest.containsAll(booksInStorePostTest)
+				&& booksInStorePreTest.size() == booksInStorePostTest.size());
+	}
+
 	@AfterClass
 	public static void tearDownAfterClass() throws BookStoreException {
 		storeManager.removeAllBooks();
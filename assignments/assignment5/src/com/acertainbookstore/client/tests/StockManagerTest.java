@@ -16,6 +16,7 @@ import org.junit.Test;
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreOperation;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.business.StockBook;
@@ -197,6 +198,36 @@ public class StockManagerTest {
 
 	}
 
+	/**
+	 * Checks whether a set of books holding two books with the same ISBN is
+	 * rejected, instead of adding the book twice
+	 */
+	@Test
+	public void testAddBookDuplicateISBN() throws BookStoreException {
+		List<StockBook> booksInStorePreTest = storeManager.getBooks();
+
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"Harry Potter and Vivek", "JUnit Rowling", (float) 100, 5, 0,
+				0, 0, false)); // valid
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"Harry Potter and Marcos", "JUnit Rowling", (float) 100, 5, 0,
+				0, 0, false)); // same isbn
+		assertEquals(2, booksToAdd.size());
+
+		try {
+			storeManager.addBooks(booksToAdd);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInStorePostTest = storeManager.getBooks();
+		// Check pre and post state are same
+		assertTrue(booksInStorePreTest.containsAll(booksInStorePostTest)
+				&& booksInStorePreTest.size() == booksInStorePostTest.size());
+	}
+
 	/**
 	 * Tests adding copies of a book with correct parameters
 	 */
@@ -438,6 +469,59 @@ public class StockManagerTest {
 		assertTrue(booksInStoreList.size() == 0);
 	}
 
+	/**
+	 * Tests that copies and an editor pick can be added as one batch
+	 */
+	@Test
+	public void testExecuteBatch() throws BookStoreException {
+		Set<BookCopy> bookCopiesSet = new HashSet<BookCopy>();
+		bookCopiesSet.add(new BookCopy(TEST_ISBN, 1));
+		Set<BookEditorPick> editorPicks = new HashSet<BookEditorPick>();
+		editorPicks.add(new BookEditorPick(TEST_ISBN, true));
+
+		List<BookStoreOperation> operations = new ArrayList<BookStoreOperation>();
+		operations.add(BookStoreOperation.addCopies(bookCopiesSet));
+		operations.add(BookStoreOperation.updateEditorPicks(editorPicks));
+		storeManager.executeBatch(operations);
+
+		List<StockBook> listBooks = storeManager.getBooks();
+		assertTrue(listBooks.size() == 1);
+		StockBook bookInList = listBooks.get(0);
+		assertTrue(bookInList.getNumCopies() == NUM_COPIES + 1
+				&& bookInList.isEditorPick());
+	}
+
+	/**
+	 * Tests that a book added by a batch is removed again if a later
+	 * operation of the batch fails
+	 */
+	@Test
+	public void testExecuteBatchRollback() throws BookStoreException {
+		List<StockBook> booksInStorePreTest = storeManager.getBooks();
+
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1,
+				"The Art of Computer Programming", "Donald Knuth", (float) 300,
+				NUM_COPIES, 0, 0, 0, false));
+		Set<BookCopy> bookCopiesSet = new HashSet<BookCopy>();
+		bookCopiesSet.add(new BookCopy(TEST_ISBN, -1));
+
+		List<BookStoreOperation> operations = new ArrayList<BookStoreOperation>();
+		operations.add(BookStoreOperation.addBooks(booksToAdd));
+		operations.add(BookStoreOperation.addCopies(bookCopiesSet));
+
+		try {
+			storeManager.executeBatch(operations);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInStorePostTest = storeManager.getBooks();
+		assertTrue(booksInStorePreTest.containsAll(booksInStorePostTest)
+				&& booksInStorePreTest.size() == booksInStorePostTest.size());
+	}
+
 	@AfterClass
 	public static void tearDownAfterClass() throws BookStoreException {
 		storeManager.removeAllBooks();
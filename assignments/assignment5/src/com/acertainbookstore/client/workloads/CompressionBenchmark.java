@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package com.acertainbookstore.client.workloads;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreCodec;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreResult;
+import com.acertainbookstore.utils.BookStoreUtility;
+
+/**
+ *
+ * CompressionBenchmark reports the bytes on the wire of a LISTBOOKS response
+ * of NUM_BOOKS books in each codec and compression, and the CPU time to
+ * compress it on the server and to decompress it on the client.
+ *
+ */
+public class CompressionBenchmark {
+	private static final int NUM_BOOKS = 1000;
+	private static final int ROUNDS = 200;
+	private static final String[] COMPRESSIONS = {
+			BookStoreConstants.COMPRESSION_NONE,
+			BookStoreConstants.COMPRESSION_GZIP,
+			BookStoreConstants.COMPRESSION_DEFLATE };
+
+	private static long sink;
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		List<StockBook> books = new ArrayList<StockBook>();
+		for (int i = 0; i < NUM_BOOKS; i++) {
+			books.add(new ImmutableStockBook(i + 1, "Title " + i, "Author "
+					+ (i % 50), (float) 10 + i % 7, 5, i % 3, i % 11, i % 13,
+					i % 2 == 0));
+		}
+		BookStoreResponse response = new BookStoreResponse(null,
+				new BookStoreResult(books, 1));
+
+		System.out
+				.println("codec\tcompression\tbytes\tcompress us\tdecompress us");
+		for (int pass = 0; pass < 2; pass++) { // the first pass warms up
+			for (BookStoreCodec codec : new BookStoreCodec[] {
+					BookStoreUtility.XML_CODEC, BookStoreUtility.BINARY_CODEC }) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				codec.encode(response, out);
+				byte[] encoded = out.toByteArray();
+				for (String compression : COMPRESSIONS) {
+					byte[] compressed = compress(encoded, compression);
+					long start = System.nanoTime();
+					for (int round = 0; round < ROUNDS; round++) {
+						sink += compress(encoded, compression).length;
+					}
+					long compressTime = System.nanoTime() - start;
+					start = System.nanoTime();
+					for (int round = 0; round < ROUNDS; round++) {
+						sink += decompress(compressed, compression);
+					}
+					long decompressTime = System.nanoTime() - start;
+					if (pass == 1) {
+						System.out.printf("%s\t%s\t%d\t%.0f\t%.0f%n", codec
+								.getContentType(), compression,
+								compressed.length, compressTime / 1000.0
+										/ ROUNDS, decompressTime / 1000.0
+										/ ROUNDS);
+					}
+				}
+			}
+		}
+		System.out.println("(ignore: " + sink + ")");
+	}
+
+	private static byte[] compress(byte[] encoded, String compression)
+			throws IOException {
+		if (compression.equals(BookStoreConstants.COMPRESSION_NONE)) {
+			return encoded;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStream compressed = BookStoreUtility.compress(out, compression);
+		compressed.write(encoded);
+		compressed.close();
+		return out.toByteArray();
+	}
+
+	private static long decompress(byte[] compressed, String compression)
+			throws IOException {
+		InputStream in = BookStoreUtility.decompress(new ByteArrayInputStream(
+				compressed), compression
+				.equals(BookStoreConstants.COMPRESSION_NONE) ? null
+				: compression);
+		byte[] buffer = new byte[8192];
+		long size = 0;
+		for (int n; (n = in.read(buffer)) != -1;) {
+			size += n;
+		}
+		in.close();
+		return size;
+	}
+}
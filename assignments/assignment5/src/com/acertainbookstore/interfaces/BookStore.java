@@ -9,6 +9,7 @@ import java.util.Set;
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreOperation;
 import com.acertainbookstore.utils.BookStoreException;
 
 /**
@@ -48,4 +49,12 @@ public interface BookStore {
 	 */
 	public List<Book> getEditorPicks(int numBooks) throws BookStoreException;
 
+	/**
+	 * Runs the purchases and ratings in the list, in order, as one update:
+	 * either all of them are applied or, if one fails, none of them.
+	 * 
+	 */
+	public void executeBatch(List<BookStoreOperation> operations)
+			throws BookStoreException;
+
 }
@@ -0,0 +1,40 @@
+package com.acertainbookstore.interfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * BookStoreCodec encodes the requests and responses of the bookstore for the
+ * wire and decodes them again. The codec of a message is named by its
+ * Content-Type, so that a server can answer every client in the format it
+ * asked for, cf. BookStoreUtility.getCodec.
+ *
+ */
+public interface BookStoreCodec {
+
+	/**
+	 * Returns the Content-Type of the messages encoded by the codec.
+	 *
+	 * @return
+	 */
+	public String getContentType();
+
+	/**
+	 * Writes the object to the stream.
+	 *
+	 * @param object
+	 * @param out
+	 * @throws IOException
+	 */
+	public void encode(Object object, OutputStream out) throws IOException;
+
+	/**
+	 * Reads an object written by encode from the stream.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public Object decode(InputStream in) throws IOException;
+}
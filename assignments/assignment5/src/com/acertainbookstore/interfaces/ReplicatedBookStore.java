@@ -1,9 +1,11 @@
 package com.acertainbookstore.interfaces;
 
+import java.util.List;
 import java.util.Set;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreOperation;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreResult;
 
@@ -29,4 +31,11 @@ public interface ReplicatedBookStore extends ReplicatedReadOnlyBookStore {
 	public BookStoreResult rateBooks(Set<BookRating> bookRating)
 			throws BookStoreException;
 
+	/**
+	 * Runs the purchases and ratings in the list as one update.
+	 * 
+	 */
+	public BookStoreResult executeBatch(List<BookStoreOperation> operations)
+			throws BookStoreException;
+
 }
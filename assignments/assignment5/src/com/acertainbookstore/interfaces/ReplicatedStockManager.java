@@ -1,9 +1,11 @@
 package com.acertainbookstore.interfaces;
 
+import java.util.List;
 import java.util.Set;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreOperation;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreResult;
@@ -51,4 +53,11 @@ public interface ReplicatedStockManager extends ReplicatedReadOnlyStockManager {
 	public BookStoreResult removeBooks(Set<Integer> isbnSet)
 			throws BookStoreException;
 
+	/**
+	 * Runs the updates in the list as one update.
+	 * 
+	 */
+	public BookStoreResult executeBatch(List<BookStoreOperation> operations)
+			throws BookStoreException;
+
 }
@@ -5,6 +5,7 @@ import java.util.Set;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookStoreOperation;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.utils.BookStoreException;
 
@@ -67,4 +68,12 @@ public interface StockManager {
 	 * 
 	 */
 	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException;
+
+	/**
+	 * Runs the updates in the list, in order, as one update: either all of
+	 * them are applied or, if one fails, none of them.
+	 * 
+	 */
+	public void executeBatch(List<BookStoreOperation> operations)
+			throws BookStoreException;
 }
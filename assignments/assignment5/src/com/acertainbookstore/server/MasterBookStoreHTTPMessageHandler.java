@@ -5,6 +5,7 @@ package com.acertainbookstore.server;
 
 import java.io.IOException;
 import java.net.URLDecoder;
+import java.util.List;
 import java.util.Set;
 
 import javax.servlet.ServletException;
@@ -16,6 +17,8 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreOperation;
 import com.acertainbookstore.business.MasterCertainBookStore;
 import com.acertainbookstore.business.StockBook;
 import com.acertainbookstore.utils.BookStoreConstants;
@@ -46,15 +49,16 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 		String numBooksString = null;
 		int numBooks = -1;
 		String requestURI;
+		boolean fromStockManager = false;
 		BookStoreResponse bookStoreResponse = null;
 
-		response.setContentType("text/html;charset=utf-8");
 		response.setStatus(HttpServletResponse.SC_OK);
 		requestURI = request.getRequestURI();
 
 		// Need to do request multi-plexing
 		if (!BookStoreUtility.isEmpty(requestURI)
 				&& requestURI.toLowerCase().startsWith("/stock")) {
+			fromStockManager = true;
 			messageTag = BookStoreUtility.convertURItoMessageTag(requestURI
 					.substring(6)); // the request is from store
 			// manager, more
@@ -67,185 +71,250 @@ public class MasterBookStoreHTTPMessageHandler extends AbstractHandler {
 		// the RequestURI before the switch
 		if (messageTag == null) {
 			System.out.println("Unknown message tag");
+		} else if (BookStoreUtility.isRequestTooLarge(request)) {
+			bookStoreResponse = new BookStoreResponse();
+			bookStoreResponse.setException(new BookStoreException(
+					BookStoreConstants.REQUEST_SIZE
+							+ request.getContentLength()
+							+ BookStoreConstants.INVALID));
+			response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			BookStoreUtility.encodeResponse(request, response,
+					bookStoreResponse);
 		} else {
-			switch (messageTag) {
-			case REMOVEBOOKS:
-				String xml = BookStoreUtility
-						.extractPOSTDataFromRequest(request);
-
-				Set<Integer> bookSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
-				bookStoreResponse = new BookStoreResponse();
-				try {
-
-					bookStoreResponse.setResult(myBookStore
-							.removeBooks(bookSet));
-
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				String listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
-				break;
-
-			case REMOVEALLBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore.removeAllBooks());
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
-				break;
-
-			case ADDBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
-				Set<StockBook> newBooks = (Set<StockBook>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore.addBooks(newBooks));
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-
-				response.getWriter().println(listBooksxmlString);
-				break;
-
-			case ADDCOPIES:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
-				Set<BookCopy> listBookCopies = (Set<BookCopy>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore
-							.addCopies(listBookCopies));
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
-				break;
-
-			case UPDATEEDITORPICKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-				Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
-				bookStoreResponse = new BookStoreResponse();
-
-				try {
-					bookStoreResponse.setResult(myBookStore
-							.updateEditorPicks(mapEditorPicksValues));
-
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
-				break;
-
-			case BUYBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-				Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
-				// Make the purchase
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore
-							.buyBooks(bookCopiesToBuy));
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
-				break;
-
-			case LISTBOOKS:
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore.getBooks());
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
+			try {
+				switch (messageTag) {
+				case REMOVEBOOKS:
+					Set<Integer> bookSet = (Set<Integer>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+					try {
+
+						bookStoreResponse.setResult(myBookStore
+								.removeBooks(bookSet));
+
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case REMOVEALLBOOKS:
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore.removeAllBooks());
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case ADDBOOKS:
+					Set<StockBook> newBooks = (Set<StockBook>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore.addBooks(newBooks));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case ADDCOPIES:
+					Set<BookCopy> listBookCopies = (Set<BookCopy>) BookStoreUtility
+							.decodeRequest(request);
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore
+								.addCopies(listBookCopies));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case UPDATEEDITORPICKS:
+					Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+
+					try {
+						bookStoreResponse.setResult(myBookStore
+								.updateEditorPicks(mapEditorPicksValues));
+
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case BUYBOOKS:
+					Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) BookStoreUtility
+							.decodeRequest(request);
+
+					// Make the purchase
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore
+								.buyBooks(bookCopiesToBuy));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case RATEBOOKS:
+					Set<BookRating> bookRating = (Set<BookRating>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore
+								.rateBooks(bookRating));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case EXECUTEBATCH:
+					List<BookStoreOperation> operations = (List<BookStoreOperation>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						// customers may only buy and rate books
+						if (!fromStockManager && operations != null) {
+							for (BookStoreOperation operation : operations) {
+								if (operation != null
+										&& !operation.isCustomerOperation()) {
+									throw new BookStoreException(
+											BookStoreConstants.OPERATION
+													+ operation.getMessageType()
+													+ BookStoreConstants.INVALID);
+								}
+							}
+						}
+						bookStoreResponse.setResult(myBookStore
+								.executeBatch(operations));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case LISTBOOKS:
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore.getBooks());
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case GETBOOKSINDEMAND:
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore.getBooksInDemand());
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case GETBOOKS:
+					Set<Integer> isbnSet = (Set<Integer>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore.getBooks(isbnSet));
+
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case GETSTOCKBOOKSBYISBN:
+					isbnSet = (Set<Integer>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore
+								.getBooksByISBN(isbnSet));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case EDITORPICKS:
+					numBooksString = URLDecoder
+							.decode(request
+									.getParameter(BookStoreConstants.BOOK_NUM_PARAM),
+									"UTF-8");
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						numBooks = BookStoreUtility
+								.convertStringToInt(numBooksString);
+						bookStoreResponse.setResult(myBookStore
+								.getEditorPicks(numBooks));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case TOPRATEDBOOKS:
+					numBooksString = URLDecoder
+							.decode(request
+									.getParameter(BookStoreConstants.BOOK_NUM_PARAM),
+									"UTF-8");
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						numBooks = BookStoreUtility
+								.convertStringToInt(numBooksString);
+						bookStoreResponse.setResult(myBookStore
+								.getTopRatedBooks(numBooks));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				default:
+					System.out.println("Unhandled message tag");
+					break;
 				}
-				response.getWriter().println(
-						BookStoreUtility
-								.serializeObjectToXMLString(bookStoreResponse));
-				break;
-
-			case GETBOOKS:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-				Set<Integer> isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
+			} catch (BookStoreException ex) {
+				// the request could not be decoded, nothing is sent yet
 				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore.getBooks(isbnSet));
-
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
-				break;
-
-			case GETSTOCKBOOKSBYISBN:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-				isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore
-							.getBooksByISBN(isbnSet));
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				response.getWriter().println(
-						BookStoreUtility
-								.serializeObjectToXMLString(bookStoreResponse));
-				break;
-
-			case EDITORPICKS:
-				numBooksString = URLDecoder
-						.decode(request
-								.getParameter(BookStoreConstants.BOOK_NUM_PARAM),
-								"UTF-8");
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					numBooks = BookStoreUtility
-							.convertStringToInt(numBooksString);
-					bookStoreResponse.setResult(myBookStore
-							.getEditorPicks(numBooks));
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				listBooksxmlString = BookStoreUtility
-						.serializeObjectToXMLString(bookStoreResponse);
-				response.getWriter().println(listBooksxmlString);
-				break;
-
-			default:
-				System.out.println("Unhandled message tag");
-				break;
+				bookStoreResponse.setException(ex);
+				response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+				BookStoreUtility.encodeResponse(request, response,
+						bookStoreResponse);
 			}
 		}
 		// Mark the request as handled so that the HTTP response can be sent
@@ -6,10 +6,10 @@ package com.acertainbookstore.server;
 import org.eclipse.jetty.client.ContentExchange;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.io.Buffer;
-import org.eclipse.jetty.io.ByteArrayBuffer;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.ReplicationRequest;
+import com.acertainbookstore.interfaces.BookStoreCodec;
 import com.acertainbookstore.interfaces.Replication;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.NetworkException;
@@ -33,6 +33,7 @@ import com.acertainbookstore.client.BookStoreClientConstants;
 public class ReplicationAwareServerHTTPProxy implements Replication {
 	private HttpClient client;
 	private String destinationServerAddress = null;
+	private BookStoreCodec codec = BookStoreUtility.getClientCodec();
 
 	/**
 	 *
@@ -60,17 +61,17 @@ public class ReplicationAwareServerHTTPProxy implements Replication {
 	@Override
 	public void replicate(ReplicationRequest req) throws BookStoreException, NetworkException {
 
-		String replicatexmlString = BookStoreUtility
-				.serializeObjectToXMLString(req);
-		Buffer requestContent = new ByteArrayBuffer(replicatexmlString);
+		Buffer requestContent = BookStoreUtility.encodeRequest(codec,
+				req);
 
 		BookStoreResult result = null;
 
-		ContentExchange exchange = new ContentExchange();
+		ContentExchange exchange = new ContentExchange(true);
 		String urlString = destinationServerAddress + BookStoreMessageTag.REPLICATE;
 		exchange.setMethod("POST");
+		BookStoreUtility.setCodec(exchange, codec);
 		exchange.setURL(urlString);
-		exchange.setRequestContent(requestContent);
+		BookStoreUtility.setRequestContent(exchange, requestContent);
 		result = BookStoreUtility.SendAndRecv(this.client, exchange);
 	}
 
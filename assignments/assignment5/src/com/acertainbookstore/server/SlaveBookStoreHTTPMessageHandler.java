@@ -48,7 +48,6 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 		String requestURI;
 		BookStoreResponse bookStoreResponse = null;
 
-		response.setContentType("text/html;charset=utf-8");
 		response.setStatus(HttpServletResponse.SC_OK);
 		requestURI = request.getRequestURI();
 
@@ -67,99 +66,136 @@ public class SlaveBookStoreHTTPMessageHandler extends AbstractHandler {
 		// the RequestURI before the switch
 		if (messageTag == null) {
 			System.out.println("Unknown message tag");
+		} else if (BookStoreUtility.isRequestTooLarge(request)) {
+			bookStoreResponse = new BookStoreResponse();
+			bookStoreResponse.setException(new BookStoreException(
+					BookStoreConstants.REQUEST_SIZE
+							+ request.getContentLength()
+							+ BookStoreConstants.INVALID));
+			response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+			BookStoreUtility.encodeResponse(request, response,
+					bookStoreResponse);
 		} else {
 
-			switch (messageTag) {
-
-			case LISTBOOKS:
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore.getBooks());
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
+			try {
+				switch (messageTag) {
+
+				case LISTBOOKS:
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore.getBooks());
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case GETBOOKSINDEMAND:
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore.getBooksInDemand());
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case GETBOOKS:
+					Set<Integer> isbnSet = (Set<Integer>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore.getBooks(isbnSet));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case EDITORPICKS:
+					numBooksString = URLDecoder
+							.decode(request
+									.getParameter(BookStoreConstants.BOOK_NUM_PARAM),
+									"UTF-8");
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						numBooks = BookStoreUtility
+								.convertStringToInt(numBooksString);
+						bookStoreResponse.setResult(myBookStore
+								.getEditorPicks(numBooks));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case TOPRATEDBOOKS:
+					numBooksString = URLDecoder
+							.decode(request
+									.getParameter(BookStoreConstants.BOOK_NUM_PARAM),
+									"UTF-8");
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						numBooks = BookStoreUtility
+								.convertStringToInt(numBooksString);
+						bookStoreResponse.setResult(myBookStore
+								.getTopRatedBooks(numBooks));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+				case GETSTOCKBOOKSBYISBN:
+					isbnSet = (Set<Integer>) BookStoreUtility
+							.decodeRequest(request);
+
+					bookStoreResponse = new BookStoreResponse();
+					try {
+						bookStoreResponse.setResult(myBookStore
+								.getBooksByISBN(isbnSet));
+					} catch (BookStoreException ex) {
+						bookStoreResponse.setException(ex);
+					}
+					BookStoreUtility.encodeResponse(request, response,
+							bookStoreResponse);
+					break;
+
+	            case REPLICATE:
+					ReplicationRequest replicationRequest = (ReplicationRequest) BookStoreUtility
+							.decodeRequest(request);
+
+	                bookStoreResponse = new BookStoreResponse();
+
+	                try {
+	                    myBookStore.replicate(replicationRequest);
+	                }
+	                catch (BookStoreException ex) {
+	                    bookStoreResponse.setException(ex);
+	                }
+
+	                BookStoreUtility.encodeResponse(request, response,
+	                        bookStoreResponse);
+
+	                break;
+
+				default:
+					System.out.println("Unhandled message tag");
+					break;
 				}
-				response.getWriter().println(
-						BookStoreUtility
-								.serializeObjectToXMLString(bookStoreResponse));
-				break;
-
-			case GETBOOKS:
-				String xml = BookStoreUtility
-						.extractPOSTDataFromRequest(request);
-				Set<Integer> isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore.getBooks(isbnSet));
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				response.getWriter().println(
-						BookStoreUtility
-								.serializeObjectToXMLString(bookStoreResponse));
-				break;
-
-			case EDITORPICKS:
-				numBooksString = URLDecoder
-						.decode(request
-								.getParameter(BookStoreConstants.BOOK_NUM_PARAM),
-								"UTF-8");
-				bookStoreResponse = new BookStoreResponse();
-				try {
-					numBooks = BookStoreUtility
-							.convertStringToInt(numBooksString);
-					bookStoreResponse.setResult(myBookStore
-							.getEditorPicks(numBooks));
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				response.getWriter().println(
-						BookStoreUtility
-								.serializeObjectToXMLString(bookStoreResponse));
-				break;
-
-			case GETSTOCKBOOKSBYISBN:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-				isbnSet = (Set<Integer>) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
+			} catch (BookStoreException ex) {
+				// the request could not be decoded, nothing is sent yet
 				bookStoreResponse = new BookStoreResponse();
-				try {
-					bookStoreResponse.setResult(myBookStore
-							.getBooksByISBN(isbnSet));
-				} catch (BookStoreException ex) {
-					bookStoreResponse.setException(ex);
-				}
-				response.getWriter().println(
-						BookStoreUtility
-								.serializeObjectToXMLString(bookStoreResponse));
-				break;
-
-            case REPLICATE:
-				xml = BookStoreUtility.extractPOSTDataFromRequest(request);
-
-				ReplicationRequest replicationRequest = (ReplicationRequest) BookStoreUtility
-						.deserializeXMLStringToObject(xml);
-
-                bookStoreResponse = new BookStoreResponse();
-
-                try {
-                    myBookStore.replicate(replicationRequest);
-                }
-                catch (BookStoreException ex) {
-                    bookStoreResponse.setException(ex);
-                }
-
-                response.getWriter().println(
-                        BookStoreUtility
-                                .serializeObjectToXMLString(bookStoreResponse));
-
-                break;
-
-			default:
-				System.out.println("Unhandled message tag");
-				break;
+				bookStoreResponse.setException(ex);
+				response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+				BookStoreUtility.encodeResponse(request, response,
+						bookStoreResponse);
 			}
 		}
 		// Mark the request as handled so that the HTTP response can be sent
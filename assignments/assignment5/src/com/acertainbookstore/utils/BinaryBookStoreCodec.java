@@ -0,0 +1,370 @@
+package com.acertainbookstore.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreOperation;
+import com.acertainbookstore.business.ImmutableBook;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.ReplicationRequest;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreCodec;
+
+/**
+ * BinaryBookStoreCodec encodes the messages of the bookstore in a compact
+ * binary format, for the clients and replicas that ask for it.
+ *
+ * A message is the format version followed by one value. A value is a type
+ * byte followed by its fields in a fixed order: ints and longs as zig-zag
+ * varints, floats as 4 bytes, strings as a varint length (-1 for null) and
+ * UTF-8 bytes, and collections as a varint size and their values. Only the
+ * types below can be encoded; a StockBook is decoded as an
+ * ImmutableStockBook, a Book as an ImmutableBook, and a BookStoreException
+ * keeps its message but not its cause.
+ *
+ * The sizes of a message come from the client, so decoding never allocates
+ * much more than the bytes it has read, and a value nested more than
+ * MAX_DEPTH values deep fails the decoding.
+ *
+ */
+public class BinaryBookStoreCodec implements BookStoreCodec {
+	public static final int FORMAT_VERSION = 1;
+
+	// The deepest nesting of values, where the messages nest at most 5 deep
+	public static final int MAX_DEPTH = 16;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// The bytes of a string allocated before they are read
+	private static final int STRING_CHUNK = 8192;
+
+	// The types of the values
+	private static final int NULL = 0;
+	private static final int INTEGER = 1;
+	private static final int STRING = 2;
+	private static final int SET = 3;
+	private static final int LIST = 4;
+	private static final int BOOK_COPY = 5;
+	private static final int EDITOR_PICK = 6;
+	private static final int RATING = 7;
+	private static final int STOCK_BOOK = 8;
+	private static final int BOOK = 9;
+	private static final int RESPONSE = 10;
+	private static final int RESULT = 11;
+	private static final int EXCEPTION = 12;
+	private static final int REPLICATION_REQUEST = 13;
+	private static final int OPERATION = 14;
+
+	private static final BookStoreMessageTag[] TAGS = BookStoreMessageTag
+			.values();
+
+	public String getContentType() {
+		return BookStoreConstants.BINARY_CONTENT_TYPE;
+	}
+
+	public void encode(Object object, OutputStream out) throws IOException {
+		if (!(out instanceof PooledBufferedOutputStream)) {
+			out = new BufferedOutputStream(out);
+		}
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeByte(FORMAT_VERSION);
+		write(data, object);
+		data.flush();
+	}
+
+	public Object decode(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		int version = data.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw new StreamCorruptedException("format version " + version
+					+ " is not supported");
+		}
+		return read(data, 0);
+	}
+
+	private void write(DataOutputStream out, Object object)
+			throws IOException {
+		if (object == null) {
+			out.writeByte(NULL);
+		} else if (object instanceof Integer) {
+			out.writeByte(INTEGER);
+			writeInt(out, (Integer) object);
+		} else if (object instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) object);
+		} else if (object instanceof Set) {
+			out.writeByte(SET);
+			writeValues(out, (Set<?>) object);
+		} else if (object instanceof List) {
+			out.writeByte(LIST);
+			writeValues(out, (List<?>) object);
+		} else if (object instanceof BookCopy) {
+			BookCopy bookCopy = (BookCopy) object;
+			out.writeByte(BOOK_COPY);
+			writeInt(out, bookCopy.getISBN());
+			writeInt(out, bookCopy.getNumCopies());
+		} else if (object instanceof BookEditorPick) {
+			BookEditorPick editorPick = (BookEditorPick) object;
+			out.writeByte(EDITOR_PICK);
+			writeInt(out, editorPick.getISBN());
+			out.writeBoolean(editorPick.isEditorPick());
+		} else if (object instanceof BookRating) {
+			BookRating rating = (BookRating) object;
+			out.writeByte(RATING);
+			writeInt(out, rating.getISBN());
+			writeInt(out, rating.getRating());
+		} else if (object instanceof StockBook) {
+			StockBook book = (StockBook) object;
+			out.writeByte(STOCK_BOOK);
+			writeBook(out, book);
+			writeInt(out, book.getNumCopies());
+			writeLong(out, book.getSaleMisses());
+			writeLong(out, book.getTimesRated());
+			writeLong(out, book.getTotalRating());
+			out.writeBoolean(book.isEditorPick());
+		} else if (object instanceof Book) {
+			out.writeByte(BOOK);
+			writeBook(out, (Book) object);
+		} else if (object instanceof BookStoreResponse) {
+			BookStoreResponse response = (BookStoreResponse) object;
+			out.writeByte(RESPONSE);
+			write(out, response.getException());
+			write(out, response.getResult());
+		} else if (object instanceof BookStoreResult) {
+			BookStoreResult result = (BookStoreResult) object;
+			out.writeByte(RESULT);
+			write(out, result.getResultList());
+			writeLong(out, result.getSnapshotId());
+		} else if (object instanceof BookStoreException) {
+			out.writeByte(EXCEPTION);
+			writeString(out, ((BookStoreException) object).getMessage());
+		} else if (object instanceof ReplicationRequest) {
+			ReplicationRequest request = (ReplicationRequest) object;
+			out.writeByte(REPLICATION_REQUEST);
+			writeTag(out, request.getMessageType());
+			write(out, request.getDataSet());
+			write(out, request.getOperations());
+		} else if (object instanceof BookStoreOperation) {
+			BookStoreOperation operation = (BookStoreOperation) object;
+			out.writeByte(OPERATION);
+			writeTag(out, operation.getMessageType());
+			write(out, operation.getDataSet());
+		} else {
+			throw new NotSerializableException(object.getClass().getName());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object read(DataInputStream in, int depth) throws IOException {
+		if (depth == MAX_DEPTH) {
+			throw new StreamCorruptedException("values nested more than "
+					+ MAX_DEPTH + " deep");
+		}
+		depth++;
+		int type = in.readUnsignedByte();
+		switch (type) {
+		case NULL:
+			return null;
+		case INTEGER:
+			return readInt(in);
+		case STRING:
+			return readString(in);
+		case SET:
+			return readValues(in, new HashSet<Object>(), depth);
+		case LIST:
+			return readValues(in, new ArrayList<Object>(), depth);
+		case BOOK_COPY:
+			return new BookCopy(readInt(in), readInt(in));
+		case EDITOR_PICK:
+			return new BookEditorPick(readInt(in), in.readBoolean());
+		case RATING:
+			return new BookRating(readInt(in), readInt(in));
+		case STOCK_BOOK:
+			return new ImmutableStockBook(readInt(in), readString(in),
+					readString(in), in.readFloat(), readInt(in), readLong(in),
+					readLong(in), readLong(in), in.readBoolean());
+		case BOOK:
+			return new ImmutableBook(readInt(in), readString(in),
+					readString(in), in.readFloat());
+		case RESPONSE:
+			return new BookStoreResponse((BookStoreException) read(in, depth),
+					(BookStoreResult) read(in, depth));
+		case RESULT:
+			return new BookStoreResult((List<?>) read(in, depth),
+					readLong(in));
+		case EXCEPTION:
+			return new BookStoreException(readString(in));
+		case REPLICATION_REQUEST:
+			BookStoreMessageTag messageType = readTag(in);
+			Set<?> dataSet = (Set<?>) read(in, depth);
+			List<BookStoreOperation> operations = (List<BookStoreOperation>) read(
+					in, depth);
+			return operations != null ? new ReplicationRequest(operations)
+					: new ReplicationRequest(dataSet, messageType);
+		case OPERATION:
+			return readOperation(readTag(in), (Set<?>) read(in, depth));
+		default:
+			throw new StreamCorruptedException("unknown type " + type);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static BookStoreOperation readOperation(
+			BookStoreMessageTag messageType, Set<?> dataSet)
+			throws IOException {
+		switch (messageType) {
+		case ADDBOOKS:
+			return BookStoreOperation.addBooks((Set<StockBook>) dataSet);
+		case ADDCOPIES:
+			return BookStoreOperation.addCopies((Set<BookCopy>) dataSet);
+		case UPDATEEDITORPICKS:
+			return BookStoreOperation
+					.updateEditorPicks((Set<BookEditorPick>) dataSet);
+		case BUYBOOKS:
+			return BookStoreOperation.buyBooks((Set<BookCopy>) dataSet);
+		case RATEBOOKS:
+			return BookStoreOperation.rateBooks((Set<BookRating>) dataSet);
+		case REMOVEBOOKS:
+			return BookStoreOperation.removeBooks((Set<Integer>) dataSet);
+		case REMOVEALLBOOKS:
+			return BookStoreOperation.removeAllBooks();
+		default:
+			throw new StreamCorruptedException("operation " + messageType
+					+ " is not an update");
+		}
+	}
+
+	private void writeValues(DataOutputStream out, Collection<?> values)
+			throws IOException {
+		writeInt(out, values.size());
+		for (Object value : values) {
+			write(out, value);
+		}
+	}
+
+	private Collection<Object> readValues(DataInputStream in,
+			Collection<Object> values, int depth) throws IOException {
+		int size = readInt(in);
+		if (size < 0) {
+			throw new StreamCorruptedException("size " + size);
+		}
+		// not presized, every value takes at least a byte to read
+		for (int i = 0; i < size; i++) {
+			values.add(read(in, depth));
+		}
+		return values;
+	}
+
+	private static void writeBook(DataOutputStream out, Book book)
+			throws IOException {
+		writeInt(out, book.getISBN());
+		writeString(out, book.getTitle());
+		writeString(out, book.getAuthor());
+		out.writeFloat(book.getPrice());
+	}
+
+	private static void writeTag(DataOutputStream out,
+			BookStoreMessageTag messageType) throws IOException {
+		writeInt(out, messageType == null ? -1 : messageType.ordinal());
+	}
+
+	private static BookStoreMessageTag readTag(DataInputStream in)
+			throws IOException {
+		int ordinal = readInt(in);
+		if (ordinal == -1) {
+			return null;
+		}
+		if (ordinal < 0 || ordinal >= TAGS.length) {
+			throw new StreamCorruptedException("message tag " + ordinal);
+		}
+		return TAGS[ordinal];
+	}
+
+	private static void writeString(DataOutputStream out, String string)
+			throws IOException {
+		if (string == null) {
+			writeInt(out, -1);
+			return;
+		}
+		byte[] bytes = string.getBytes(UTF_8);
+		writeInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = readInt(in);
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0) {
+			throw new StreamCorruptedException("string length " + length);
+		}
+		// in chunks, which grow as the bytes arrive, not all the length at once
+		byte[] bytes = new byte[Math.min(length, STRING_CHUNK)];
+		in.readFully(bytes);
+		while (bytes.length < length) {
+			int read = bytes.length;
+			bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+			in.readFully(bytes, read, bytes.length - read);
+		}
+		return new String(bytes, UTF_8);
+	}
+
+	private static void writeInt(DataOutputStream out, int value)
+			throws IOException {
+		writeLong(out, value);
+	}
+
+	private static int readInt(DataInputStream in) throws IOException {
+		long value = readLong(in);
+		if (value != (int) value) {
+			throw new StreamCorruptedException("int " + value);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Writes the value as a zig-zag varint, i.e. 7 bits per byte with the
+	 * sign moved to the lowest bit, so that small values of either sign take
+	 * few bytes.
+	 */
+	private static void writeLong(DataOutputStream out, long value)
+			throws IOException {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7FL) != 0) {
+			out.writeByte((int) (zigZag & 0x7F) | 0x80);
+			zigZag >>>= 7;
+		}
+		out.writeByte((int) zigZag);
+	}
+
+	private static long readLong(DataInputStream in) throws IOException {
+		long zigZag = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			zigZag |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (zigZag >>> 1) ^ -(zigZag & 1);
+			}
+		}
+		throw new StreamCorruptedException("varint is too long");
+	}
+}
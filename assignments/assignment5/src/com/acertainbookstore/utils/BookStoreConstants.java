@@ -15,9 +15,28 @@ public final class BookStoreConstants {
 	public static final String BOOK_NUM_PARAM = "number_of_books";
 	public static final String XMLSTRINGLEN_PARAM = "len";
 
+	// The Content-Types of the codecs, cf. BookStoreUtility.getCodec
+	public static final String XML_CONTENT_TYPE = "text/xml;charset=utf-8";
+	public static final String BINARY_CONTENT_TYPE = "application/x-bookstore-binary";
+	public static final String CODEC_XML = "xml";
+	public static final String CODEC_BINARY = "binary";
+
+	// The content encodings of compressed messages, cf.
+	// BookStoreUtility.getCompression
+	public static final String COMPRESSION_GZIP = "gzip";
+	public static final String COMPRESSION_DEFLATE = "deflate";
+	public static final String COMPRESSION_NONE = "none";
+	public static final String ACCEPT_ENCODINGS = "gzip, deflate";
+
 	// Used as error code when converting numbers to integer
 	public static final int INVALID_PARAMS = -1;
 
+	// The largest request a server reads by default, in bytes
+	public static final long DEFAULT_MAX_REQUEST_SIZE = 256L * 1024 * 1024;
+
+	// The smallest message compressed by default, in bytes
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 2048;
+
 	// Constants used when creating exception messages
 	// When book has an invalid ISBN
 	public static final String INVALID = " is invalid";
@@ -30,6 +49,9 @@ public final class BookStoreConstants {
 	public static final String NUM_COPIES = "The Number of copies: ";
 	public static final String RATING = "The rating: ";
 	public static final String NULL_INPUT = "null input parameters";
+	public static final String REQUEST_SIZE = "The size of the request: ";
+	public static final String MALFORMED_REQUEST = "The request is malformed: ";
+	public static final String OPERATION = "The operation: ";
 
 	public static final String KEY_MASTER = "master";
 	public static final String KEY_SLAVE = "slaves";
@@ -38,4 +60,11 @@ public final class BookStoreConstants {
 
 	public static final String PROPERTY_KEY_LOCAL_TEST = "localtest";
 	public static final String PROPERTY_KEY_SERVER_PORT = "port";
+	public static final String PROPERTY_KEY_OFF_HEAP_INVENTORY = "offheapinventory";
+	public static final String PROPERTY_KEY_COMBINED_WRITES = "combinedwrites";
+	public static final String PROPERTY_KEY_RESOLVE_CAPACITY = "resolvecapacity";
+	public static final String PROPERTY_KEY_CODEC = "codec";
+	public static final String PROPERTY_KEY_MAX_REQUEST_SIZE = "maxrequestsize";
+	public static final String PROPERTY_KEY_COMPRESSION = "compression";
+	public static final String PROPERTY_KEY_COMPRESSION_THRESHOLD = "compressionthreshold";
 }
@@ -8,5 +8,5 @@ package com.acertainbookstore.utils;
  *
  */
 public enum BookStoreMessageTag {
-	ADDBOOKS, LISTBOOKS, ADDCOPIES, GETBOOKS, BUYBOOKS, UPDATEEDITORPICKS, EDITORPICKS, REMOVEALLBOOKS, REMOVEBOOKS, GETSTOCKBOOKSBYISBN, REPLICATE;
+	ADDBOOKS, LISTBOOKS, ADDCOPIES, GETBOOKS, BUYBOOKS, UPDATEEDITORPICKS, EDITORPICKS, REMOVEALLBOOKS, REMOVEBOOKS, GETSTOCKBOOKSBYISBN, GETBOOKSINDEMAND, RATEBOOKS, TOPRATEDBOOKS, EXECUTEBATCH, REPLICATE;
 }
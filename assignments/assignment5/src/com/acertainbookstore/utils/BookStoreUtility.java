@@ -3,19 +3,51 @@
  */
 package com.acertainbookstore.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.ContentExchange;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.io.ByteArrayBuffer;
 
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreOperation;
+import com.acertainbookstore.business.ImmutableBook;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.ReplicationRequest;
 import com.acertainbookstore.client.BookStoreClientConstants;
+import com.acertainbookstore.interfaces.BookStoreCodec;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.io.xml.StaxDriver;
+import com.thoughtworks.xstream.security.ArrayTypePermission;
+import com.thoughtworks.xstream.security.NoTypePermission;
+import com.thoughtworks.xstream.security.NullPermission;
+import com.thoughtworks.xstream.security.PrimitiveTypePermission;
 
 /**
  * BookStoreUtility implements utility methods used by bookstore servers and
@@ -23,14 +55,42 @@ import com.thoughtworks.xstream.io.xml.StaxDriver;
  *
  */
 public final class BookStoreUtility {
+	/**
+	 * Holds the XStream of the messages, which is made the first time a
+	 * message is encoded or decoded. XStream is thread-safe once configured,
+	 * so one instance serves all the messages instead of one being built per
+	 * message.
+	 */
+	private static class XMLStreamHolder {
+		static final XStream XML_STREAM = newXStream();
+	}
+
+	private static final long MAX_REQUEST_SIZE = Long.getLong(
+			BookStoreConstants.PROPERTY_KEY_MAX_REQUEST_SIZE,
+			BookStoreConstants.DEFAULT_MAX_REQUEST_SIZE);
+
+	// The charset of a request that does not name one, as in getReader
+	private static final String DEFAULT_CHARSET = "ISO-8859-1";
+
+	private static final String COMPRESSION = System.getProperty(
+			BookStoreConstants.PROPERTY_KEY_COMPRESSION,
+			BookStoreConstants.COMPRESSION_GZIP).toLowerCase();
+	private static final int COMPRESSION_THRESHOLD = Integer.getInteger(
+			BookStoreConstants.PROPERTY_KEY_COMPRESSION_THRESHOLD,
+			BookStoreConstants.DEFAULT_COMPRESSION_THRESHOLD);
+
+	public static final BookStoreCodec XML_CODEC = new XMLBookStoreCodec();
+	public static final BookStoreCodec BINARY_CODEC = new BinaryBookStoreCodec();
 
     public static boolean isWriteOperation(BookStoreMessageTag tag) {
         return (tag == BookStoreMessageTag.ADDBOOKS ||
                 tag == BookStoreMessageTag.ADDCOPIES ||
                 tag == BookStoreMessageTag.BUYBOOKS ||
+                tag == BookStoreMessageTag.RATEBOOKS ||
                 tag == BookStoreMessageTag.UPDATEEDITORPICKS ||
                 tag == BookStoreMessageTag.REMOVEALLBOOKS ||
                 tag == BookStoreMessageTag.REMOVEBOOKS ||
+                tag == BookStoreMessageTag.EXECUTEBATCH ||
                 tag == BookStoreMessageTag.REPLICATE);
     }
 
@@ -123,8 +183,7 @@ public final class BookStoreUtility {
 	 */
 	public static String serializeObjectToXMLString(Object object) {
 		String xmlString;
-		XStream xmlStream = new XStream(new StaxDriver());
-		xmlString = xmlStream.toXML(object);
+		xmlString = getXStream().toXML(object);
 		return xmlString;
 	}
 
@@ -136,11 +195,354 @@ public final class BookStoreUtility {
 	 */
 	public static Object deserializeXMLStringToObject(String xmlObject) {
 		Object dataObject = null;
-		XStream xmlStream = new XStream(new StaxDriver());
-		dataObject = xmlStream.fromXML(xmlObject);
+		dataObject = getXStream().fromXML(xmlObject);
 		return dataObject;
 	}
 
+	/**
+	 * Returns the shared XStream of the messages.
+	 *
+	 * @return
+	 */
+	static XStream getXStream() {
+		return XMLStreamHolder.XML_STREAM;
+	}
+
+	/**
+	 * Returns an XStream for the messages of the bookstore. It only creates
+	 * the types the messages are made of, strings, boxed primitives and
+	 * arrays, so a message cannot make it instantiate anything else.
+	 *
+	 * @return
+	 */
+	public static XStream newXStream() {
+		XStream xmlStream = new XStream(new StaxDriver());
+		xmlStream.addPermission(NoTypePermission.NONE);
+		xmlStream.addPermission(NullPermission.NULL);
+		xmlStream.addPermission(PrimitiveTypePermission.PRIMITIVES);
+		xmlStream.addPermission(ArrayTypePermission.ARRAYS);
+		xmlStream.allowTypes(new Class<?>[] { String.class,
+				StackTraceElement.class, HashSet.class, ArrayList.class,
+				BookStoreException.class, BookStoreResponse.class,
+				BookCopy.class, BookEditorPick.class, BookRating.class,
+				ImmutableBook.class, ImmutableStockBook.class,
+				BookStoreOperation.class, ReplicationRequest.class,
+				BookStoreResult.class, BookStoreMessageTag.class });
+		// A set or a list is read by its alias, which names the interface,
+		// as a HashSet or an ArrayList
+		xmlStream.allowTypes(new Class<?>[] { Set.class, List.class });
+		// Throwable holds no suppressed exceptions in an empty list
+		xmlStream.allowTypes(new Class<?>[] { Collections.emptyList()
+				.getClass() });
+		return xmlStream;
+	}
+
+	/**
+	 * Returns the codec named by a Content-Type or Accept header. Messages
+	 * that do not name the binary codec are XML, which is all that older
+	 * clients send and understand.
+	 *
+	 * @param contentType
+	 * @return
+	 */
+	public static BookStoreCodec getCodec(String contentType) {
+		if (contentType != null
+				&& contentType.toLowerCase().contains(
+						BookStoreConstants.BINARY_CONTENT_TYPE)) {
+			return BINARY_CODEC;
+		}
+		return XML_CODEC;
+	}
+
+	/**
+	 * Returns the codec the proxies speak, the binary one unless -Dcodec=xml
+	 * is given.
+	 *
+	 * @return
+	 */
+	public static BookStoreCodec getClientCodec() {
+		String codec = System.getProperty(BookStoreConstants.PROPERTY_KEY_CODEC,
+				BookStoreConstants.CODEC_BINARY);
+		return BookStoreConstants.CODEC_XML.equalsIgnoreCase(codec) ? XML_CODEC
+				: BINARY_CODEC;
+	}
+
+	/**
+	 * Encodes the content of a request with the codec.
+	 *
+	 * @param codec
+	 * @param object
+	 * @return
+	 * @throws BookStoreException
+	 */
+	public static Buffer encodeRequest(BookStoreCodec codec, Object object)
+			throws BookStoreException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			codec.encode(object, out);
+		} catch (IOException ex) {
+			throw new BookStoreException(ex);
+		}
+		return new ByteArrayBuffer(out.toByteArray());
+	}
+
+	/**
+	 * Marks the exchange as encoded with the codec and asks for a response in
+	 * the same codec, compressed if the server wants to.
+	 *
+	 * @param exchange
+	 * @param codec
+	 */
+	public static void setCodec(HttpExchange exchange, BookStoreCodec codec) {
+		exchange.setRequestContentType(codec.getContentType());
+		exchange.setRequestHeader(HttpHeaders.ACCEPT, codec.getContentType());
+		exchange.setRequestHeader(HttpHeaders.ACCEPT_ENCODING,
+				BookStoreConstants.ACCEPT_ENCODINGS);
+	}
+
+	/**
+	 * Sets the content of the exchange, compressed with the compression of
+	 * -Dcompression if it is larger than -Dcompressionthreshold bytes.
+	 *
+	 * @param exchange
+	 * @param content
+	 * @throws BookStoreException
+	 */
+	public static void setRequestContent(HttpExchange exchange, Buffer content)
+			throws BookStoreException {
+		if (BookStoreConstants.COMPRESSION_NONE.equals(COMPRESSION)
+				|| content.length() <= COMPRESSION_THRESHOLD) {
+			exchange.setRequestContent(content);
+			return;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+				content.length() / 4);
+		try {
+			OutputStream compressed = compress(out, COMPRESSION);
+			compressed.write(content.asArray());
+			compressed.close();
+		} catch (IOException ex) {
+			throw new BookStoreException(ex);
+		}
+		exchange.setRequestHeader(HttpHeaders.CONTENT_ENCODING, COMPRESSION);
+		exchange.setRequestContent(new ByteArrayBuffer(out.toByteArray()));
+	}
+
+	/**
+	 * Returns the content encoding of the response to a request with the
+	 * Accept-Encoding header: the compression of -Dcompression if the request
+	 * accepts it, otherwise the other one it accepts, or null if it accepts
+	 * neither or -Dcompression is none.
+	 *
+	 * @param acceptEncoding
+	 * @return
+	 */
+	public static String getCompression(String acceptEncoding) {
+		if (acceptEncoding == null
+				|| BookStoreConstants.COMPRESSION_NONE.equals(COMPRESSION)) {
+			return null;
+		}
+		boolean gzip = false;
+		boolean deflate = false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			if (parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?")) {
+				continue; // refused
+			}
+			String name = parts[0].trim().toLowerCase();
+			gzip |= name.equals(BookStoreConstants.COMPRESSION_GZIP);
+			deflate |= name.equals(BookStoreConstants.COMPRESSION_DEFLATE);
+		}
+		if (deflate
+				&& (!gzip || BookStoreConstants.COMPRESSION_DEFLATE
+						.equals(COMPRESSION))) {
+			return BookStoreConstants.COMPRESSION_DEFLATE;
+		}
+		return gzip ? BookStoreConstants.COMPRESSION_GZIP : null;
+	}
+
+	/**
+	 * Returns a stream which compresses what is written to it in the content
+	 * encoding, gzip or deflate, to the stream. Closing it closes the stream.
+	 *
+	 * @param out
+	 * @param encoding
+	 * @return
+	 * @throws IOException
+	 */
+	public static OutputStream compress(OutputStream out, String encoding)
+			throws IOException {
+		if (BookStoreConstants.COMPRESSION_GZIP.equals(encoding)) {
+			return new GZIPOutputStream(out,
+					PooledBufferedOutputStream.BUFFER_SIZE);
+		} else if (BookStoreConstants.COMPRESSION_DEFLATE.equals(encoding)) {
+			// zlib at its fastest level, for links that are not slow enough
+			// to pay for gzip
+			return new DeflaterOutputStream(out, new Deflater(
+					Deflater.BEST_SPEED), PooledBufferedOutputStream.BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						def.end();
+					}
+				}
+			};
+		}
+		throw new IOException("content encoding " + encoding
+				+ " is not supported");
+	}
+
+	/**
+	 * Returns a stream which decompresses the stream from the content
+	 * encoding, or the stream itself if the encoding is null.
+	 *
+	 * @param in
+	 * @param encoding
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream decompress(InputStream in, String encoding)
+			throws IOException {
+		if (encoding == null || encoding.equalsIgnoreCase("identity")) {
+			return in;
+		} else if (encoding
+				.equalsIgnoreCase(BookStoreConstants.COMPRESSION_GZIP)) {
+			return new GZIPInputStream(in,
+					PooledBufferedOutputStream.BUFFER_SIZE);
+		} else if (encoding
+				.equalsIgnoreCase(BookStoreConstants.COMPRESSION_DEFLATE)) {
+			return new InflaterInputStream(in);
+		}
+		throw new IOException("content encoding " + encoding
+				+ " is not supported");
+	}
+
+	/**
+	 * Checks if the request declares a body larger than the largest request
+	 * the server reads, cf. BookStoreConstants.PROPERTY_KEY_MAX_REQUEST_SIZE
+	 *
+	 * @param request
+	 * @return
+	 */
+	public static boolean isRequestTooLarge(HttpServletRequest request) {
+		return request.getContentLength() > MAX_REQUEST_SIZE;
+	}
+
+	/**
+	 * Decodes the content of a request with the codec of its Content-Type,
+	 * while it is read, so that the body is never held in memory as a whole.
+	 * A body larger than the largest request the server reads, once
+	 * decompressed, fails the decoding.
+	 *
+	 * @param request
+	 * @return
+	 * @throws BookStoreException
+	 *             if the request cannot be read or decoded
+	 */
+	public static Object decodeRequest(HttpServletRequest request)
+			throws BookStoreException {
+		BookStoreCodec codec = getCodec(request.getContentType());
+		InputStream in;
+		try {
+			in = new BoundedInputStream(decompress(request.getInputStream(),
+					request.getHeader(HttpHeaders.CONTENT_ENCODING)),
+					MAX_REQUEST_SIZE);
+		} catch (IOException ex) {
+			throw malformedRequest(ex);
+		}
+		if (codec == XML_CODEC) {
+			// in the charset of the request, which older clients do not name
+			String charset = request.getCharacterEncoding();
+			try {
+				return getXStream().fromXML(
+						new InputStreamReader(in, charset != null ? charset
+								: DEFAULT_CHARSET));
+			} catch (UnsupportedEncodingException ex) {
+				throw malformedRequest(ex);
+			}
+		}
+		return decode(codec, in);
+	}
+
+	/**
+	 * Decodes a request with the codec.
+	 *
+	 * @param codec
+	 * @param in
+	 * @return
+	 * @throws BookStoreException
+	 *             if the request is malformed or too large
+	 */
+	public static Object decode(BookStoreCodec codec, InputStream in)
+			throws BookStoreException {
+		try {
+			return codec.decode(in);
+		} catch (IOException ex) {
+			throw malformedRequest(ex);
+		}
+	}
+
+	// Without the cause, which the client may not be allowed to decode
+	private static BookStoreException malformedRequest(IOException ex) {
+		return new BookStoreException(BookStoreConstants.MALFORMED_REQUEST
+				+ (ex instanceof EOFException ? "it ends early" : ex
+						.getMessage()));
+	}
+
+	/**
+	 * Encodes the response with the codec the request accepts, straight to
+	 * the output stream of the response through a buffer of the thread, so
+	 * that the response is sent while it is encoded and never held in memory
+	 * as a whole. It is compressed if it is larger than
+	 * -Dcompressionthreshold bytes and the request accepts a compression,
+	 * cf. getCompression.
+	 *
+	 * @param request
+	 * @param response
+	 * @param object
+	 * @throws IOException
+	 */
+	public static void encodeResponse(HttpServletRequest request,
+			HttpServletResponse response, Object object) throws IOException {
+		BookStoreCodec codec = getCodec(request.getHeader(HttpHeaders.ACCEPT));
+		response.setContentType(codec.getContentType());
+		OutputStream out = new PooledBufferedOutputStream(
+				new CompressingOutputStream(response, getCompression(request
+						.getHeader(HttpHeaders.ACCEPT_ENCODING)),
+						COMPRESSION_THRESHOLD));
+		try {
+			codec.encode(object, out);
+		} finally {
+			out.close(); // gives the buffer back to the thread
+		}
+	}
+
+	/**
+	 * Decodes the response of an exchange with the codec of its Content-Type,
+	 * decompressed from its Content-Encoding. The exchange must cache its response fields, cf. new
+	 * ContentExchange(true), otherwise the response is taken to be XML.
+	 *
+	 * @param exchange
+	 * @return
+	 * @throws IOException
+	 */
+	private static Object decodeResponse(ContentExchange exchange)
+			throws IOException {
+		HttpFields fields = exchange.getResponseFields();
+		BookStoreCodec codec = getCodec(fields == null ? null : fields
+				.getStringField(HttpHeaders.CONTENT_TYPE));
+		String encoding = fields == null ? null : fields
+				.getStringField(HttpHeaders.CONTENT_ENCODING);
+		if (codec == XML_CODEC && encoding == null) {
+			return deserializeXMLStringToObject(exchange.getResponseContent()
+					.trim());
+		}
+		return codec.decode(decompress(new ByteArrayInputStream(exchange
+				.getResponseContentBytes()), encoding));
+	}
+
 	/**
 	 * Manages the sending of an exchange through the client, waits for the
 	 * response and unpacks the response
@@ -171,9 +573,7 @@ public final class BookStoreUtility {
 
 		if (exchangeState == HttpExchange.STATUS_COMPLETED) {
 			try {
-				BookStoreResponse bookStoreResponse = (BookStoreResponse) BookStoreUtility
-						.deserializeXMLStringToObject(exchange
-								.getResponseContent().trim());
+				BookStoreResponse bookStoreResponse = (BookStoreResponse) decodeResponse(exchange);
 				if (bookStoreResponse == null) {
 					throw new NetworkException(
 							BookStoreClientConstants.strERR_CLIENT_RESPONSE_DECODING);
@@ -184,7 +584,7 @@ public final class BookStoreUtility {
 				}
 				return bookStoreResponse.getResult();
 
-			} catch (UnsupportedEncodingException ex) {
+			} catch (IOException ex) {
 				throw new NetworkException(
 						BookStoreClientConstants.strERR_CLIENT_RESPONSE_DECODING,
 						ex);
@@ -201,22 +601,4 @@ public final class BookStoreUtility {
 		}
 	}
 
-	/**
-	 * Returns the message of the request as a string
-	 *
-	 * @param request
-	 * @return xml string
-	 * @throws IOException
-	 */
-	public static String extractPOSTDataFromRequest(HttpServletRequest request)
-			throws IOException {
-		Reader reader = request.getReader();
-		int len = request.getContentLength();
-
-		// Request must be read into a char[] first
-		char res[] = new char[len];
-		reader.read(res);
-		reader.close();
-		return new String(res);
-	}
 }
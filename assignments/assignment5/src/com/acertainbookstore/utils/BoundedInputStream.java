@@ -0,0 +1,62 @@
+/**
+ *
+ */
+package com.acertainbookstore.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * BoundedInputStream reads at most a given number of bytes from a stream and
+ * fails if the stream holds more, so that a request without a Content-Length
+ * cannot grow larger than the largest request accepted.
+ *
+ */
+public class BoundedInputStream extends FilterInputStream {
+	private final long maxBytes;
+	private long bytesRead = 0;
+
+	public BoundedInputStream(InputStream in, long maxBytes) {
+		super(in);
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			count(n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(long n) throws IOException {
+		bytesRead += n;
+		if (bytesRead > maxBytes) {
+			throw new IOException(BookStoreConstants.REQUEST_SIZE
+					+ "more than " + maxBytes + BookStoreConstants.INVALID);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package com.acertainbookstore.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpHeaders;
+
+/**
+ * CompressingOutputStream writes a response in the content encoding the
+ * client accepts once it has grown larger than a threshold. Until then it
+ * holds the response back, so that a small response is sent as it is and the
+ * Content-Encoding of a large one can still be set before anything is sent.
+ * Closing the stream completes the response.
+ *
+ */
+public class CompressingOutputStream extends OutputStream {
+	private final HttpServletResponse response;
+	private final String encoding; // null if the response is not compressed
+	private final int threshold;
+	private ByteArrayOutputStream pending = null; // until the threshold
+	private OutputStream out = null; // once the threshold is passed
+
+	public CompressingOutputStream(HttpServletResponse response,
+			String encoding, int threshold) throws IOException {
+		this.response = response;
+		this.encoding = encoding;
+		this.threshold = threshold;
+		if (encoding == null) {
+			out = response.getOutputStream();
+		} else {
+			pending = new ByteArrayOutputStream(Math.min(threshold,
+					PooledBufferedOutputStream.BUFFER_SIZE));
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (out == null && pending.size() + len > threshold) {
+			response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+			response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			out = BookStoreUtility.compress(response.getOutputStream(),
+					encoding);
+			pending.writeTo(out);
+			pending = null;
+		}
+		if (out == null) {
+			pending.write(b, off, len);
+		} else {
+			out.write(b, off, len);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out == null) {
+			out = response.getOutputStream();
+			pending.writeTo(out);
+			pending = null;
+		}
+		out.close();
+	}
+}
@@ -0,0 +1,35 @@
+package com.acertainbookstore.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import com.acertainbookstore.interfaces.BookStoreCodec;
+
+/**
+ * XMLBookStoreCodec is the XStream XML the bookstore has always spoken, and
+ * the codec of clients that do not ask for another one.
+ *
+ */
+public class XMLBookStoreCodec implements BookStoreCodec {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public String getContentType() {
+		return BookStoreConstants.XML_CONTENT_TYPE;
+	}
+
+	public void encode(Object object, OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, UTF_8);
+		BookStoreUtility.getXStream().toXML(object, writer);
+		writer.flush();
+	}
+
+	public Object decode(InputStream in) throws IOException {
+		return BookStoreUtility.getXStream().fromXML(
+				new InputStreamReader(in, UTF_8));
+	}
+}
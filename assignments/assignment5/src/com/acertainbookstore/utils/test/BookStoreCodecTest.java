@@ -0,0 +1,233 @@
+package com.acertainbookstore.utils.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.BookStoreOperation;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.ReplicationRequest;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreCodec;
+import com.acertainbookstore.utils.BinaryBookStoreCodec;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreResult;
+import com.acertainbookstore.utils.BookStoreUtility;
+
+public class BookStoreCodecTest {
+
+	private static final int TEST_ISBN = 3044560;
+
+	private static byte[] encode(BookStoreCodec codec, Object object)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		codec.encode(object, out);
+		return out.toByteArray();
+	}
+
+	private static Object roundTrip(BookStoreCodec codec, Object object)
+			throws IOException {
+		return codec.decode(new ByteArrayInputStream(encode(codec, object)));
+	}
+
+	private static BookStoreResponse response() {
+		List<StockBook> books = new ArrayList<StockBook>();
+		for (int i = 0; i < 10; i++) {
+			books.add(new ImmutableStockBook(TEST_ISBN + i,
+					"Harry Potter and JUnit \u00e6\u00f8\u00e5", "JK Unit",
+					(float) 10.5, i, 2 * i, 3, 12, i % 2 == 0));
+		}
+		return new BookStoreResponse(null, new BookStoreResult(books, 42));
+	}
+
+	/**
+	 * Tests that a response of stock books comes back the same from both
+	 * codecs, and that the binary one is the smaller
+	 */
+	@Test
+	public void testResponse() throws IOException {
+		BookStoreResponse response = response();
+		List<?> books = response.getResult().getResultList();
+		for (BookStoreCodec codec : new BookStoreCodec[] {
+				BookStoreUtility.XML_CODEC, BookStoreUtility.BINARY_CODEC }) {
+			BookStoreResponse decoded = (BookStoreResponse) roundTrip(codec,
+					response);
+			assertNull(decoded.getException());
+			assertEquals(42, decoded.getResult().getSnapshotId());
+			List<?> decodedBooks = decoded.getResult().getResultList();
+			assertEquals(books, decodedBooks);
+			for (int i = 0; i < books.size(); i++) {
+				StockBook book = (StockBook) books.get(i);
+				StockBook decodedBook = (StockBook) decodedBooks.get(i);
+				assertEquals(book.getNumCopies(), decodedBook.getNumCopies());
+				assertEquals(book.getSaleMisses(), decodedBook.getSaleMisses());
+				assertEquals(book.getTotalRating(),
+						decodedBook.getTotalRating());
+				assertEquals(book.getTimesRated(), decodedBook.getTimesRated());
+				assertEquals(book.isEditorPick(), decodedBook.isEditorPick());
+			}
+		}
+		assertTrue(encode(BookStoreUtility.BINARY_CODEC, response).length
+				* 5 < encode(BookStoreUtility.XML_CODEC, response).length);
+	}
+
+	/**
+	 * Tests that an exception and a batch of updates to replicate survive the
+	 * binary codec
+	 */
+	@Test
+	public void testExceptionAndReplicationRequest() throws IOException {
+		BookStoreResponse response = (BookStoreResponse) roundTrip(
+				BookStoreUtility.BINARY_CODEC, new BookStoreResponse(
+						new BookStoreException(BookStoreConstants.NULL_INPUT),
+						null));
+		assertEquals(BookStoreConstants.NULL_INPUT, response.getException()
+				.getMessage());
+		assertNull(response.getResult());
+
+		Set<BookCopy> copies = new HashSet<BookCopy>();
+		copies.add(new BookCopy(TEST_ISBN, 3));
+		Set<BookRating> ratings = new HashSet<BookRating>();
+		ratings.add(new BookRating(TEST_ISBN, 5));
+		List<BookStoreOperation> operations = new ArrayList<BookStoreOperation>();
+		operations.add(BookStoreOperation.buyBooks(copies));
+		operations.add(BookStoreOperation.rateBooks(ratings));
+		operations.add(BookStoreOperation.removeAllBooks());
+
+		ReplicationRequest request = (ReplicationRequest) roundTrip(
+				BookStoreUtility.BINARY_CODEC, new ReplicationRequest(
+						operations));
+		assertEquals(BookStoreMessageTag.EXECUTEBATCH,
+				request.getMessageType());
+		List<BookStoreOperation> decoded = request.getOperations();
+		assertEquals(3, decoded.size());
+		assertEquals(BookStoreMessageTag.BUYBOOKS, decoded.get(0)
+				.getMessageType());
+		BookCopy copy = (BookCopy) decoded.get(0).getDataSet().iterator()
+				.next();
+		assertEquals(TEST_ISBN, copy.getISBN());
+		assertEquals(3, copy.getNumCopies());
+		BookRating rating = (BookRating) decoded.get(1).getDataSet()
+				.iterator().next();
+		assertEquals(5, rating.getRating());
+		assertEquals(BookStoreMessageTag.REMOVEALLBOOKS, decoded.get(2)
+				.getMessageType());
+		assertNull(decoded.get(2).getDataSet());
+
+		request = (ReplicationRequest) roundTrip(BookStoreUtility.BINARY_CODEC,
+				new ReplicationRequest(copies, BookStoreMessageTag.ADDCOPIES));
+		assertEquals(BookStoreMessageTag.ADDCOPIES, request.getMessageType());
+		assertEquals(copies, request.getDataSet());
+		assertNull(request.getOperations());
+	}
+
+	/**
+	 * Tests that a string declared almost 2 GB long, in a request of a few
+	 * bytes, fails the decoding instead of being allocated
+	 */
+	@Test
+	public void testHugeDeclaredLength() {
+		// the format version, a string and its length as a zig-zag varint
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(BinaryBookStoreCodec.FORMAT_VERSION);
+		out.write(2);
+		long zigZag = (long) (Integer.MAX_VALUE - 8) << 1;
+		while ((zigZag & ~0x7FL) != 0) {
+			out.write((int) (zigZag & 0x7F) | 0x80);
+			zigZag >>>= 7;
+		}
+		out.write((int) zigZag);
+		out.write('x');
+		try {
+			BookStoreUtility.decode(BookStoreUtility.BINARY_CODEC,
+					new ByteArrayInputStream(out.toByteArray()));
+			fail();
+		} catch (BookStoreException ex) {
+			assertTrue(ex.getMessage().startsWith(
+					BookStoreConstants.MALFORMED_REQUEST));
+		}
+	}
+
+	/**
+	 * Tests that lists nested deeper than any message fail the decoding
+	 * instead of the stack
+	 */
+	@Test
+	public void testDeepNesting() {
+		// the format version and lists of one list each
+		byte[] request = new byte[1 + 2 * 100000];
+		request[0] = (byte) BinaryBookStoreCodec.FORMAT_VERSION;
+		for (int i = 1; i < request.length; i += 2) {
+			request[i] = 4;
+			request[i + 1] = 2; // a size of 1 as a zig-zag varint
+		}
+		try {
+			BookStoreUtility.decode(BookStoreUtility.BINARY_CODEC,
+					new ByteArrayInputStream(request));
+			fail();
+		} catch (BookStoreException ex) {
+			assertTrue(ex.getMessage().startsWith(
+					BookStoreConstants.MALFORMED_REQUEST));
+		}
+	}
+
+	/**
+	 * Tests that the codec follows the Content-Type, XML unless it names the
+	 * binary codec
+	 */
+	@Test
+	public void testGetCodec() {
+		assertSame(BookStoreUtility.XML_CODEC, BookStoreUtility.getCodec(null));
+		assertSame(BookStoreUtility.XML_CODEC,
+				BookStoreUtility.getCodec("text/html;charset=utf-8"));
+		assertSame(BookStoreUtility.BINARY_CODEC,
+				BookStoreUtility.getCodec(BookStoreConstants.BINARY_CONTENT_TYPE
+						+ ", " + BookStoreConstants.XML_CONTENT_TYPE));
+	}
+
+	/**
+	 * Tests that a response comes back the same, and smaller, from both
+	 * compressions, and which one a request gets
+	 */
+	@Test
+	public void testCompression() throws IOException {
+		byte[] encoded = encode(BookStoreUtility.XML_CODEC, response());
+		for (String encoding : new String[] {
+				BookStoreConstants.COMPRESSION_GZIP,
+				BookStoreConstants.COMPRESSION_DEFLATE }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			OutputStream compressed = BookStoreUtility.compress(out, encoding);
+			compressed.write(encoded);
+			compressed.close();
+			assertTrue(out.size() * 2 < encoded.length);
+
+			BookStoreResponse decoded = (BookStoreResponse) BookStoreUtility.XML_CODEC
+					.decode(BookStoreUtility.decompress(
+							new ByteArrayInputStream(out.toByteArray()),
+							encoding));
+			assertEquals(response().getResult().getResultList(), decoded
+					.getResult().getResultList());
+		}
+
+		assertNull(BookStoreUtility.getCompression(null));
+		assertNull(BookStoreUtility.getCompression("br"));
+		assertEquals(BookStoreConstants.COMPRESSION_GZIP,
+				BookStoreUtility.getCompression("deflate, gzip"));
+		assertEquals(BookStoreConstants.COMPRESSION_DEFLATE,
+				BookStoreUtility.getCompression("gzip;q=0, deflate"));
+	}
+}